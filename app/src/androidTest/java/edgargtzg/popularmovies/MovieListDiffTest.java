@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewGroup;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static edgargtzg.popularmovies.TestMovies.date;
+import static edgargtzg.popularmovies.TestMovies.movie;
+
+/**
+ * Tests {@link MovieListDiff} by applying the updates it dispatches to a copy
+ * of the old list and checking that the copy ends up equal to the new list.
+ */
+public class MovieListDiffTest extends TestCase {
+
+    public void testIdenticalListsHaveNoUpdates() {
+        List<MovieItem> movies = movies(1, 2, 3);
+        assertTrue(MovieListDiff.compute(movies, movies(1, 2, 3)).isEmpty());
+        assertDiff(movies, movies(1, 2, 3));
+    }
+
+    public void testMoves() {
+        assertDiff(movies(1, 2, 3, 4, 5), movies(2, 3, 1, 5, 4));
+    }
+
+    public void testSwap() {
+        assertDiff(movies(1, 2, 3, 4), movies(4, 2, 3, 1));
+    }
+
+    public void testReverse() {
+        assertDiff(movies(1, 2, 3, 4, 5, 6), movies(6, 5, 4, 3, 2, 1));
+    }
+
+    public void testDuplicatesInOldList() {
+        assertDiff(movies(1, 2, 1, 3, 2), movies(3, 1, 2));
+    }
+
+    public void testDuplicatesInNewList() {
+        assertDiff(movies(1, 2, 3), movies(2, 1, 2, 3, 1));
+    }
+
+    public void testAllRemoved() {
+        assertDiff(movies(1, 2, 3), movies());
+    }
+
+    public void testAllInserted() {
+        assertDiff(movies(), movies(1, 2, 3));
+    }
+
+    public void testAllReplaced() {
+        assertDiff(movies(1, 2, 3), movies(4, 5, 6));
+    }
+
+    public void testChangedContent() {
+        List<MovieItem> newMovies = movies(1, 2, 3);
+        newMovies.set(1, movie(2, "Renamed", 7f, date(2001, 1, 1), 2f));
+        assertDiff(movies(1, 2, 3), newMovies);
+    }
+
+    public void testMixed() {
+        List<MovieItem> newMovies = movies(9, 4, 1, 7, 2, 8, 6);
+        newMovies.set(2, movie(1, "Renamed", MovieItem.NO_RATING,
+                MovieItem.NO_RELEASE_DATE, 2f));
+        newMovies.set(3, movie(7, "Renamed", 3f, date(1999, 12, 31), 2f));
+        assertDiff(movies(1, 2, 3, 4, 5, 6, 7), newMovies);
+    }
+
+    public void testTables() {
+        List<MovieItem> oldMovies = movies(1, 2, 3, 4, 5);
+        List<MovieItem> newMovies = movies(5, 3, 6, 1);
+        MovieListDiff diff = MovieListDiff.compute(
+                new MovieTable(oldMovies), new MovieTable(newMovies));
+        assertSameMovies(newMovies, apply(oldMovies, newMovies, diff));
+    }
+
+    /**
+     * Checks that the diff between two lists turns the old one into the new one.
+     *
+     * @param oldMovies the list shown before the update.
+     * @param newMovies the list to show after the update.
+     */
+    private static void assertDiff(List<MovieItem> oldMovies, List<MovieItem> newMovies) {
+        assertSameMovies(newMovies,
+                apply(oldMovies, newMovies, MovieListDiff.compute(oldMovies, newMovies)));
+    }
+
+    /**
+     * Checks that two lists hold the same movies with the same content.
+     *
+     * @param expected the expected movies.
+     * @param actual the movies obtained.
+     */
+    private static void assertSameMovies(List<MovieItem> expected, List<MovieItem> actual) {
+        assertEquals(ids(expected), ids(actual));
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue("content differs at " + i, expected.get(i).hasSameContent(actual.get(i)));
+        }
+    }
+
+    /**
+     * Dispatches a diff to an adapter that mirrors each update on a copy of the
+     * old list, taking inserted and changed items from the new list.
+     *
+     * @param oldMovies the list shown before the update.
+     * @param newMovies the list to show after the update.
+     * @param diff the diff between the two lists.
+     * @return the copy of the old list with the updates applied.
+     */
+    private static List<MovieItem> apply(List<MovieItem> oldMovies,
+                                         final List<MovieItem> newMovies,
+                                         MovieListDiff diff) {
+        final List<MovieItem> copy = new ArrayList<>(oldMovies);
+        RecyclerView.Adapter adapter = new RecyclerView.Adapter<RecyclerView.ViewHolder>() {
+            @Override
+            public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int getItemCount() {
+                return copy.size();
+            }
+        };
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                copy.subList(positionStart, positionStart + itemCount).clear();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                copy.addAll(positionStart,
+                        newMovies.subList(positionStart, positionStart + itemCount));
+            }
+
+            @Override
+            public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                assertEquals(1, itemCount);
+                copy.add(toPosition, copy.remove(fromPosition));
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                for (int i = positionStart; i < positionStart + itemCount; i++) {
+                    copy.set(i, newMovies.get(i));
+                }
+            }
+        });
+        diff.dispatchUpdatesTo(adapter);
+        return copy;
+    }
+
+    /**
+     * Builds one movie per id.
+     *
+     * @param ids the movie ids, in order.
+     * @return a mutable list of the movies.
+     */
+    private static List<MovieItem> movies(int... ids) {
+        List<MovieItem> movies = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            movies.add(movie(id, id, date(2000 + id, 1, 1), id));
+        }
+        return movies;
+    }
+
+    /**
+     * Lists the ids of movies.
+     *
+     * @param movies the movies.
+     * @return their ids, in order.
+     */
+    private static List<Integer> ids(List<MovieItem> movies) {
+        List<Integer> ids = new ArrayList<>(movies.size());
+        for (MovieItem movie : movies) {
+            ids.add(movie.getMovieId());
+        }
+        return ids;
+    }
+}
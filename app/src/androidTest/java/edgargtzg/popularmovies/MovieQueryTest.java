@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static edgargtzg.popularmovies.TestMovies.date;
+import static edgargtzg.popularmovies.TestMovies.movie;
+
+/**
+ * Tests the release year bounds of {@link MovieQuery}.
+ */
+public class MovieQueryTest extends TestCase {
+
+    private final MovieTable mTable = new MovieTable(Arrays.asList(
+            movie(1, 5f, MovieItem.NO_RELEASE_DATE, 1f),
+            movie(2, 5f, date(2010, 5, 5), 1f),
+            movie(3, 5f, date(2020, 1, 1), 1f)));
+
+    public void testNoBoundKeepsUndatedMovies() {
+        assertEquals(Arrays.asList(1, 2, 3), apply(MovieQuery.NO_YEAR, MovieQuery.NO_YEAR));
+    }
+
+    public void testMaxYearDropsUndatedMovies() {
+        assertEquals(Arrays.asList(2), apply(MovieQuery.NO_YEAR, 2015));
+    }
+
+    public void testMinYearDropsUndatedMovies() {
+        assertEquals(Arrays.asList(3), apply(2015, MovieQuery.NO_YEAR));
+    }
+
+    public void testBothYearsAreInclusive() {
+        assertEquals(Arrays.asList(2, 3), apply(2010, 2020));
+    }
+
+    /**
+     * Applies an unsorted query with the given year bounds.
+     *
+     * @param fromYear earliest release year, or {@link MovieQuery#NO_YEAR}.
+     * @param toYear latest release year, or {@link MovieQuery#NO_YEAR}.
+     * @return the ids of the movies kept, in order.
+     */
+    private List<Integer> apply(int fromYear, int toYear) {
+        MovieQuery query = new MovieQuery(new int[0], new boolean[0], fromYear, toYear, 0);
+        List<Integer> ids = new ArrayList<>();
+        for (MovieItem movie : query.apply(mTable)) {
+            ids.add(movie.getMovieId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.test.MoreAsserts;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static edgargtzg.popularmovies.TestMovies.date;
+import static edgargtzg.popularmovies.TestMovies.movie;
+
+/**
+ * Tests the sorting of {@link MovieTable}, whose keys pack signed values and
+ * the row position in a long.
+ */
+public class MovieTableTest extends TestCase {
+
+    private static final float NO_RATING = MovieItem.NO_RATING;
+    private static final int NO_DATE = MovieItem.NO_RELEASE_DATE;
+
+    public void testEmptyTable() {
+        MovieTable table = new MovieTable(new ArrayList<MovieItem>());
+        assertEquals(0, table.sortedRows(MovieTable.SORT_BY_RATING, true).length);
+    }
+
+    public void testMultiKeySortIsStable() {
+        MovieTable table = new MovieTable(Arrays.asList(
+                movie(1, 7f, date(2015, 1, 1), 1f),
+                movie(2, 8f, date(2014, 6, 1), 1f),
+                movie(3, 7f, date(2014, 1, 1), 1f),
+                movie(4, 8f, date(2014, 6, 1), 1f),
+                movie(5, 7f, date(2015, 1, 1), 1f)));
+        int[] columns = {MovieTable.SORT_BY_RATING, MovieTable.SORT_BY_RELEASE_DATE};
+
+        // Rows equal in both columns keep their row order.
+        MoreAsserts.assertEquals(new int[]{1, 3, 2, 0, 4},
+                table.sortedRows(columns, new boolean[]{true, false}));
+        MoreAsserts.assertEquals(new int[]{1, 3, 0, 4, 2},
+                table.sortedRows(columns, new boolean[]{true, true}));
+        MoreAsserts.assertEquals(new int[]{2, 0, 4, 1, 3},
+                table.sortedRows(columns, new boolean[]{false, false}));
+    }
+
+    public void testEqualValuesKeepRowOrder() {
+        MovieTable table = new MovieTable(Arrays.asList(
+                movie(1, 5f, NO_DATE, 1f),
+                movie(2, 5f, NO_DATE, 1f),
+                movie(3, 5f, NO_DATE, 1f)));
+        MoreAsserts.assertEquals(new int[]{0, 1, 2},
+                table.sortedRows(MovieTable.SORT_BY_RATING, false));
+        MoreAsserts.assertEquals(new int[]{0, 1, 2},
+                table.sortedRows(MovieTable.SORT_BY_RATING, true));
+    }
+
+    public void testMissingRatingsSortLast() {
+        MovieTable table = new MovieTable(Arrays.asList(
+                movie(1, NO_RATING, NO_DATE, 1f),
+                movie(2, 5f, NO_DATE, 1f),
+                movie(3, NO_RATING, NO_DATE, 1f),
+                movie(4, 9f, NO_DATE, 1f),
+                movie(5, 0f, NO_DATE, 1f)));
+        MoreAsserts.assertEquals(new int[]{4, 1, 3, 0, 2},
+                table.sortedRows(MovieTable.SORT_BY_RATING, false));
+        MoreAsserts.assertEquals(new int[]{3, 1, 4, 0, 2},
+                table.sortedRows(MovieTable.SORT_BY_RATING, true));
+    }
+
+    public void testMissingDatesSortLast() {
+        MovieTable table = new MovieTable(Arrays.asList(
+                movie(1, 5f, NO_DATE, 1f),
+                movie(2, 5f, date(2010, 5, 5), 1f),
+                // Before 1970, a negative day.
+                movie(3, 5f, date(1969, 12, 31), 1f),
+                movie(4, 5f, NO_DATE, 1f),
+                movie(5, 5f, date(2020, 1, 1), 1f)));
+        MoreAsserts.assertEquals(new int[]{2, 1, 4, 0, 3},
+                table.sortedRows(MovieTable.SORT_BY_RELEASE_DATE, false));
+        MoreAsserts.assertEquals(new int[]{4, 1, 2, 0, 3},
+                table.sortedRows(MovieTable.SORT_BY_RELEASE_DATE, true));
+    }
+
+    public void testMissingValuesSortLastInSecondaryColumn() {
+        MovieTable table = new MovieTable(Arrays.asList(
+                movie(1, NO_RATING, date(2000, 1, 1), 1f),
+                movie(2, 6f, date(2000, 1, 1), 1f),
+                movie(3, 6f, date(1990, 1, 1), 1f),
+                movie(4, 4f, date(1990, 1, 1), 1f)));
+        int[] columns = {MovieTable.SORT_BY_RELEASE_DATE, MovieTable.SORT_BY_RATING};
+        MoreAsserts.assertEquals(new int[]{1, 0, 2, 3},
+                table.sortedRows(columns, new boolean[]{true, true}));
+        MoreAsserts.assertEquals(new int[]{3, 2, 1, 0},
+                table.sortedRows(columns, new boolean[]{false, false}));
+    }
+
+    public void testNegativeFloats() {
+        MovieTable table = new MovieTable(Arrays.asList(
+                movie(1, 5f, NO_DATE, -1.5f),
+                movie(2, 5f, NO_DATE, 2f),
+                movie(3, 5f, NO_DATE, 0f),
+                movie(4, 5f, NO_DATE, -3.25f),
+                movie(5, 5f, NO_DATE, 1f),
+                // Equal to 0.
+                movie(6, 5f, NO_DATE, -0f)));
+        MoreAsserts.assertEquals(new int[]{3, 0, 2, 5, 4, 1},
+                table.sortedRows(MovieTable.SORT_BY_POPULARITY, false));
+        MoreAsserts.assertEquals(new int[]{1, 4, 2, 5, 0, 3},
+                table.sortedRows(MovieTable.SORT_BY_POPULARITY, true));
+    }
+
+    public void testExtremeFloats() {
+        MovieTable table = new MovieTable(Arrays.asList(
+                movie(1, NO_RATING, NO_DATE, 1f),
+                movie(2, Float.MAX_VALUE, NO_DATE, 1f),
+                movie(3, -Float.MAX_VALUE, NO_DATE, 1f),
+                movie(4, Float.POSITIVE_INFINITY, NO_DATE, 1f),
+                movie(5, Float.NEGATIVE_INFINITY, NO_DATE, 1f)));
+        MoreAsserts.assertEquals(new int[]{4, 2, 1, 3, 0},
+                table.sortedRows(MovieTable.SORT_BY_RATING, false));
+        MoreAsserts.assertEquals(new int[]{3, 1, 2, 4, 0},
+                table.sortedRows(MovieTable.SORT_BY_RATING, true));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.database.MatrixCursor;
+
+/**
+ * Builds movies for the tests, through the same cursor constructor as the
+ * movies read from the local store.
+ */
+final class TestMovies {
+
+    private TestMovies() {
+    }
+
+    /**
+     * Builds a movie.
+     *
+     * @param id movie id.
+     * @param rating user rating, or {@link MovieItem#NO_RATING}.
+     * @param releaseDate release date in days since 1970-01-01, or
+     *                    {@link MovieItem#NO_RELEASE_DATE}.
+     * @param popularity popularity score.
+     * @return the movie.
+     */
+    static MovieItem movie(int id, float rating, int releaseDate, float popularity) {
+        return movie(id, "Movie " + id, rating, releaseDate, popularity);
+    }
+
+    /**
+     * Builds a movie with a title.
+     *
+     * @param id movie id.
+     * @param title original title.
+     * @param rating user rating, or {@link MovieItem#NO_RATING}.
+     * @param releaseDate release date in days since 1970-01-01, or
+     *                    {@link MovieItem#NO_RELEASE_DATE}.
+     * @param popularity popularity score.
+     * @return the movie.
+     */
+    static MovieItem movie(int id, String title, float rating, int releaseDate,
+                           float popularity) {
+        MatrixCursor cursor = new MatrixCursor(MovieStore.MOVIE_COLUMNS);
+        cursor.addRow(new Object[]{
+                id,
+                title,
+                "/poster" + id + ".jpg",
+                "Synopsis of " + title,
+                Float.isNaN(rating) ? null : rating,
+                releaseDate == MovieItem.NO_RELEASE_DATE ? null : releaseDate,
+                popularity,
+                100
+        });
+        cursor.moveToFirst();
+        try {
+            return new MovieItem(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Converts a date to days since 1970-01-01.
+     *
+     * @param year the year.
+     * @param month the month, from 1 to 12.
+     * @param day the day of the month.
+     * @return the number of days.
+     */
+    static int date(int year, int month, int day) {
+        return MovieItem.epochDay(year, month, day);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+
+/**
+ * Signals that the result of a piece of work is no longer wanted.
+ *
+ * Work checks {@link #isCancelled()} at convenient points, and can register
+ * callbacks to abort blocking operations as soon as it is cancelled.
+ */
+public class CancellationToken {
+
+    /**
+     * Log identifier for the class.
+     */
+    private static final String LOG_TAG = CancellationToken.class.getSimpleName();
+
+    /**
+     * Whether the token has been cancelled.
+     */
+    private volatile boolean mCancelled;
+
+    /**
+     * Callbacks to run when the token is cancelled.
+     */
+    private final ArrayList<Runnable> mCallbacks = new ArrayList<>();
+
+    /**
+     * Cancels the token and runs its callbacks. Has no effect if the token was
+     * already cancelled.
+     */
+    public void cancel() {
+        ArrayList<Runnable> callbacks;
+        synchronized (mCallbacks) {
+            if (mCancelled) {
+                return;
+            }
+            mCancelled = true;
+            callbacks = new ArrayList<>(mCallbacks);
+            mCallbacks.clear();
+            // Wakes up the threads waiting in sleep().
+            mCallbacks.notifyAll();
+        }
+        for (Runnable callback : callbacks) {
+            runQuietly(callback);
+        }
+    }
+
+    /**
+     * Checks whether the token has been cancelled.
+     *
+     * @return true if the token has been cancelled.
+     */
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Throws if the token has been cancelled.
+     *
+     * @throws InterruptedIOException if the token has been cancelled.
+     */
+    public void throwIfCancelled() throws InterruptedIOException {
+        if (mCancelled) {
+            throw new InterruptedIOException("Cancelled");
+        }
+    }
+
+    /**
+     * Waits for the given time, returning early if the token is cancelled.
+     *
+     * @param delayMs time to wait in milliseconds.
+     * @throws InterruptedIOException if the token is cancelled before or while
+     *                                waiting.
+     */
+    public void sleep(long delayMs) throws InterruptedIOException {
+        long deadline = SystemClock.elapsedRealtime() + delayMs;
+        synchronized (mCallbacks) {
+            long remainingMs = delayMs;
+            while (!mCancelled && remainingMs > 0) {
+                try {
+                    mCallbacks.wait(remainingMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted");
+                }
+                remainingMs = deadline - SystemClock.elapsedRealtime();
+            }
+        }
+        throwIfCancelled();
+    }
+
+    /**
+     * Registers a callback to run when the token is cancelled. It runs right
+     * away if the token was already cancelled.
+     *
+     * @param callback the callback, run on the thread which cancels the token.
+     */
+    public void onCancel(Runnable callback) {
+        synchronized (mCallbacks) {
+            if (!mCancelled) {
+                mCallbacks.add(callback);
+                return;
+            }
+        }
+        runQuietly(callback);
+    }
+
+    /**
+     * Unregisters a callback previously registered with {@link #onCancel(Runnable)}.
+     *
+     * @param callback the callback.
+     */
+    public void removeOnCancel(Runnable callback) {
+        synchronized (mCallbacks) {
+            mCallbacks.remove(callback);
+        }
+    }
+
+    /**
+     * Runs a callback, logging rather than propagating its failures.
+     *
+     * @param callback the callback.
+     */
+    private static void runQuietly(Runnable callback) {
+        try {
+            callback.run();
+        } catch (RuntimeException e) {
+            Log.w(LOG_TAG, "Error running cancellation callback", e);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.os.SystemClock;
+
+import java.io.IOException;
+
+/**
+ * Stops calling a failing service for a while, so requests fail fast instead
+ * of each waiting for its own timeouts and retries.
+ *
+ * The breaker opens after a number of failures in a row, and lets a single
+ * trial request through once the open period is over: its success closes the
+ * breaker, its failure opens it again.
+ */
+public final class CircuitBreaker {
+
+    /**
+     * Thrown instead of making a request while the breaker is open.
+     */
+    public static class OpenException extends IOException {
+
+        /**
+         * Constructor.
+         *
+         * @param remainingMs time left before a request is let through again.
+         */
+        OpenException(long remainingMs) {
+            super("Circuit open for another " + remainingMs + " ms.");
+        }
+    }
+
+    /**
+     * Number of failures in a row which opens the breaker.
+     */
+    private final int mFailureThreshold;
+
+    /**
+     * How long the breaker stays open, in milliseconds.
+     */
+    private final long mOpenDurationMs;
+
+    /**
+     * Number of failures in a row.
+     */
+    private int mFailureCount;
+
+    /**
+     * Time until which requests are refused, in elapsed realtime milliseconds.
+     */
+    private long mOpenUntil;
+
+    /**
+     * Whether the trial request of a half open breaker is running.
+     */
+    private boolean mTrialRunning;
+
+    /**
+     * Constructor.
+     *
+     * @param failureThreshold number of failures in a row which opens the breaker.
+     * @param openDurationMs how long the breaker stays open, in milliseconds.
+     */
+    public CircuitBreaker(int failureThreshold, long openDurationMs) {
+        mFailureThreshold = failureThreshold;
+        mOpenDurationMs = openDurationMs;
+    }
+
+    /**
+     * Checks that a request may be made, to be followed by a call to
+     * {@link #onSuccess()} or {@link #onFailure()} once it completes.
+     *
+     * @throws OpenException if the breaker is open.
+     */
+    public synchronized void acquire() throws OpenException {
+        long now = SystemClock.elapsedRealtime();
+        if (now < mOpenUntil) {
+            throw new OpenException(mOpenUntil - now);
+        }
+        if (mFailureCount >= mFailureThreshold) {
+            // Half open: one trial request at a time.
+            if (mTrialRunning) {
+                throw new OpenException(0);
+            }
+            mTrialRunning = true;
+        }
+    }
+
+    /**
+     * Records a successful request, which closes the breaker.
+     */
+    public synchronized void onSuccess() {
+        mFailureCount = 0;
+        mTrialRunning = false;
+    }
+
+    /**
+     * Records a request cancelled before it completed, which tells nothing
+     * about the service.
+     */
+    public synchronized void onCancelled() {
+        mTrialRunning = false;
+    }
+
+    /**
+     * Records a failed request, which opens the breaker past the threshold.
+     */
+    public synchronized void onFailure() {
+        mTrialRunning = false;
+        mFailureCount++;
+        if (mFailureCount >= mFailureThreshold) {
+            mOpenUntil = SystemClock.elapsedRealtime() + mOpenDurationMs;
+        }
+    }
+
+    /**
+     * Records that the service asked for no request for a while, which opens
+     * the breaker for at least that long.
+     *
+     * @param delayMs how long no request is wanted, in milliseconds.
+     */
+    public synchronized void holdOff(long delayMs) {
+        mTrialRunning = false;
+        mOpenUntil = Math.max(mOpenUntil, SystemClock.elapsedRealtime() + delayMs);
+    }
+}
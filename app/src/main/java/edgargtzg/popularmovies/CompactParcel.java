@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.os.Parcel;
+
+/**
+ * Writes string fields of themoviedb.org data whose values are usually from a
+ * small known set to parcels as the index of the value. Other values are
+ * written as strings, so reading always gives back the same string.
+ */
+final class CompactParcel {
+
+    /**
+     * Written in place of an index when the value follows as a string.
+     */
+    private static final int AS_STRING = -1;
+
+    /**
+     * Not instantiable.
+     */
+    private CompactParcel() {
+    }
+
+    /**
+     * Writes a value which is usually one of a known set.
+     *
+     * @param dest the parcel.
+     * @param knownValues the known set, which must not change between writing
+     *                    and reading.
+     * @param value the value, any string.
+     */
+    static void writeKnown(Parcel dest, String[] knownValues, String value) {
+        for (int i = 0; i < knownValues.length; i++) {
+            if (knownValues[i].equals(value)) {
+                dest.writeInt(i);
+                return;
+            }
+        }
+        dest.writeInt(AS_STRING);
+        dest.writeString(value);
+    }
+
+    /**
+     * Reads a value written by {@link #writeKnown}.
+     *
+     * @param in the parcel.
+     * @param knownValues the known set it was written with.
+     * @return the value.
+     */
+    static String readKnown(Parcel in, String[] knownValues) {
+        int index = in.readInt();
+        return index == AS_STRING ? in.readString() : knownValues[index];
+    }
+}
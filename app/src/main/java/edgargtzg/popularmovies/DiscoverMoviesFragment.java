@@ -19,34 +19,36 @@ package edgargtzg.popularmovies;
 import android.app.ProgressDialog;
 import android.content.Context;
 import android.content.Intent;
+import android.content.ContentResolver;
 import android.content.SharedPreferences;
+import android.database.Cursor;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
 import android.support.v4.app.Fragment;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.CursorLoader;
+import android.support.v4.content.Loader;
+import android.support.v4.view.MenuItemCompat;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.util.Log;
 import android.view.Gravity;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.AdapterView;
-import android.widget.GridView;
 import android.widget.Toast;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
+import java.util.List;
 
 
 /**
@@ -54,7 +56,13 @@ import java.util.ArrayList;
  * selected sort order in Settings.
  */
 public class DiscoverMoviesFragment extends Fragment
-        implements SharedPreferences.OnSharedPreferenceChangeListener {
+        implements SharedPreferences.OnSharedPreferenceChangeListener,
+        LoaderManager.LoaderCallbacks<Cursor>, RequestManager.Callbacks {
+
+    /**
+     * Log identifier for the class.
+     */
+    private final String LOG_TAG = DiscoverMoviesFragment.class.getSimpleName();
 
     /**
      * Adapter to populate grid view with movie items.
@@ -62,14 +70,184 @@ public class DiscoverMoviesFragment extends Fragment
     private MovieItemAdapter mMoviePosterAdapter;
 
     /**
-     * Contains the list of movie items.
+     * Contains the list of movie items, the window of discover pages kept by mMoviePager.
      */
     private ArrayList<MovieItem> mListOfMovies;
 
     /**
-     * Movie list key to use when saving state of the activity.
+     * Keeps the window of loaded discover pages.
+     */
+    private MoviePager mMoviePager;
+
+    /**
+     * Grid showing the movie posters.
+     */
+    private RecyclerView mRecyclerView;
+
+    /**
+     * Lays out the posters of the grid in columns.
+     */
+    private GridLayoutManager mLayoutManager;
+
+    /**
+     * Number of columns of the grid.
+     */
+    private int mColumns;
+
+    /**
+     * Whether the grid scrolls back to the top once the pending list is
+     * shown, after the sort order changed.
+     */
+    private boolean mScrollToTopPending;
+
+    /**
+     * Warms the image cache with the posters about to scroll into the grid.
+     */
+    private PosterPrefetcher mPosterPrefetcher;
+
+    /**
+     * Sort order of themoviedb.org currently shown.
+     */
+    private String mSortBy;
+
+    /**
+     * Order and filters applied on the device to the movies shown.
+     */
+    private MovieQuery mQuery;
+
+    /**
+     * Every movie of the local store, sorted by the query when it has sort
+     * keys. Null until read.
+     */
+    private MovieTable mCatalog;
+
+    /**
+     * Incremented for every query run, so only the result of the latest one
+     * is shown.
+     */
+    private int mQueryGeneration;
+
+    /**
+     * Delivers the query results on the main thread.
+     */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Text searched for, null while the search is closed. While it has a
+     * word the grid shows the matching movies instead of the discover ones.
+     */
+    private String mSearchText;
+
+    /**
+     * Time the search waits for typing to pause, in milliseconds.
+     */
+    private int mSearchDebounceMs;
+
+    /**
+     * Runs the search once typing pauses.
+     */
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            startSearch();
+        }
+    };
+
+    /**
+     * Runs the page requests across configuration changes.
+     */
+    private RequestManager mRequestManager;
+
+    /**
+     * Progress dialog while the first page is fetched.
+     */
+    private ProgressDialog mProgressDialog;
+
+    /**
+     * In-memory cache of the recently fetched pages.
+     */
+    private MovieCache mMovieCache;
+
+    /**
+     * Number of items left before either end of the loaded pages at which the
+     * adjacent page is requested.
+     */
+    private int mPrefetchDistance;
+
+    /**
+     * Key of the ids of the movies shown, and of the first visible position,
+     * when saving state of the activity. The movies themselves are read back
+     * from the in-memory cache or the local store.
      */
-    private static final String MOVIE_LIST_KEY = "MOVIE_LIST_KEY";
+    private static final String MOVIE_IDS_KEY = "MOVIE_IDS_KEY";
+    private static final String SCROLL_POSITION_KEY = "SCROLL_POSITION_KEY";
+
+    /**
+     * Keys of the page window and sort order when saving state of the activity.
+     */
+    private static final String FIRST_PAGE_KEY = "FIRST_PAGE_KEY";
+    private static final String PAGE_SIZES_KEY = "PAGE_SIZES_KEY";
+    private static final String SORT_BY_KEY = "SORT_BY_KEY";
+
+    /**
+     * Key of the searched text when saving state of the activity.
+     */
+    private static final String SEARCH_TEXT_KEY = "SEARCH_TEXT_KEY";
+
+    /**
+     * Id of the loader which reads the cached listing from the local store.
+     */
+    private static final int MOVIES_LOADER = 0;
+
+    /**
+     * Sort order argument of the movies loader.
+     */
+    private static final String SORT_BY_ARG = "SORT_BY_ARG";
+
+    /**
+     * Tag of the request manager of the fragment.
+     */
+    private static final String REQUEST_MANAGER_TAG = "DiscoverMoviesRequests";
+
+    /**
+     * Request keys: the first page of a sort order, and the page fetched next
+     * to the loaded window while scrolling.
+     */
+    private static final String FIRST_PAGE_REQUEST = "FIRST_PAGE_REQUEST";
+    private static final String ADJACENT_PAGE_REQUEST = "ADJACENT_PAGE_REQUEST";
+
+    /**
+     * Key of the request reading the saved window back from the local store.
+     */
+    private static final String RESTORE_REQUEST = "RESTORE_REQUEST";
+
+    /**
+     * Key of the request reading every movie of the local store.
+     */
+    private static final String CATALOG_REQUEST = "CATALOG_REQUEST";
+
+    /**
+     * Key of the request searching the movies.
+     */
+    private static final String SEARCH_REQUEST = "SEARCH_REQUEST";
+
+    /**
+     * Position the grid scrolls to once the restored movies are shown, none
+     * if the grid is not being restored.
+     */
+    private int mPendingScrollPosition = RecyclerView.NO_POSITION;
+
+    /**
+     * Whether the grid already shows the movies fetched from the network, in which
+     * case the (older) cached listing must not replace them.
+     */
+    private boolean mNetworkResultDelivered;
+
+    /**
+     * When the first page was requested, from {@link System#nanoTime()}, 0 once
+     * it was shown.
+     */
+    private long mFirstPageStartNanos;
 
     /**
      * Default constructor.
@@ -82,25 +260,193 @@ public class DiscoverMoviesFragment extends Fragment
         super.onCreate(savedInstanceState);
         // Fragment to handle menu events.
         setHasOptionsMenu(true);
+        mPrefetchDistance = getResources().getInteger(R.integer.discover_page_prefetch_distance);
+        mMoviePager = new MoviePager(getResources().getInteger(R.integer.discover_max_pages));
+        mListOfMovies = mMoviePager.getMovies();
+        mRequestManager = RequestManager.get(getFragmentManager(), REQUEST_MANAGER_TAG);
+        mMovieCache = MovieCache.getInstance(getActivity());
+        mColumns = getResources().getInteger(R.integer.discover_grid_columns);
         // The MovieItemAdapter will take data from a source and
-        // use it to populate the GridView it's attached to.
-        mMoviePosterAdapter =
-                new MovieItemAdapter(
-                        getActivity(), // The current context (this activity)
-                        R.layout.grid_movie_item,
-                        new ArrayList<MovieItem>());
+        // use it to populate the grid it's attached to.
+        mMoviePosterAdapter = new MovieItemAdapter(getActivity(), mColumns);
+        mQuery = MovieQuery.fromPreferences(getActivity(),
+                PreferenceManager.getDefaultSharedPreferences(getActivity()));
+        mSearchDebounceMs = getResources().getInteger(R.integer.search_debounce_ms);
         if (savedInstanceState != null) {
-            mListOfMovies = (ArrayList<MovieItem>) savedInstanceState.get(MOVIE_LIST_KEY);
-            if (mListOfMovies != null) {
-                mMoviePosterAdapter.addAll(mListOfMovies);
+            mSortBy = savedInstanceState.getString(SORT_BY_KEY);
+            mSearchText = savedInstanceState.getString(SEARCH_TEXT_KEY);
+            restoreMovies(savedInstanceState);
+        }
+    }
+
+    /**
+     * Restores the saved window of movies. The movies are taken from the
+     * in-memory cache when it still holds every page of the window, and read
+     * from the local store otherwise.
+     *
+     * @param savedInstanceState the saved state.
+     */
+    private void restoreMovies(Bundle savedInstanceState) {
+        int[] movieIds = savedInstanceState.getIntArray(MOVIE_IDS_KEY);
+        int firstPage = savedInstanceState.getInt(FIRST_PAGE_KEY);
+        int[] pageSizes = savedInstanceState.getIntArray(PAGE_SIZES_KEY);
+        if (mSortBy == null || movieIds == null || movieIds.length == 0 || pageSizes == null) {
+            return;
+        }
+        mPendingScrollPosition = savedInstanceState.getInt(SCROLL_POSITION_KEY);
+
+        ArrayList<MovieItem> cachedMovies = new ArrayList<>();
+        for (int page = firstPage; page < firstPage + pageSizes.length; page++) {
+            ArrayList<MovieItem> cachedPage = mMovieCache.getPage(mSortBy, page);
+            if (cachedPage == null) {
+                break;
             }
+            cachedMovies.addAll(cachedPage);
+        }
+        ArrayList<MovieItem> movies =
+                MoviesWindow.findMovies(movieIds, new MovieTable(cachedMovies));
+        if (movies != null) {
+            showRestoredMovies(new MoviesWindow(mSortBy, firstPage, pageSizes, movies));
         } else {
-            mListOfMovies = new ArrayList<>();
+            mRequestManager.start(RESTORE_REQUEST, TaskScheduler.Priority.VISIBLE,
+                    new RestoreMoviesTask(getActivity(),
+                            new MoviesWindow(mSortBy, firstPage, pageSizes, null), movieIds));
+        }
+    }
+
+    /**
+     * Shows a restored window of movies.
+     *
+     * @param window the window.
+     */
+    private void showRestoredMovies(MoviesWindow window) {
+        mMoviePager.restore(window.mFirstPage, window.mPageSizes, window.mMovies);
+        showMovies();
+    }
+
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+        // Nothing was shown yet when the state was saved.
+        if (savedInstanceState == null || mSortBy == null) {
             updateMovies(PreferenceManager.getDefaultSharedPreferences(
                     getActivity()).getString(
                     getString(R.string.pref_sortBy_list_key),
                     getString(R.string.pref_most_popular)));
         }
+        // Delivers the pages fetched while the fragment was being recreated.
+        mRequestManager.setCallbacks(this);
+        if (mRequestManager.isRunning(FIRST_PAGE_REQUEST)) {
+            showProgress();
+        }
+        if (isSearching() && !mRequestManager.isRunning(SEARCH_REQUEST)) {
+            startSearch();
+        }
+    }
+
+    @Override
+    public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+        inflater.inflate(R.menu.discover_menu, menu);
+        final MenuItem searchItem = menu.findItem(R.id.action_search);
+        final SearchView searchView = (SearchView) MenuItemCompat.getActionView(searchItem);
+        searchView.setQueryHint(getString(R.string.search_hint));
+        // Reopens a search of the previous activity, before the listeners
+        // are set so reopening it starts no new search.
+        if (mSearchText != null) {
+            String searchText = mSearchText;
+            MenuItemCompat.expandActionView(searchItem);
+            searchView.setQuery(searchText, false);
+        }
+        MenuItemCompat.setOnActionExpandListener(searchItem,
+                new MenuItemCompat.OnActionExpandListener() {
+                    @Override
+                    public boolean onMenuItemActionExpand(MenuItem item) {
+                        if (mSearchText == null) {
+                            mSearchText = "";
+                        }
+                        return true;
+                    }
+
+                    @Override
+                    public boolean onMenuItemActionCollapse(MenuItem item) {
+                        endSearch();
+                        return true;
+                    }
+                });
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                // Collapsing the search view clears its text after the search ended.
+                if (mSearchText != null) {
+                    scheduleSearch(newText, mSearchDebounceMs);
+                }
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                scheduleSearch(query, 0);
+                searchView.clearFocus();
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Checks whether the grid shows search results.
+     *
+     * @return true if the searched text has a word.
+     */
+    private boolean isSearching() {
+        return mSearchText != null && MovieStore.toMatchQuery(mSearchText) != null;
+    }
+
+    /**
+     * Searches for a text once typing pauses, replacing a search not run yet.
+     *
+     * @param text the text.
+     * @param delayMs time to wait, in milliseconds.
+     */
+    private void scheduleSearch(String text, int delayMs) {
+        mSearchText = text;
+        mHandler.removeCallbacks(mSearchRunnable);
+        mHandler.postDelayed(mSearchRunnable, delayMs);
+    }
+
+    /**
+     * Starts searching for the searched text, or shows the discover movies
+     * again if the text has no word left.
+     */
+    private void startSearch() {
+        if (mSearchText == null) {
+            return;
+        }
+        if (!isSearching()) {
+            mRequestManager.cancel(SEARCH_REQUEST);
+            showMovies();
+            return;
+        }
+        boolean searchOnline = PreferenceManager.getDefaultSharedPreferences(getActivity())
+                .getBoolean(getString(R.string.pref_search_online_key),
+                        getResources().getBoolean(R.bool.pref_search_online_default))
+                && isNetworkAvailable();
+        mRequestManager.start(SEARCH_REQUEST, TaskScheduler.Priority.VISIBLE,
+                new SearchMoviesTask(getActivity(), mSearchText,
+                        getResources().getInteger(R.integer.search_max_results), searchOnline));
+    }
+
+    /**
+     * Closes the search and shows the discover movies again.
+     */
+    private void endSearch() {
+        mHandler.removeCallbacks(mSearchRunnable);
+        mRequestManager.cancel(SEARCH_REQUEST);
+        boolean wasSearching = isSearching();
+        mSearchText = null;
+        if (wasSearching) {
+            mScrollToTopPending = true;
+            showMovies();
+        }
     }
 
     @Override
@@ -109,15 +455,44 @@ public class DiscoverMoviesFragment extends Fragment
 
         View rootView = inflater.inflate(R.layout.fragment_discover_movies, container, false);
 
-        // Get a reference to the GridView, and attach the adapter to it.
-        GridView gridView  = (GridView) rootView.findViewById(R.id.movies_discovery_gridview);
-        gridView.setAdapter(mMoviePosterAdapter);
-        gridView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Get a reference to the grid, and attach the adapter to it.
+        mRecyclerView = (RecyclerView) rootView.findViewById(R.id.movies_discovery_recyclerview);
+        mLayoutManager = new GridLayoutManager(getActivity(), mColumns);
+        mRecyclerView.setLayoutManager(mLayoutManager);
+        mRecyclerView.setHasFixedSize(true);
+        mRecyclerView.setAdapter(mMoviePosterAdapter);
+        mRecyclerView.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
-                MovieItem movieItem = mMoviePosterAdapter.getItem(position);
+            public void onLayoutChange(View view, int left, int top, int right, int bottom,
+                                       int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                mMoviePosterAdapter.setGridWidth(right - left);
+            }
+        });
+        mPosterPrefetcher = new PosterPrefetcher(getActivity(), mMoviePosterAdapter);
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int firstVisibleItem = mLayoutManager.findFirstVisibleItemPosition();
+                if (firstVisibleItem == RecyclerView.NO_POSITION) {
+                    return;
+                }
+                int visibleItemCount =
+                        mLayoutManager.findLastVisibleItemPosition() - firstVisibleItem + 1;
+                loadAdjacentPage(firstVisibleItem, visibleItemCount,
+                        mMoviePosterAdapter.getItemCount());
+                mPosterPrefetcher.onScroll(mColumns, mMoviePosterAdapter.getCellWidth(),
+                        firstVisibleItem, visibleItemCount);
+            }
+        });
+        mMoviePosterAdapter.setOnMovieClickListener(new MovieItemAdapter.OnMovieClickListener() {
+            @Override
+            public void onMovieClick(MovieItem movieItem, View itemView) {
+                // The poster already loaded in the cell is shown while the
+                // larger one of the details loads.
                 Intent intent = new Intent(getActivity(), MovieDetailsActivity.class)
-                        .putExtra(MovieItem.class.getCanonicalName(), movieItem);
+                        .putExtra(MovieItem.class.getCanonicalName(), movieItem)
+                        .putExtra(MovieDetailsFragment.EXTRA_THUMBNAIL_URL,
+                                movieItem.getPosterUrl(getActivity(), itemView.getWidth()));
                 startActivity(intent);
             }
         });
@@ -138,21 +513,416 @@ public class DiscoverMoviesFragment extends Fragment
      */
     private void updateMovies(String sortById) {
 
+        String sortBy = getSortByParam(sortById);
+        if (sortBy == null) {
+            Log.e(LOG_TAG, "Error: Invalid preference option to sort movies.");
+            return;
+        }
+
+        // Pages of the previous sort order are no longer wanted.
+        mRequestManager.cancel(FIRST_PAGE_REQUEST);
+        mRequestManager.cancel(ADJACENT_PAGE_REQUEST);
+        mRequestManager.cancel(RESTORE_REQUEST);
+        mPendingScrollPosition = RecyclerView.NO_POSITION;
+        dismissProgress();
+        // The movies of another sort order are shown from the top.
+        mScrollToTopPending = !sortBy.equals(mSortBy);
+        mSortBy = sortBy;
+
+        // Pages fetched within the last minutes are shown right away, with
+        // neither a request nor a query of the local store.
+        List<List<MovieItem>> cachedPages = new ArrayList<>();
+        ArrayList<MovieItem> cachedPage;
+        while (cachedPages.size() < mMoviePager.getMaxPages()
+                && (cachedPage = mMovieCache.getPage(sortBy, cachedPages.size() + 1)) != null) {
+            cachedPages.add(cachedPage);
+        }
+        if (!cachedPages.isEmpty()) {
+            mNetworkResultDelivered = true;
+            getLoaderManager().destroyLoader(MOVIES_LOADER);
+            showFirstPages(cachedPages);
+            return;
+        }
+
+        // Paints the grid from the local store right away, the network
+        // refresh replaces it once it completes.
+        mNetworkResultDelivered = false;
+        Bundle args = new Bundle();
+        args.putString(SORT_BY_ARG, sortBy);
+        getLoaderManager().restartLoader(MOVIES_LOADER, args, this);
+
         if (isNetworkAvailable()) {
-            FetchMoviesTask fetchMoviesTask = new FetchMoviesTask();
-            fetchMoviesTask.execute(sortById);
+            fetchPage(1);
+        } else {
+            showError(R.string.error_msg_no_network);
+        }
+    }
+
+    /**
+     * Shows an error message in the middle of the screen.
+     *
+     * @param messageId resource id of the message.
+     */
+    private void showError(int messageId) {
+        Toast toast = Toast.makeText(getActivity(), messageId, Toast.LENGTH_LONG);
+        toast.setGravity(Gravity.CENTER, 0, 0);
+        toast.show();
+    }
+
+    /**
+     * Maps the sort by preference to the sort order of themoviedb.org.
+     *
+     * @param sortById id of the action to sort the movies
+     *                 (for example: most popular, highest-rated)
+     * @return the sort order, or null if the preference is not valid.
+     */
+    private String getSortByParam(String sortById) {
+        if (sortById.equalsIgnoreCase(getString(R.string.pref_most_popular))) {
+            return TmdbClient.SORT_BY_POPULARITY;
+        } else if (sortById.equalsIgnoreCase(getString(R.string.pref_highest_rated))) {
+            return TmdbClient.SORT_BY_RATING;
+        }
+        return null;
+    }
+
+    /**
+     * Starts fetching a discover page of the current sort order.
+     *
+     * @param page the page to fetch, starting at 1.
+     */
+    private void fetchPage(int page) {
+        FetchMoviesTask fetchMoviesTask = new FetchMoviesTask(
+                getActivity(), mMovieCache, mSortBy, page);
+        // The first page is what the user is waiting for, the others are
+        // fetched ahead of the scroll position.
+        if (page == 1) {
+            showProgress();
+            mFirstPageStartNanos = System.nanoTime();
+            mRequestManager.start(
+                    FIRST_PAGE_REQUEST, TaskScheduler.Priority.VISIBLE, fetchMoviesTask);
+        } else {
+            mRequestManager.start(
+                    ADJACENT_PAGE_REQUEST, TaskScheduler.Priority.PREFETCH, fetchMoviesTask);
+        }
+    }
+
+    /**
+     * Requests the page after (or before) the loaded window when the visible
+     * items get within the prefetch distance of its end (or start).
+     *
+     * @param firstVisibleItem index of the first visible item.
+     * @param visibleItemCount number of visible items.
+     * @param totalItemCount number of items in the grid.
+     */
+    private void loadAdjacentPage(int firstVisibleItem, int visibleItemCount,
+                                  int totalItemCount) {
+        // Sorted on the device or searched, the grid no longer follows the pages.
+        if (mSortBy == null || totalItemCount == 0 || mQuery.hasSortKeys() || isSearching()
+                || mRequestManager.isRunning(FIRST_PAGE_REQUEST)
+                || mRequestManager.isRunning(ADJACENT_PAGE_REQUEST)) {
+            return;
+        }
+        if (firstVisibleItem + visibleItemCount >= totalItemCount - mPrefetchDistance
+                && mMoviePager.hasNextPage()) {
+            fetchPage(mMoviePager.getNextPage());
+        } else if (firstVisibleItem <= mPrefetchDistance
+                && mMoviePager.getPreviousPage() != 0) {
+            fetchPage(mMoviePager.getPreviousPage());
+        }
+    }
+
+    /**
+     * Replaces the movies shown in the grid with the given first pages.
+     *
+     * @param pages the movies of each page, in order, starting at page 1.
+     */
+    private void showFirstPages(List<List<MovieItem>> pages) {
+        mMoviePager.reset();
+        for (int i = 0; i < pages.size(); i++) {
+            mMoviePager.appendPage(i + 1, pages.get(i));
+        }
+        mMoviePager.trimEnd();
+        showMovies();
+    }
+
+    /**
+     * Adds a fetched page next to the loaded window, dropping pages at the
+     * other end of the window if it grows too large.
+     *
+     * @param page the page number.
+     * @param movies the movies of the page.
+     */
+    private void showPage(int page, List<MovieItem> movies) {
+        if (page == mMoviePager.getNextPage()) {
+            mMoviePager.appendPage(page, movies);
+            mMoviePager.trimStart();
+        } else if (page == mMoviePager.getPreviousPage()) {
+            mMoviePager.prependPage(page, movies);
+            mMoviePager.trimEnd();
+        } else {
+            return;
+        }
+        showMovies();
+    }
+
+    /**
+     * Shows the loaded window through the query. The window is shown as is,
+     * or filtered, in which case paging goes on. A query with sort keys
+     * instead sorts every movie of the local store, which is read again since
+     * the window may have added movies to it.
+     */
+    private void showMovies() {
+        // Search results stay on screen until the search is closed.
+        if (isSearching()) {
+            return;
+        }
+        if (mQuery.isIdentity()) {
+            // Drops the result of a query still running.
+            mQueryGeneration++;
+            submitMovies(new ArrayList<>(mListOfMovies));
+        } else if (!mQuery.hasSortKeys()) {
+            runQuery(new ArrayList<>(mListOfMovies), null);
         } else {
-            Toast toast = Toast.makeText(
-                    getActivity(), R.string.error_msg_no_network, Toast.LENGTH_LONG);
-            toast.setGravity(Gravity.CENTER,0,0);
-            toast.show();
+            mRequestManager.start(CATALOG_REQUEST, TaskScheduler.Priority.VISIBLE,
+                    new LoadCatalogTask(getActivity()));
         }
     }
 
+    /**
+     * Applies the query on the CPU lane and shows the result, unless another
+     * query was run meanwhile.
+     *
+     * @param movies the movies to query, used if table is null.
+     * @param table the movies to query as a table, may be null.
+     */
+    private void runQuery(final List<MovieItem> movies, final MovieTable table) {
+        final MovieQuery query = mQuery;
+        final int generation = ++mQueryGeneration;
+        TaskScheduler.getInstance().executeCpu(TaskScheduler.Priority.VISIBLE, null,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        final ArrayList<MovieItem> result =
+                                query.apply(table != null ? table : new MovieTable(movies));
+                        mHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (generation == mQueryGeneration && !isSearching()) {
+                                    submitMovies(result);
+                                }
+                            }
+                        });
+                    }
+                });
+    }
+
+    /**
+     * Applies a change of the query preferences. A new order of the movies
+     * already read is computed without reading the local store again.
+     *
+     * @param preferences the preferences.
+     */
+    private void updateQuery(SharedPreferences preferences) {
+        MovieQuery query = MovieQuery.fromPreferences(getActivity(), preferences);
+        if (query.equals(mQuery)) {
+            return;
+        }
+        mQuery = query;
+        mScrollToTopPending = true;
+        if (mQuery.hasSortKeys() && mCatalog != null) {
+            runQuery(null, mCatalog);
+        } else {
+            showMovies();
+        }
+    }
+
+    /**
+     * Hands a list of movies to the grid, which only rebinds the movies that
+     * were added, removed, moved or changed. The grid keeps the same movies on
+     * screen when pages are added or dropped before them.
+     *
+     * @param movies the movies, not modified afterwards.
+     */
+    private void submitMovies(ArrayList<MovieItem> movies) {
+        mMoviePosterAdapter.submitList(movies, new Runnable() {
+            @Override
+            public void run() {
+                if (mRecyclerView == null) {
+                    return;
+                }
+                if (mScrollToTopPending) {
+                    mScrollToTopPending = false;
+                    mRecyclerView.scrollToPosition(0);
+                } else if (mPendingScrollPosition != RecyclerView.NO_POSITION) {
+                    mRecyclerView.scrollToPosition(mPendingScrollPosition);
+                }
+                mPendingScrollPosition = RecyclerView.NO_POSITION;
+            }
+        });
+    }
+
+    @Override
+    public void onRequestFinished(String key, Object result) {
+        if (SEARCH_REQUEST.equals(key)) {
+            SearchResult searchResult = (SearchResult) result;
+            if (searchResult != null && isSearching()
+                    && searchResult.mText.equals(mSearchText)) {
+                // Drops the result of a query still running.
+                mQueryGeneration++;
+                mScrollToTopPending = true;
+                submitMovies(searchResult.mMovies);
+            }
+            return;
+        }
+        if (CATALOG_REQUEST.equals(key)) {
+            if (result != null) {
+                mCatalog = (MovieTable) result;
+                if (mQuery.hasSortKeys()) {
+                    runQuery(null, mCatalog);
+                }
+            }
+            return;
+        }
+        if (RESTORE_REQUEST.equals(key)) {
+            MoviesWindow window = (MoviesWindow) result;
+            if (window != null && window.mSortBy.equals(mSortBy)) {
+                showRestoredMovies(window);
+            } else if (mSortBy != null && mListOfMovies.isEmpty()) {
+                // The store no longer holds the saved movies, they are fetched again.
+                mPendingScrollPosition = RecyclerView.NO_POSITION;
+                updateMovies(PreferenceManager.getDefaultSharedPreferences(
+                        getActivity()).getString(
+                        getString(R.string.pref_sortBy_list_key),
+                        getString(R.string.pref_most_popular)));
+            }
+            return;
+        }
+        if (FIRST_PAGE_REQUEST.equals(key)) {
+            dismissProgress();
+            if (result == null) {
+                // Retries and the cached fallback failed, the grid keeps
+                // whatever the local store holds.
+                showError(R.string.error_msg_tmdb_unavailable);
+            }
+        }
+        MoviesPage moviesPage = (MoviesPage) result;
+        // Pages of a previous sort order are no longer shown.
+        if (moviesPage == null || !moviesPage.mSortBy.equals(mSortBy)) {
+            return;
+        }
+        if (moviesPage.mPage == 1) {
+            // A fresh first page restarts the window.
+            mNetworkResultDelivered = true;
+            List<List<MovieItem>> pages = new ArrayList<>();
+            pages.add(moviesPage.mMovies);
+            long startNanos = System.nanoTime();
+            Metrics.beginSection("discover.show_first_page");
+            try {
+                showFirstPages(pages);
+            } finally {
+                Metrics.endSection("discover.show_first_page", startNanos);
+            }
+            if (mFirstPageStartNanos != 0) {
+                // From the progress dialog to the first poster of the page.
+                mMoviePosterAdapter.timeNextPoster(mFirstPageStartNanos);
+                mFirstPageStartNanos = 0;
+            }
+        } else {
+            showPage(moviesPage.mPage, moviesPage.mMovies);
+        }
+    }
+
+    /**
+     * Shows the progress dialog of the first page.
+     */
+    private void showProgress() {
+        if (mProgressDialog == null) {
+            mProgressDialog = new ProgressDialog(getActivity());
+            mProgressDialog.setMessage("Loading Movies");
+        }
+        if (!mProgressDialog.isShowing()) {
+            mProgressDialog.show();
+        }
+    }
+
+    /**
+     * Dismisses the progress dialog of the first page.
+     */
+    private void dismissProgress() {
+        if (mProgressDialog != null && mProgressDialog.isShowing()) {
+            mProgressDialog.dismiss();
+        }
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        return new CursorLoader(getActivity(),
+                MovieContract.ListingEntry.buildListingUri(args.getString(SORT_BY_ARG)),
+                MovieStore.LISTING_COLUMNS,
+                null,
+                null,
+                null);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        if (mNetworkResultDelivered || data == null || data.getCount() == 0) {
+            return;
+        }
+        // Splits the cached listing into its consecutive pages from page 1.
+        List<List<MovieItem>> pages = new ArrayList<>();
+        data.moveToPosition(-1);
+        while (data.moveToNext()) {
+            int page = data.getInt(MovieStore.COL_LISTING_PAGE);
+            if (page > pages.size() + 1) {
+                break;
+            } else if (page == pages.size() + 1) {
+                pages.add(new ArrayList<MovieItem>());
+            }
+            pages.get(page - 1).add(new MovieItem(data));
+        }
+        showFirstPages(pages);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        // The grid holds its own copy of the movies, nothing to release.
+    }
+
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putParcelableArrayList(MOVIE_LIST_KEY, mListOfMovies);
+        // Only the ids are saved, a window of many pages would not fit the
+        // binder transaction of the saved state.
+        int[] movieIds = new int[mListOfMovies.size()];
+        for (int i = 0; i < movieIds.length; i++) {
+            movieIds[i] = mListOfMovies.get(i).getMovieId();
+        }
+        outState.putIntArray(MOVIE_IDS_KEY, movieIds);
+        outState.putInt(SCROLL_POSITION_KEY, mLayoutManager != null
+                ? Math.max(0, mLayoutManager.findFirstVisibleItemPosition())
+                : Math.max(0, mPendingScrollPosition));
+        outState.putInt(FIRST_PAGE_KEY, mMoviePager.getFirstPage());
+        outState.putIntArray(PAGE_SIZES_KEY, mMoviePager.getPageSizes());
+        outState.putString(SORT_BY_KEY, mSortBy);
+        outState.putString(SEARCH_TEXT_KEY, mSearchText);
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        // The dialog and the grid belong to the Activity being destroyed, the
+        // requests keep running and deliver to the recreated fragment.
+        mRequestManager.setCallbacks(null);
+        mHandler.removeCallbacks(mSearchRunnable);
+        dismissProgress();
+        mProgressDialog = null;
+        mPosterPrefetcher.cancelAll();
+        mMoviePosterAdapter.setOnMovieClickListener(null);
+        mRecyclerView.clearOnScrollListeners();
+        mRecyclerView.setAdapter(null);
+        mRecyclerView = null;
+        mLayoutManager = null;
     }
 
     @Override
@@ -179,183 +949,341 @@ public class DiscoverMoviesFragment extends Fragment
 
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
-        updateMovies(sharedPreferences.getString(key,getString(R.string.pref_most_popular)));
+        if (MovieQuery.isQueryPreference(getActivity(), key)) {
+            updateQuery(sharedPreferences);
+        } else if (getString(R.string.pref_sortBy_list_key).equals(key)) {
+            updateMovies(sharedPreferences.getString(key, getString(R.string.pref_most_popular)));
+        }
     }
 
     /**
-     * Obtains the movies data from the themoviedb.org API and populates the view.
+     * Discover page fetched for a sort order.
      */
-    public class FetchMoviesTask extends AsyncTask<String, Void, ArrayList<MovieItem>> {
+    private static class MoviesPage {
 
         /**
-         * Log identifier for the class.
+         * Sort order the page was fetched for.
          */
-        private final String LOG_TAG = FetchMoviesTask.class.getSimpleName();
+        final String mSortBy;
 
         /**
-         * Progress dialog when fetching movie data.
+         * The page number.
          */
-        private ProgressDialog progressDialog;
+        final int mPage;
+
+        /**
+         * Movies of the page.
+         */
+        final ArrayList<MovieItem> mMovies;
 
         /**
          * Constructor.
+         *
+         * @param sortBy sort order the page was fetched for.
+         * @param page the page number.
+         * @param movies movies of the page.
          */
-        public FetchMoviesTask() {
+        MoviesPage(String sortBy, int page, ArrayList<MovieItem> movies) {
+            mSortBy = sortBy;
+            mPage = page;
+            mMovies = movies;
+        }
+    }
 
-            progressDialog = new ProgressDialog(getActivity());
+    /**
+     * Window of discover pages restored from the saved state.
+     */
+    private static class MoviesWindow {
 
+        /**
+         * Sort order of the window.
+         */
+        final String mSortBy;
+
+        /**
+         * First page of the window and number of movies of each page.
+         */
+        final int mFirstPage;
+        final int[] mPageSizes;
+
+        /**
+         * Movies of the window, null until read back.
+         */
+        final ArrayList<MovieItem> mMovies;
+
+        /**
+         * Constructor.
+         *
+         * @param sortBy sort order of the window.
+         * @param firstPage first page of the window.
+         * @param pageSizes number of movies of each page.
+         * @param movies movies of the window, may be null.
+         */
+        MoviesWindow(String sortBy, int firstPage, int[] pageSizes,
+                     ArrayList<MovieItem> movies) {
+            mSortBy = sortBy;
+            mFirstPage = firstPage;
+            mPageSizes = pageSizes;
+            mMovies = movies;
         }
 
         /**
-         * Extracts the movie items data from the JSON response from themoviedb.org API.
+         * Looks up movies by id.
          *
-         * @param movieDataJsonStr JSON response from themoviedb.org.
-         * @return list of MovieItems with data.
-         * @throws JSONException if an error occurs.
+         * @param movieIds ids of the movies, in order.
+         * @param table movies to look them up in.
+         * @return the movies in the order of the ids, or null if any is missing.
          */
-        private ArrayList<MovieItem> getMovieEntriesFromJson(String movieDataJsonStr)
-                throws JSONException {
-
-            // Delimiter for movies items.
-            final String MOVIE_LIST = "results";
-            // Obtains the list of movies.
-            JSONObject moviesDataJson = new JSONObject(movieDataJsonStr);
-            JSONArray moviesArray = moviesDataJson.getJSONArray(MOVIE_LIST);
-            // List which will contain the populated move items.
-            ArrayList<MovieItem> movieEntries = new ArrayList<>(moviesArray.length());
-
-            // Create movie entries
-            for (int i = 0; i < moviesArray.length(); i++) {
-                movieEntries.add(i,new MovieItem(moviesArray.getJSONObject(i)));
+        static ArrayList<MovieItem> findMovies(int[] movieIds, MovieTable table) {
+            ArrayList<MovieItem> movies = new ArrayList<>(movieIds.length);
+            for (int movieId : movieIds) {
+                int row = table.indexOf(movieId);
+                if (row < 0) {
+                    return null;
+                }
+                movies.add(table.getMovie(row));
             }
-            return movieEntries;
+            return movies;
+        }
+    }
+
+    /**
+     * Reads the movies of a saved window back from the local store.
+     */
+    private static class RestoreMoviesTask implements RequestManager.Request<MoviesWindow> {
+
+        /**
+         * Resolver to reach the local movie store.
+         */
+        private final ContentResolver mContentResolver;
+
+        /**
+         * The saved window, without its movies.
+         */
+        private final MoviesWindow mWindow;
+
+        /**
+         * Ids of the movies of the window, in order.
+         */
+        private final int[] mMovieIds;
+
+        /**
+         * Constructor.
+         *
+         * @param context the context, only used to reach application wide services.
+         * @param window the saved window, without its movies.
+         * @param movieIds ids of the movies of the window, in order.
+         */
+        RestoreMoviesTask(Context context, MoviesWindow window, int[] movieIds) {
+            mContentResolver = context.getApplicationContext().getContentResolver();
+            mWindow = window;
+            mMovieIds = movieIds;
         }
 
         @Override
-        protected ArrayList<MovieItem> doInBackground(String... params) {
-            // Verify size of params.
-            if (params.length == 0) {
+        public MoviesWindow execute(CancellationToken token) throws IOException {
+            MovieTable storedMovies =
+                    new MovieTable(MovieStore.loadListing(mContentResolver, mWindow.mSortBy));
+            token.throwIfCancelled();
+            ArrayList<MovieItem> movies = MoviesWindow.findMovies(mMovieIds, storedMovies);
+            if (movies == null) {
                 return null;
             }
+            return new MoviesWindow(mWindow.mSortBy, mWindow.mFirstPage, mWindow.mPageSizes,
+                    movies);
+        }
+    }
 
-            // These two need to be declared outside the try/catch
-            // so that they can be closed in the finally block.
-            HttpURLConnection urlConnection = null;
-            BufferedReader reader = null;
-
-            // Will contain the raw JSON response as a string.
-            String moviesJsonStr = null;
+    /**
+     * Obtains a page of movies from the themoviedb.org API and caches it in the
+     * local store.
+     */
+    private static class FetchMoviesTask implements RequestManager.Request<MoviesPage> {
 
-            try {
-                // Construct the URL for the themoviedb.org query.
-                final String MOVIEDB_BASE_URL =
-                        "http://api.themoviedb.org/3/discover/movie?";
-                final String API_KEY_PARAM = "api_key";
-                final String SORT_BY_PARAM = "sort_by";
-                final String MOST_POPULAR = "popularity.desc";
-                final String HIGHEST_RATED = "vote_average.desc";
-
-                Uri builtUri = null;
-
-                if(params[0].equalsIgnoreCase(getString(R.string.pref_most_popular))) {
-                    builtUri = Uri.parse(MOVIEDB_BASE_URL).buildUpon()
-                            .appendQueryParameter(API_KEY_PARAM, getString(R.string.themoviedb_api_key))
-                            .appendQueryParameter(SORT_BY_PARAM, MOST_POPULAR)
-                            .build();
-                } else if (params[0].equalsIgnoreCase(getString(R.string.pref_highest_rated))){
-                    builtUri = Uri.parse(MOVIEDB_BASE_URL).buildUpon()
-                            .appendQueryParameter(API_KEY_PARAM, getString(R.string.themoviedb_api_key))
-                            .appendQueryParameter(SORT_BY_PARAM, HIGHEST_RATED)
-                            .build();
-                } else {
-                    Log.e(LOG_TAG, "Error: Invalid preference option to sort movies.");
-                }
+        /**
+         * Shared client for themoviedb.org.
+         */
+        private final TmdbClient mTmdbClient;
 
-                URL url;
-                if (builtUri != null) {
-                    url = new URL(builtUri.toString());
-                } else {
-                    Log.e(LOG_TAG, "Error: Invalid URL for themoviedb.org.");
-                    return null;
-                }
+        /**
+         * Resolver to cache the fetched movies in the local store.
+         */
+        private final ContentResolver mContentResolver;
 
-                // Create the request to themoviedb.org, and open the connection
-                urlConnection = (HttpURLConnection) url.openConnection();
-                urlConnection.setRequestMethod("GET");
-                urlConnection.connect();
+        /**
+         * In-memory cache of the recently fetched pages.
+         */
+        private final MovieCache mMovieCache;
 
-                // Read the input stream into a String
-                InputStream inputStream = urlConnection.getInputStream();
-                StringBuilder buffer = new StringBuilder();
-                if (inputStream == null) {
-                    Log.w(LOG_TAG, "No movie data has been fetched from themoviedb.org.");
-                    return null;
-                }
-                reader = new BufferedReader(new InputStreamReader(inputStream));
-
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                    // But it does make debugging a *lot* easier if you print out the completed
-                    // buffer for debugging.
-                    buffer.append(line + "\n");
-                }
+        /**
+         * Sort order the page is fetched for.
+         */
+        private final String mSortBy;
 
-                if (buffer.length() == 0) {
-                    // Stream was empty.  No point in parsing.
-                    Log.w(LOG_TAG, "No movie data has been fetched from themoviedb.org.");
-                    return null;
-                }
-                moviesJsonStr = buffer.toString();
-            } catch (IOException e) {
-                Log.e(LOG_TAG, "Error ", e);
-                // If the code didn't successfully get the movies data, there's no point
-                // to parse it.
-                return null;
-            } finally {
-                if (urlConnection != null) {
-                    urlConnection.disconnect();
-                }
-                if (reader != null) {
-                    try {
-                        reader.close();
-                    } catch (final IOException e) {
-                        Log.e(LOG_TAG, "Error closing stream", e);
-                    }
-                }
-            }
+        /**
+         * Discover page to fetch.
+         */
+        private final int mPage;
 
-            try {
-                return getMovieEntriesFromJson(moviesJsonStr);
-            } catch (JSONException e) {
-                Log.e(LOG_TAG, e.getMessage(), e);
-                e.printStackTrace();
-            }
-            // This will only happen if there was an error getting or parsing the forecast.
-            return null;
+        /**
+         * Constructor.
+         *
+         * @param context the context, only used to reach application wide services.
+         * @param movieCache in-memory cache of the recently fetched pages.
+         * @param sortBy sort order of themoviedb.org.
+         * @param page discover page to fetch, starting at 1.
+         */
+        FetchMoviesTask(Context context, MovieCache movieCache, String sortBy, int page) {
+            mTmdbClient = TmdbClient.getInstance(context);
+            // Holds no reference to the Activity, the request can outlive it.
+            mContentResolver = context.getApplicationContext().getContentResolver();
+            mMovieCache = movieCache;
+            mSortBy = sortBy;
+            mPage = page;
         }
 
         @Override
-        protected void onPostExecute(ArrayList<MovieItem> result) {
-            if (result != null) {
-                mMoviePosterAdapter.clear();
-                mListOfMovies.clear();
-                for (MovieItem movieItem : result) {
-                    mListOfMovies.add(movieItem);
-                }
-                mMoviePosterAdapter.addAll(mListOfMovies);
+        public MoviesPage execute(CancellationToken token) throws IOException {
+            ArrayList<MovieItem> cachedMovies = mMovieCache.getPage(mSortBy, mPage);
+            if (cachedMovies != null) {
+                return new MoviesPage(mSortBy, mPage, cachedMovies);
             }
+            // The first page is shown from the response cache right away, an
+            // expired one is refreshed in the background for the next visit.
+            TmdbClient.CachePolicy cachePolicy = mPage == 1
+                    ? TmdbClient.CachePolicy.STALE_WHILE_REVALIDATE
+                    : TmdbClient.CachePolicy.DEFAULT;
+            ArrayList<MovieItem> movies = mTmdbClient.discoverMovies(
+                    mSortBy, mPage, cachePolicy,
+                    new TmdbClient.OnRevalidatedListener<ArrayList<MovieItem>>() {
+                        @Override
+                        public void onRevalidated(ArrayList<MovieItem> result) {
+                            mMovieCache.putPage(mSortBy, mPage, result);
+                            MovieStore.saveListingPage(mContentResolver, mSortBy, mPage, result);
+                        }
+                    }, token);
+            mMovieCache.putPage(mSortBy, mPage, movies);
+            MovieStore.saveListingPage(mContentResolver, mSortBy, mPage, movies);
+            return new MoviesPage(mSortBy, mPage, movies);
+        }
+    }
 
-            if (progressDialog.isShowing()) {
-                progressDialog.dismiss();
-            }
+
+    /**
+     * Reads every movie of the local store into a table.
+     */
+    private static class LoadCatalogTask implements RequestManager.Request<MovieTable> {
+
+        /**
+         * Resolver to reach the local movie store.
+         */
+        private final ContentResolver mContentResolver;
+
+        /**
+         * Constructor.
+         *
+         * @param context the context, only used to reach application wide services.
+         */
+        LoadCatalogTask(Context context) {
+            mContentResolver = context.getApplicationContext().getContentResolver();
         }
 
         @Override
-        protected void onPreExecute() {
-            progressDialog.setMessage("Loading Movies");
-            progressDialog.show();
+        public MovieTable execute(CancellationToken token) throws IOException {
+            ArrayList<MovieItem> movies = MovieStore.loadCatalog(mContentResolver);
+            token.throwIfCancelled();
+            return new MovieTable(movies);
+        }
+    }
+
+    /**
+     * Movies found for a searched text.
+     */
+    private static class SearchResult {
+
+        /**
+         * The searched text.
+         */
+        final String mText;
+
+        /**
+         * The movies found, the most popular first.
+         */
+        final ArrayList<MovieItem> mMovies;
+
+        /**
+         * Constructor.
+         *
+         * @param text the searched text.
+         * @param movies the movies found.
+         */
+        SearchResult(String text, ArrayList<MovieItem> movies) {
+            mText = text;
+            mMovies = movies;
         }
     }
 
+    /**
+     * Searches the full-text index of the local store, and themoviedb.org
+     * when nothing on the device matches.
+     */
+    private static class SearchMoviesTask implements RequestManager.Request<SearchResult> {
+
+        /**
+         * Resolver to reach the local movie store.
+         */
+        private final ContentResolver mContentResolver;
+
+        /**
+         * Client used when nothing on the device matches.
+         */
+        private final TmdbClient mTmdbClient;
+
+        /**
+         * The searched text.
+         */
+        private final String mText;
+
+        /**
+         * Maximum number of movies found.
+         */
+        private final int mLimit;
+
+        /**
+         * Whether themoviedb.org is searched when nothing on the device matches.
+         */
+        private final boolean mSearchOnline;
+
+        /**
+         * Constructor.
+         *
+         * @param context the context, only used to reach application wide services.
+         * @param text the searched text.
+         * @param limit maximum number of movies found.
+         * @param searchOnline whether themoviedb.org is searched when nothing
+         *                     on the device matches.
+         */
+        SearchMoviesTask(Context context, String text, int limit, boolean searchOnline) {
+            mContentResolver = context.getApplicationContext().getContentResolver();
+            mTmdbClient = TmdbClient.getInstance(context);
+            mText = text;
+            mLimit = limit;
+            mSearchOnline = searchOnline;
+        }
+
+        @Override
+        public SearchResult execute(CancellationToken token) throws IOException {
+            ArrayList<MovieItem> movies = MovieStore.searchMovies(mContentResolver, mText, mLimit);
+            if (movies.isEmpty() && mSearchOnline) {
+                token.throwIfCancelled();
+                movies = mTmdbClient.searchMovies(mText.trim(), token);
+                // Indexed, the movies found are found offline next time.
+                MovieStore.saveMovies(mContentResolver, movies);
+                if (movies.size() > mLimit) {
+                    movies = new ArrayList<>(movies.subList(0, mLimit));
+                }
+            }
+            return new SearchResult(mText, movies);
+        }
+    }
 }
@@ -20,6 +20,7 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.preference.PreferenceActivity;
 import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 
@@ -28,6 +29,11 @@ import android.view.MenuItem;
  */
 public class MainActivity extends AppCompatActivity {
 
+    /**
+     * Log identifier for the class.
+     */
+    private static final String LOG_TAG = MainActivity.class.getSimpleName();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -37,6 +43,28 @@ public class MainActivity extends AppCompatActivity {
                     .add(R.id.main_activity_container, new DiscoverMoviesFragment())
                     .commit();
         }
+        // Keeps the local store fresh while the app is not in use.
+        SyncScheduler.schedule(this);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Persists the responses cached while the app was in the foreground,
+        // off the UI thread since it writes to disk.
+        final TmdbClient tmdbClient = TmdbClient.getInstance(this);
+        TaskScheduler.getInstance().executeIo(TaskScheduler.Priority.BACKGROUND, null,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        tmdbClient.flushCache();
+                    }
+                });
+        if (BuildConfig.DEBUG) {
+            Log.d(LOG_TAG, "Rate limiter: " + tmdbClient.getRateLimiterStats());
+            Log.d(LOG_TAG, "Transfers: " + tmdbClient.getTransferStats());
+            Metrics.dump();
+        }
     }
 
     @Override
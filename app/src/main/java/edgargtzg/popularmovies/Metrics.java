@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.os.Build;
+import android.os.Trace;
+import android.util.Log;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Lightweight tracing of the hot paths of the app.
+ *
+ * Sections show up in systrace from Jelly Bean MR2 on, and the durations
+ * recorded under the same name are gathered in a histogram, whose percentiles
+ * are written to logcat by {@link #dump()}.
+ */
+public final class Metrics {
+
+    /**
+     * Log identifier for the class.
+     */
+    private static final String LOG_TAG = Metrics.class.getSimpleName();
+
+    /**
+     * Whether android.os.Trace is available.
+     */
+    private static final boolean TRACE_AVAILABLE =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+    /**
+     * Histograms by name, in name order.
+     */
+    private static final TreeMap<String, Histogram> sHistograms = new TreeMap<>();
+
+    /**
+     * Duration histogram with buckets growing in powers of two, from one
+     * microsecond to over an hour, so recording costs no allocation.
+     */
+    private static class Histogram {
+
+        /**
+         * Number of buckets, bucket i counts the durations below 2^(i+1) microseconds.
+         */
+        private static final int BUCKET_COUNT = 32;
+
+        /**
+         * Counts of the buckets.
+         */
+        private final long[] mBuckets = new long[BUCKET_COUNT];
+
+        /**
+         * Number of recorded durations.
+         */
+        private long mCount;
+
+        /**
+         * Sum and maximum of the recorded durations, in microseconds.
+         */
+        private long mSumMicros;
+        private long mMaxMicros;
+
+        /**
+         * Records a duration.
+         *
+         * @param micros the duration in microseconds.
+         */
+        void record(long micros) {
+            int bucket = 63 - Long.numberOfLeadingZeros(Math.max(1, micros));
+            mBuckets[Math.min(bucket, BUCKET_COUNT - 1)]++;
+            mCount++;
+            mSumMicros += micros;
+            mMaxMicros = Math.max(mMaxMicros, micros);
+        }
+
+        /**
+         * Estimates a percentile as the upper bound of the bucket holding it.
+         *
+         * @param percent the percentile, between 0 and 100.
+         * @return the estimate in microseconds.
+         */
+        long percentileMicros(int percent) {
+            long rank = (mCount * percent + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mBuckets[i];
+                if (seen >= rank) {
+                    return Math.min(1L << (i + 1), mMaxMicros);
+                }
+            }
+            return mMaxMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + mCount
+                    + " mean=" + formatMillis(mCount > 0 ? mSumMicros / mCount : 0)
+                    + " p50=" + formatMillis(percentileMicros(50))
+                    + " p90=" + formatMillis(percentileMicros(90))
+                    + " p99=" + formatMillis(percentileMicros(99))
+                    + " max=" + formatMillis(mMaxMicros);
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Starts a trace section on the calling thread, to be ended by
+     * {@link #endSection()} on the same thread.
+     *
+     * @param name name of the section, at most 127 characters.
+     */
+    public static void beginSection(String name) {
+        if (TRACE_AVAILABLE) {
+            Trace.beginSection(name);
+        }
+    }
+
+    /**
+     * Ends the last trace section started on the calling thread.
+     */
+    public static void endSection() {
+        if (TRACE_AVAILABLE) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Records a duration in the histogram of the given name.
+     *
+     * @param name name of the histogram.
+     * @param durationNanos the duration in nanoseconds.
+     */
+    public static void record(String name, long durationNanos) {
+        synchronized (sHistograms) {
+            Histogram histogram = sHistograms.get(name);
+            if (histogram == null) {
+                histogram = new Histogram();
+                sHistograms.put(name, histogram);
+            }
+            histogram.record(Math.max(0, durationNanos) / 1000);
+        }
+    }
+
+    /**
+     * Records the time elapsed since the given start in the histogram of the
+     * given name, and ends the last trace section started on the calling
+     * thread.
+     *
+     * @param name name of the histogram.
+     * @param startNanos start of the section, from {@link System#nanoTime()}.
+     */
+    public static void endSection(String name, long startNanos) {
+        endSection();
+        record(name, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Writes the percentiles of every histogram to logcat.
+     */
+    public static void dump() {
+        synchronized (sHistograms) {
+            for (Map.Entry<String, Histogram> entry : sHistograms.entrySet()) {
+                Log.i(LOG_TAG, entry.getKey() + ": " + entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Formats a duration in milliseconds with a tenth of a millisecond.
+     *
+     * @param micros the duration in microseconds.
+     * @return the formatted duration.
+     */
+    private static String formatMillis(long micros) {
+        return (micros / 1000) + "." + (micros % 1000 / 100) + " ms";
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+import java.util.ArrayList;
+
+/**
+ * Application wide in-memory cache of already parsed themoviedb.org results,
+ * in front of the local store and the HTTP cache.
+ *
+ * Keeps the recent discover pages, keyed by sort order and page, and the
+ * recent movie details, keyed by movie id, so going back to them within a
+ * few minutes needs neither a request nor parsing.
+ */
+public final class MovieCache {
+
+    /**
+     * Single shared instance.
+     */
+    private static MovieCache sInstance;
+
+    /**
+     * Discover pages by sort order and page.
+     */
+    private final TtlLruCache<String, ArrayList<MovieItem>> mPages;
+
+    /**
+     * Movie details by movie id.
+     */
+    private final TtlLruCache<Integer, MovieDetails> mDetails;
+
+    /**
+     * Constructor.
+     *
+     * @param maxPages maximum number of discover pages kept.
+     * @param maxDetails maximum number of movie details kept.
+     * @param ttlMs time an entry stays valid, in milliseconds.
+     */
+    private MovieCache(int maxPages, int maxDetails, long ttlMs) {
+        mPages = new TtlLruCache<>(maxPages, ttlMs);
+        mDetails = new TtlLruCache<>(maxDetails, ttlMs);
+    }
+
+    /**
+     * Gets the shared cache.
+     *
+     * @param context any context, used to read the cache sizes.
+     * @return the shared cache.
+     */
+    public static synchronized MovieCache getInstance(Context context) {
+        if (sInstance == null) {
+            Resources resources = context.getApplicationContext().getResources();
+            sInstance = new MovieCache(
+                    resources.getInteger(R.integer.memory_cache_max_pages),
+                    resources.getInteger(R.integer.memory_cache_max_details),
+                    resources.getInteger(R.integer.memory_cache_ttl_minutes) * 60 * 1000L);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Gets a discover page.
+     *
+     * @param sortBy sort order of the page.
+     * @param page the page number.
+     * @return the movies of the page, or null if not cached. Must not be modified.
+     */
+    public ArrayList<MovieItem> getPage(String sortBy, int page) {
+        return mPages.get(pageKey(sortBy, page));
+    }
+
+    /**
+     * Adds a discover page.
+     *
+     * @param sortBy sort order of the page.
+     * @param page the page number.
+     * @param movies the movies of the page, must not be modified afterwards.
+     */
+    public void putPage(String sortBy, int page, ArrayList<MovieItem> movies) {
+        mPages.put(pageKey(sortBy, page), movies);
+    }
+
+    /**
+     * Gets the details of a movie.
+     *
+     * @param movieId id of the movie.
+     * @return the movie details, or null if not cached.
+     */
+    public MovieDetails getDetails(int movieId) {
+        return mDetails.get(movieId);
+    }
+
+    /**
+     * Adds the details of a movie.
+     *
+     * @param movieId id of the movie.
+     * @param movieDetails the movie details.
+     */
+    public void putDetails(int movieId, MovieDetails movieDetails) {
+        mDetails.put(movieId, movieDetails);
+    }
+
+    /**
+     * Builds the key of a discover page.
+     *
+     * @param sortBy sort order of the page.
+     * @param page the page number.
+     * @return the key.
+     */
+    private static String pageKey(String sortBy, int page) {
+        return sortBy + '/' + page;
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+/**
+ * Defines table and column names for the local movie store.
+ */
+public final class MovieContract {
+
+    /**
+     * Name of the content provider.
+     */
+    public static final String CONTENT_AUTHORITY = "edgargtzg.popularmovies";
+
+    /**
+     * Base of all URIs used to contact the content provider.
+     */
+    public static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
+
+    /**
+     * Paths appended to the base content URI.
+     */
+    public static final String PATH_MOVIE = "movie";
+    public static final String PATH_LISTING = "listing";
+    public static final String PATH_VIDEO = "video";
+    public static final String PATH_REVIEW = "review";
+    public static final String PATH_SEARCH = "search";
+
+    /**
+     * Not instantiable.
+     */
+    private MovieContract() {
+    }
+
+    /**
+     * Movie details, one row per movie seen from themoviedb.org.
+     */
+    public static final class MovieEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_MOVIE).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_MOVIE;
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_MOVIE;
+
+        public static final String TABLE_NAME = "movie";
+
+        /**
+         * themoviedb.org id of the movie.
+         */
+        public static final String COLUMN_MOVIE_ID = "movie_id";
+        public static final String COLUMN_ORIGINAL_TITLE = "original_title";
+        public static final String COLUMN_POSTER_PATH = "poster_path";
+        public static final String COLUMN_PLOT_SYNOPSIS = "plot_synopsis";
+        public static final String COLUMN_USER_RATING = "user_rating";
+        public static final String COLUMN_RELEASE_DATE = "release_date";
+        public static final String COLUMN_POPULARITY = "popularity";
+        public static final String COLUMN_VOTE_COUNT = "vote_count";
+
+        /**
+         * Builds the URI of a single movie.
+         *
+         * @param movieId themoviedb.org id of the movie.
+         * @return the movie URI.
+         */
+        public static Uri buildMovieUri(long movieId) {
+            return ContentUris.withAppendedId(CONTENT_URI, movieId);
+        }
+    }
+
+    /**
+     * Ordered membership of movies in a discover listing (sort order).
+     */
+    public static final class ListingEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_LISTING).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_LISTING;
+
+        public static final String TABLE_NAME = "listing";
+
+        /**
+         * Sort order of the listing, as sent to the discover endpoint.
+         */
+        public static final String COLUMN_SORT_BY = "sort_by";
+
+        /**
+         * Discover page the movie was returned on, starting at 1.
+         */
+        public static final String COLUMN_PAGE = "page";
+
+        /**
+         * Position of the movie within its page.
+         */
+        public static final String COLUMN_POSITION = "position";
+        public static final String COLUMN_MOVIE_ID = "movie_id";
+
+        /**
+         * Builds the URI of the movies of a listing, in listing order.
+         *
+         * @param sortBy sort order of the listing.
+         * @return the listing URI.
+         */
+        public static Uri buildListingUri(String sortBy) {
+            return CONTENT_URI.buildUpon().appendPath(sortBy).build();
+        }
+
+        /**
+         * Gets the sort order from a listing URI.
+         *
+         * @param uri the listing URI.
+         * @return the sort order.
+         */
+        public static String getSortByFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+    }
+
+    /**
+     * Full-text index of the titles and plot synopses of the movies, kept in
+     * step with the movie table by triggers. The docid of a row is the
+     * themoviedb.org id of the movie.
+     */
+    public static final class SearchEntry {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_SEARCH).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SEARCH;
+
+        public static final String TABLE_NAME = "movie_fts";
+
+        public static final String COLUMN_TITLE = "title";
+        public static final String COLUMN_SYNOPSIS = "synopsis";
+
+        /**
+         * Query parameter of the maximum number of movies returned.
+         */
+        public static final String PARAM_LIMIT = "limit";
+
+        /**
+         * Not instantiable.
+         */
+        private SearchEntry() {
+        }
+
+        /**
+         * Builds the URI of the movies matching a full-text query, the most
+         * popular first.
+         *
+         * @param matchQuery the query, in the MATCH syntax of SQLite.
+         * @param limit maximum number of movies.
+         * @return the search URI.
+         */
+        public static Uri buildSearchUri(String matchQuery, int limit) {
+            return CONTENT_URI.buildUpon().appendPath(matchQuery)
+                    .appendQueryParameter(PARAM_LIMIT, String.valueOf(limit)).build();
+        }
+
+        /**
+         * Gets the full-text query from a search URI.
+         *
+         * @param uri the search URI.
+         * @return the query.
+         */
+        public static String getMatchQueryFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+    }
+
+    /**
+     * Videos (trailers) of a movie.
+     */
+    public static final class VideoEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_VIDEO).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_VIDEO;
+
+        public static final String TABLE_NAME = "video";
+
+        public static final String COLUMN_MOVIE_ID = "movie_id";
+        public static final String COLUMN_POSITION = "position";
+        public static final String COLUMN_KEY = "video_key";
+        public static final String COLUMN_NAME = "name";
+        public static final String COLUMN_SITE = "site";
+        public static final String COLUMN_TYPE = "type";
+
+        /**
+         * Builds the URI of the videos of a movie.
+         *
+         * @param movieId themoviedb.org id of the movie.
+         * @return the videos URI.
+         */
+        public static Uri buildMovieVideosUri(long movieId) {
+            return ContentUris.withAppendedId(CONTENT_URI, movieId);
+        }
+    }
+
+    /**
+     * Reviews of a movie.
+     */
+    public static final class ReviewEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_REVIEW).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_REVIEW;
+
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_REVIEW;
+
+        public static final String TABLE_NAME = "review";
+
+        public static final String COLUMN_MOVIE_ID = "movie_id";
+
+        /**
+         * themoviedb.org id of the review.
+         */
+        public static final String COLUMN_REVIEW_ID = "review_id";
+
+        /**
+         * Reviews page the review was returned on, starting at 1.
+         */
+        public static final String COLUMN_PAGE = "page";
+
+        /**
+         * Position of the review among the reviews of the movie.
+         */
+        public static final String COLUMN_POSITION = "position";
+        public static final String COLUMN_AUTHOR = "author";
+
+        /**
+         * Start of the content, and whether it is shorter than the content.
+         */
+        public static final String COLUMN_PREVIEW = "preview";
+        public static final String COLUMN_TRUNCATED = "truncated";
+        public static final String COLUMN_CONTENT = "content";
+
+        /**
+         * Builds the URI of the reviews of a movie.
+         *
+         * @param movieId themoviedb.org id of the movie.
+         * @return the reviews URI.
+         */
+        public static Uri buildMovieReviewsUri(long movieId) {
+            return ContentUris.withAppendedId(CONTENT_URI, movieId);
+        }
+
+        /**
+         * Builds the URI of a single review of a movie.
+         *
+         * @param movieId themoviedb.org id of the movie.
+         * @param reviewId themoviedb.org id of the review.
+         * @return the review URI.
+         */
+        public static Uri buildReviewUri(long movieId, String reviewId) {
+            return buildMovieReviewsUri(movieId).buildUpon().appendPath(reviewId).build();
+        }
+
+        /**
+         * Gets the review id from a review URI.
+         *
+         * @param uri the review URI.
+         * @return the review id.
+         */
+        public static String getReviewIdFromUri(Uri uri) {
+            return uri.getPathSegments().get(2);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import edgargtzg.popularmovies.MovieContract.ListingEntry;
+import edgargtzg.popularmovies.MovieContract.MovieEntry;
+import edgargtzg.popularmovies.MovieContract.ReviewEntry;
+import edgargtzg.popularmovies.MovieContract.SearchEntry;
+import edgargtzg.popularmovies.MovieContract.VideoEntry;
+
+/**
+ * Manages the local database of movies, videos and reviews.
+ */
+public class MovieDbHelper extends SQLiteOpenHelper {
+
+    /**
+     * Must be incremented whenever the schema changes.
+     */
+    private static final int DATABASE_VERSION = 6;
+
+    static final String DATABASE_NAME = "movies.db";
+
+    public MovieDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase sqLiteDatabase) {
+
+        final String SQL_CREATE_MOVIE_TABLE = "CREATE TABLE " + MovieEntry.TABLE_NAME + " (" +
+                MovieEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                MovieEntry.COLUMN_MOVIE_ID + " INTEGER NOT NULL, " +
+                MovieEntry.COLUMN_ORIGINAL_TITLE + " TEXT NOT NULL, " +
+                MovieEntry.COLUMN_POSTER_PATH + " TEXT NOT NULL, " +
+                MovieEntry.COLUMN_PLOT_SYNOPSIS + " TEXT NOT NULL, " +
+                // Null when the movie has no rating.
+                MovieEntry.COLUMN_USER_RATING + " REAL, " +
+                // Days since 1970-01-01, null when the movie has no release date.
+                MovieEntry.COLUMN_RELEASE_DATE + " INTEGER, " +
+                MovieEntry.COLUMN_POPULARITY + " REAL NOT NULL, " +
+                MovieEntry.COLUMN_VOTE_COUNT + " INTEGER NOT NULL, " +
+                // One row per movie, newer data replaces the older one.
+                " UNIQUE (" + MovieEntry.COLUMN_MOVIE_ID + ") ON CONFLICT REPLACE);";
+
+        final String SQL_CREATE_LISTING_TABLE = "CREATE TABLE " + ListingEntry.TABLE_NAME + " (" +
+                ListingEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                ListingEntry.COLUMN_SORT_BY + " TEXT NOT NULL, " +
+                ListingEntry.COLUMN_PAGE + " INTEGER NOT NULL, " +
+                ListingEntry.COLUMN_POSITION + " INTEGER NOT NULL, " +
+                ListingEntry.COLUMN_MOVIE_ID + " INTEGER NOT NULL, " +
+                " UNIQUE (" + ListingEntry.COLUMN_SORT_BY + ", " +
+                ListingEntry.COLUMN_PAGE + ", " +
+                ListingEntry.COLUMN_POSITION + ") ON CONFLICT REPLACE);";
+
+        final String SQL_CREATE_VIDEO_TABLE = "CREATE TABLE " + VideoEntry.TABLE_NAME + " (" +
+                VideoEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                VideoEntry.COLUMN_MOVIE_ID + " INTEGER NOT NULL, " +
+                VideoEntry.COLUMN_POSITION + " INTEGER NOT NULL, " +
+                VideoEntry.COLUMN_KEY + " TEXT NOT NULL, " +
+                VideoEntry.COLUMN_NAME + " TEXT NOT NULL, " +
+                VideoEntry.COLUMN_SITE + " TEXT NOT NULL, " +
+                VideoEntry.COLUMN_TYPE + " TEXT NOT NULL);";
+
+        final String SQL_CREATE_REVIEW_TABLE = "CREATE TABLE " + ReviewEntry.TABLE_NAME + " (" +
+                ReviewEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                ReviewEntry.COLUMN_MOVIE_ID + " INTEGER NOT NULL, " +
+                ReviewEntry.COLUMN_REVIEW_ID + " TEXT NOT NULL, " +
+                ReviewEntry.COLUMN_PAGE + " INTEGER NOT NULL, " +
+                ReviewEntry.COLUMN_POSITION + " INTEGER NOT NULL, " +
+                ReviewEntry.COLUMN_AUTHOR + " TEXT NOT NULL, " +
+                ReviewEntry.COLUMN_PREVIEW + " TEXT NOT NULL, " +
+                ReviewEntry.COLUMN_TRUNCATED + " INTEGER NOT NULL, " +
+                ReviewEntry.COLUMN_CONTENT + " TEXT NOT NULL);";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_MOVIE_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_LISTING_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_VIDEO_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_REVIEW_TABLE);
+
+        // Detail rows are always looked up by movie.
+        sqLiteDatabase.execSQL("CREATE INDEX video_movie_idx ON " + VideoEntry.TABLE_NAME +
+                " (" + VideoEntry.COLUMN_MOVIE_ID + ");");
+        sqLiteDatabase.execSQL("CREATE INDEX review_movie_idx ON " + ReviewEntry.TABLE_NAME +
+                " (" + ReviewEntry.COLUMN_MOVIE_ID + ");");
+
+        // Full-text index of the movies, keyed by movie id.
+        sqLiteDatabase.execSQL("CREATE VIRTUAL TABLE " + SearchEntry.TABLE_NAME +
+                " USING fts3(" + SearchEntry.COLUMN_TITLE + ", " +
+                SearchEntry.COLUMN_SYNOPSIS + ");");
+        // Replacing a movie row fires no delete trigger, so the insert
+        // trigger drops the indexed row of the movie itself.
+        sqLiteDatabase.execSQL("CREATE TRIGGER movie_fts_insert AFTER INSERT ON " +
+                MovieEntry.TABLE_NAME + " BEGIN " +
+                "DELETE FROM " + SearchEntry.TABLE_NAME +
+                " WHERE docid = new." + MovieEntry.COLUMN_MOVIE_ID + "; " +
+                "INSERT INTO " + SearchEntry.TABLE_NAME + "(docid, " +
+                SearchEntry.COLUMN_TITLE + ", " + SearchEntry.COLUMN_SYNOPSIS + ") VALUES (" +
+                "new." + MovieEntry.COLUMN_MOVIE_ID + ", " +
+                "new." + MovieEntry.COLUMN_ORIGINAL_TITLE + ", " +
+                "new." + MovieEntry.COLUMN_PLOT_SYNOPSIS + "); END;");
+        sqLiteDatabase.execSQL("CREATE TRIGGER movie_fts_update AFTER UPDATE ON " +
+                MovieEntry.TABLE_NAME + " BEGIN " +
+                "DELETE FROM " + SearchEntry.TABLE_NAME +
+                " WHERE docid = old." + MovieEntry.COLUMN_MOVIE_ID + "; " +
+                "INSERT INTO " + SearchEntry.TABLE_NAME + "(docid, " +
+                SearchEntry.COLUMN_TITLE + ", " + SearchEntry.COLUMN_SYNOPSIS + ") VALUES (" +
+                "new." + MovieEntry.COLUMN_MOVIE_ID + ", " +
+                "new." + MovieEntry.COLUMN_ORIGINAL_TITLE + ", " +
+                "new." + MovieEntry.COLUMN_PLOT_SYNOPSIS + "); END;");
+        sqLiteDatabase.execSQL("CREATE TRIGGER movie_fts_delete AFTER DELETE ON " +
+                MovieEntry.TABLE_NAME + " BEGIN " +
+                "DELETE FROM " + SearchEntry.TABLE_NAME +
+                " WHERE docid = old." + MovieEntry.COLUMN_MOVIE_ID + "; END;");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        // The database only caches data from themoviedb.org, so on upgrade it
+        // is simply discarded and fetched again.
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + MovieEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + ListingEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + VideoEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + ReviewEntry.TABLE_NAME);
+        // The triggers are dropped with the movie table.
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + SearchEntry.TABLE_NAME);
+        onCreate(sqLiteDatabase);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import java.util.ArrayList;
+
+/**
+ * Contains the details of a movie together with its videos and reviews.
+ */
+public class MovieDetails {
+
+    /**
+     * Contains the movie data.
+     */
+    private final MovieItem mMovieItem;
+
+    /**
+     * Contains the list of movie video items.
+     */
+    private final ArrayList<MovieItemVideo> mVideos;
+
+    /**
+     * Contains the first page of the movie reviews.
+     */
+    private final MovieReviewsPage mReviews;
+
+    /**
+     * Default constructor.
+     *
+     * @param movieItem the movie data.
+     * @param videos the videos of the movie.
+     * @param reviews the first page of the reviews of the movie.
+     */
+    public MovieDetails(MovieItem movieItem, ArrayList<MovieItemVideo> videos,
+                        MovieReviewsPage reviews) {
+        mMovieItem = movieItem;
+        mVideos = videos;
+        mReviews = reviews;
+    }
+
+    /**
+     * Gets the movie data.
+     *
+     * @return the movie data.
+     */
+    public MovieItem getMovieItem() {
+        return mMovieItem;
+    }
+
+    /**
+     * Gets the videos of the movie.
+     *
+     * @return the videos of the movie.
+     */
+    public ArrayList<MovieItemVideo> getVideos() {
+        return mVideos;
+    }
+
+    /**
+     * Gets the first page of the reviews of the movie.
+     *
+     * @return the first page of the reviews.
+     */
+    public MovieReviewsPage getReviews() {
+        return mReviews;
+    }
+}
@@ -0,0 +1,512 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.RatingBar;
+import android.widget.TextView;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Adapter to populate the movie details list: a header with the movie data,
+ * followed by the trailers and the reviews, each under a label.
+ *
+ * Every row is recycled, so only the rows on screen are inflated and
+ * measured, however many reviews the movie has. Reviews show their preview
+ * until expanded, and a last row loads the next page of reviews.
+ */
+public class MovieDetailsAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+    /**
+     * Receives clicks on the trailers.
+     */
+    public interface OnVideoClickListener {
+
+        /**
+         * Called when a trailer is clicked.
+         *
+         * @param videoItem the trailer.
+         */
+        void onVideoClick(MovieItemVideo videoItem);
+    }
+
+    /**
+     * Loads what the review rows need on demand.
+     */
+    public interface OnReviewsListener {
+
+        /**
+         * Called when a truncated review whose content is not loaded yet is
+         * expanded. {@link #setReviewContent} must be called once the
+         * content is loaded.
+         *
+         * @param reviewItem the review.
+         */
+        void onLoadReviewContent(MovieItemReview reviewItem);
+
+        /**
+         * Called when the next page of reviews is requested.
+         */
+        void onLoadMoreReviews();
+    }
+
+    /**
+     * Row types of the list.
+     */
+    private static final int TYPE_HEADER = 0;
+    private static final int TYPE_LABEL = 1;
+    private static final int TYPE_VIDEO = 2;
+    private static final int TYPE_REVIEW = 3;
+    private static final int TYPE_LOAD_MORE = 4;
+
+    /**
+     * Keeps the views of the header.
+     */
+    static class HeaderHolder extends RecyclerView.ViewHolder {
+
+        /**
+         * Views of the movie data.
+         */
+        final TextView mTitleTextView;
+        final TextView mReleaseTextView;
+        final ImageView mPosterImageView;
+        final RatingBar mRatingBar;
+        final TextView mPlotTextView;
+
+        /**
+         * URL of the poster loaded into the view, null if none.
+         */
+        String mPosterUrl;
+
+        HeaderHolder(View itemView) {
+            super(itemView);
+            mTitleTextView = (TextView) itemView.findViewById(R.id.movie_title_textView);
+            mReleaseTextView = (TextView) itemView.findViewById(R.id.movie_release_textView);
+            mPosterImageView = (ImageView) itemView.findViewById(R.id.movie_poster_imageView);
+            mRatingBar = (RatingBar) itemView.findViewById(R.id.movie_ratingBar);
+            mPlotTextView = (TextView) itemView.findViewById(R.id.movie_plot_textView);
+        }
+    }
+
+    /**
+     * Keeps the view of a section label.
+     */
+    static class LabelHolder extends RecyclerView.ViewHolder {
+
+        /**
+         * Text of the label.
+         */
+        final TextView mLabelTextView;
+
+        LabelHolder(View itemView) {
+            super(itemView);
+            mLabelTextView = (TextView) itemView.findViewById(R.id.list_details_label_textview);
+        }
+    }
+
+    /**
+     * Keeps the views of a trailer.
+     */
+    class VideoHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        /**
+         * Name of the video.
+         */
+        final TextView mNameTextView;
+
+        VideoHolder(View itemView) {
+            super(itemView);
+            mNameTextView = (TextView) itemView.findViewById(R.id.list_video_movie_textview);
+            itemView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION && mOnVideoClickListener != null) {
+                mOnVideoClickListener.onVideoClick(mVideos.get(position - getFirstVideoPosition()));
+            }
+        }
+    }
+
+    /**
+     * Keeps the views of a review.
+     */
+    class ReviewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        /**
+         * Author of the review.
+         */
+        final TextView mAuthorTextView;
+
+        /**
+         * Content of the review.
+         */
+        final TextView mContentTextView;
+
+        ReviewHolder(View itemView) {
+            super(itemView);
+            mAuthorTextView = (TextView) itemView.findViewById(
+                    R.id.list_review_movie_author_textview);
+            mContentTextView = (TextView) itemView.findViewById(
+                    R.id.list_review_movie_content_textview);
+            itemView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+            MovieItemReview reviewItem = mReviews.get(position - getFirstReviewPosition());
+            if (!reviewItem.isTruncated()) {
+                return;
+            }
+            // Toggles between the preview and the full content.
+            if (!mExpandedReviews.remove(reviewItem.getReviewId())) {
+                mExpandedReviews.add(reviewItem.getReviewId());
+                if (getReviewContent(reviewItem) == null && mOnReviewsListener != null) {
+                    mOnReviewsListener.onLoadReviewContent(reviewItem);
+                }
+            }
+            notifyItemChanged(position);
+        }
+    }
+
+    /**
+     * Keeps the view of the row loading the next page of reviews.
+     */
+    class LoadMoreHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        /**
+         * Text of the row.
+         */
+        final TextView mLoadMoreTextView;
+
+        LoadMoreHolder(View itemView) {
+            super(itemView);
+            mLoadMoreTextView = (TextView) itemView.findViewById(
+                    R.id.list_details_load_more_textview);
+            itemView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            if (!mLoadingMoreReviews && mOnReviewsListener != null) {
+                mOnReviewsListener.onLoadMoreReviews();
+            }
+        }
+    }
+
+    /**
+     * The current context.
+     */
+    private final Context mAdapterContext;
+
+    /**
+     * Movie shown in the header.
+     */
+    private MovieItem mMovieItem;
+
+    /**
+     * URL of the poster shown in the grid, displayed until the larger poster
+     * of the header is loaded. May be null.
+     */
+    private final String mThumbnailUrl;
+
+    /**
+     * Trailers and reviews of the movie, owned by the fragment.
+     */
+    private final List<MovieItemVideo> mVideos;
+    private final List<MovieItemReview> mReviews;
+
+    /**
+     * Receives clicks on the trailers.
+     */
+    private OnVideoClickListener mOnVideoClickListener;
+
+    /**
+     * Loads the review contents and pages.
+     */
+    private OnReviewsListener mOnReviewsListener;
+
+    /**
+     * Ids of the reviews showing their full content.
+     */
+    private final HashSet<String> mExpandedReviews = new HashSet<>();
+
+    /**
+     * Contents loaded on demand, by review id. Kept here since the reviews
+     * may be shared with the caches and must not be modified.
+     */
+    private final HashMap<String, String> mReviewContents = new HashMap<>();
+
+    /**
+     * Whether more pages of reviews exist, and whether the next one is loading.
+     */
+    private boolean mHasMoreReviews;
+    private boolean mLoadingMoreReviews;
+
+    /**
+     * Constructor.
+     *
+     * @param context the current context.
+     * @param movieItem movie shown in the header.
+     * @param thumbnailUrl URL of the poster already loaded in the grid, may be null.
+     * @param videos trailers of the movie, the adapter is notified of changes.
+     * @param reviews reviews of the movie, the adapter is notified of changes.
+     */
+    public MovieDetailsAdapter(Context context, MovieItem movieItem, String thumbnailUrl,
+                               List<MovieItemVideo> videos, List<MovieItemReview> reviews) {
+        mAdapterContext = context;
+        mMovieItem = movieItem;
+        mThumbnailUrl = thumbnailUrl;
+        mVideos = videos;
+        mReviews = reviews;
+    }
+
+    /**
+     * Sets the receiver of the clicks on the trailers.
+     *
+     * @param listener the receiver.
+     */
+    public void setOnVideoClickListener(OnVideoClickListener listener) {
+        mOnVideoClickListener = listener;
+    }
+
+    /**
+     * Sets the loader of the review contents and pages.
+     *
+     * @param listener the loader.
+     */
+    public void setOnReviewsListener(OnReviewsListener listener) {
+        mOnReviewsListener = listener;
+    }
+
+    /**
+     * Sets whether more pages of reviews exist. The adapter must be notified
+     * of the change of the reviews separately.
+     *
+     * @param hasMoreReviews true to show the row loading the next page.
+     */
+    public void setHasMoreReviews(boolean hasMoreReviews) {
+        mHasMoreReviews = hasMoreReviews;
+    }
+
+    /**
+     * Sets whether the next page of reviews is loading.
+     *
+     * @param loadingMoreReviews true while the page loads.
+     */
+    public void setLoadingMoreReviews(boolean loadingMoreReviews) {
+        mLoadingMoreReviews = loadingMoreReviews;
+        if (mHasMoreReviews) {
+            notifyItemChanged(getItemCount() - 1);
+        }
+    }
+
+    /**
+     * Sets the content of a review loaded on demand and rebinds its row.
+     *
+     * @param reviewId id of the review.
+     * @param content the review content.
+     */
+    public void setReviewContent(String reviewId, String content) {
+        mReviewContents.put(reviewId, content);
+        for (int i = 0; i < mReviews.size(); i++) {
+            if (mReviews.get(i).getReviewId().equals(reviewId)) {
+                notifyItemChanged(getFirstReviewPosition() + i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the content of a review, either fetched with it or loaded on demand.
+     *
+     * @param reviewItem the review.
+     * @return the review content, null if it was not loaded yet.
+     */
+    private String getReviewContent(MovieItemReview reviewItem) {
+        String content = reviewItem.getReviewContent();
+        return content != null ? content : mReviewContents.get(reviewItem.getReviewId());
+    }
+
+    /**
+     * Replaces the movie shown in the header.
+     *
+     * @param movieItem the movie.
+     */
+    public void setMovieItem(MovieItem movieItem) {
+        mMovieItem = movieItem;
+        notifyItemChanged(0);
+    }
+
+    /**
+     * Gets the position of the first trailer, after the header and its label.
+     *
+     * @return the position.
+     */
+    private int getFirstVideoPosition() {
+        return 2;
+    }
+
+    /**
+     * Gets the position of the first review, after the trailers and the
+     * reviews label.
+     *
+     * @return the position.
+     */
+    private int getFirstReviewPosition() {
+        return getFirstVideoPosition() + mVideos.size() + 1;
+    }
+
+    @Override
+    public int getItemCount() {
+        return getFirstReviewPosition() + mReviews.size() + (mHasMoreReviews ? 1 : 0);
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        if (position == 0) {
+            return TYPE_HEADER;
+        } else if (position == 1 || position == getFirstReviewPosition() - 1) {
+            return TYPE_LABEL;
+        } else if (position < getFirstReviewPosition()) {
+            return TYPE_VIDEO;
+        } else if (position < getFirstReviewPosition() + mReviews.size()) {
+            return TYPE_REVIEW;
+        }
+        return TYPE_LOAD_MORE;
+    }
+
+    @Override
+    public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        LayoutInflater inflater = LayoutInflater.from(mAdapterContext);
+        switch (viewType) {
+            case TYPE_HEADER:
+                return new HeaderHolder(
+                        inflater.inflate(R.layout.list_details_header, parent, false));
+            case TYPE_LABEL:
+                return new LabelHolder(
+                        inflater.inflate(R.layout.list_details_label, parent, false));
+            case TYPE_VIDEO:
+                return new VideoHolder(
+                        inflater.inflate(R.layout.list_video_movie_item, parent, false));
+            case TYPE_REVIEW:
+                return new ReviewHolder(
+                        inflater.inflate(R.layout.list_review_movie_item, parent, false));
+            default:
+                return new LoadMoreHolder(
+                        inflater.inflate(R.layout.list_details_load_more, parent, false));
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        long startNanos = System.nanoTime();
+        Metrics.beginSection("details.bind");
+        try {
+            switch (holder.getItemViewType()) {
+                case TYPE_HEADER:
+                    bindHeader((HeaderHolder) holder);
+                    break;
+                case TYPE_LABEL:
+                    ((LabelHolder) holder).mLabelTextView.setText(position == 1
+                            ? R.string.details_trailers_label
+                            : R.string.details_reviews_label);
+                    break;
+                case TYPE_VIDEO:
+                    MovieItemVideo videoItem = mVideos.get(position - getFirstVideoPosition());
+                    ((VideoHolder) holder).mNameTextView.setText(videoItem.getVideoName());
+                    break;
+                case TYPE_REVIEW:
+                    MovieItemReview reviewItem = mReviews.get(position - getFirstReviewPosition());
+                    ReviewHolder reviewHolder = (ReviewHolder) holder;
+                    reviewHolder.mAuthorTextView.setText(reviewItem.getReviewAuthor());
+                    // Only an expanded review lays out its full content, the
+                    // preview is shown until the content is loaded.
+                    String content = getReviewContent(reviewItem);
+                    boolean expanded = mExpandedReviews.contains(reviewItem.getReviewId());
+                    reviewHolder.mContentTextView.setText(expanded && content != null
+                            ? content
+                            : reviewItem.getReviewPreview());
+                    break;
+                default:
+                    ((LoadMoreHolder) holder).mLoadMoreTextView.setText(mLoadingMoreReviews
+                            ? R.string.details_loading_reviews
+                            : R.string.details_more_reviews);
+                    break;
+            }
+        } finally {
+            Metrics.endSection("details.bind", startNanos);
+        }
+    }
+
+    /**
+     * Populates the movie data views of the header.
+     *
+     * @param holder the header views.
+     */
+    private void bindHeader(HeaderHolder holder) {
+        String value;
+        // Populates movie original title text view value.
+        value = mMovieItem.getOriginalTitle();
+        if (!(value.isEmpty())) {
+            holder.mTitleTextView.setText(value);
+        }
+
+        // Populates movie poster image, unless it is already loaded.
+        value = mMovieItem.getMoviePoster();
+        if (!(value.isEmpty())) {
+            String posterUrl = PosterSizer.getPosterUrl(mAdapterContext, value,
+                    mAdapterContext.getResources().getDimensionPixelSize(
+                            R.dimen.details_poster_width));
+            if (!posterUrl.equals(holder.mPosterUrl)) {
+                holder.mPosterUrl = posterUrl;
+                PosterSizer.loadProgressively(mAdapterContext, holder.mPosterImageView,
+                        mThumbnailUrl, posterUrl);
+            }
+        }
+
+        // Populates movie plot synopsis.
+        value = mMovieItem.getPlotSynopsis();
+        if (!(value.isEmpty())) {
+            holder.mPlotTextView.setText(value);
+        }
+
+        // Populates movie user rating.
+        if (mMovieItem.hasUserRating()) {
+            holder.mRatingBar.setRating(mMovieItem.getUserRating() / 2);
+        }
+
+        // Populates movie release date value.
+        value = mMovieItem.getReleaseDateText();
+        if (!(value.isEmpty())) {
+            holder.mReleaseTextView.setText(value);
+        }
+    }
+}
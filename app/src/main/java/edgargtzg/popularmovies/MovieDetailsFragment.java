@@ -17,49 +17,35 @@
 package edgargtzg.popularmovies;
 
 import android.app.ProgressDialog;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.AdapterView;
-import android.widget.ImageView;
-import android.widget.ListView;
-import android.widget.RatingBar;
-import android.widget.TextView;
 import android.widget.Toast;
 
-import com.squareup.picasso.Picasso;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
 
 /**
  * Movie details fragment which populates the different view components.
  */
-public class MovieDetailsFragment extends Fragment {
+public class MovieDetailsFragment extends Fragment implements RequestManager.Callbacks {
 
     /**
-     * Adapter to populate view with movie video items.
+     * Adapter to populate the list with the movie data, videos and reviews.
      */
-    private MovieItemVideoAdapter mMovieVideoAdapter;
+    private MovieDetailsAdapter mMovieDetailsAdapter;
 
     /**
      * Current movie item.
@@ -72,24 +58,76 @@ public class MovieDetailsFragment extends Fragment {
     private ArrayList<MovieItemVideo> mListOfVideos;
 
     /**
-     * Adapter to populate view with movie review items.
+     * Contains the list of movie review items.
      */
-    private MovieItemReviewAdapter mMovieReviewAdapter;
+    private ArrayList<MovieItemReview> mListOfReviews;
 
     /**
-     * Contains the list of movie review items.
+     * Intent extra with the URL of the poster shown in the grid, displayed
+     * until the larger poster of the details is loaded.
      */
-    private ArrayList<MovieItemReview> mListOfReviews;
+    public static final String EXTRA_THUMBNAIL_URL = "edgargtzg.popularmovies.THUMBNAIL_URL";
+
+    /**
+     * Keys of the loaded and total review pages, and of the first visible
+     * position, when saving state of the activity. The videos and reviews
+     * themselves are read back from the in-memory cache or the local store.
+     */
+    private static final String REVIEW_PAGE_KEY = "REVIEW_PAGE_KEY";
+    private static final String REVIEW_TOTAL_PAGES_KEY = "REVIEW_TOTAL_PAGES_KEY";
+    private static final String SCROLL_POSITION_KEY = "SCROLL_POSITION_KEY";
+
+    /**
+     * Tag of the request manager of the fragment.
+     */
+    private static final String REQUEST_MANAGER_TAG = "MovieDetailsRequests";
+
+    /**
+     * Key of the movie details request.
+     */
+    private static final String DETAILS_REQUEST = "DETAILS_REQUEST";
+
+    /**
+     * Key of the request of the next page of reviews.
+     */
+    private static final String REVIEWS_PAGE_REQUEST = "REVIEWS_PAGE_REQUEST";
+
+    /**
+     * Prefix of the keys of the review content requests, followed by the review id.
+     */
+    private static final String REVIEW_CONTENT_REQUEST = "REVIEW_CONTENT_REQUEST/";
+
+    /**
+     * Key of the request reading the saved details back from the local store.
+     */
+    private static final String RESTORE_REQUEST = "RESTORE_REQUEST";
+
+    /**
+     * Lays out the rows of the list.
+     */
+    private LinearLayoutManager mLayoutManager;
 
     /**
-     * Video list key to use when saving state of the activity.
+     * Position the list scrolls to once the restored details are shown, none
+     * if the list is not being restored.
      */
-    private static final String VIDEO_LIST_KEY = "VIDEO_LIST_KEY";
+    private int mPendingScrollPosition = RecyclerView.NO_POSITION;
 
     /**
-     * Review list key to use when saving state of the activity.
+     * Last loaded page of reviews, and number of review pages of the movie.
      */
-    private static final String REVIEW_LIST_KEY = "REVIEW_LIST_KEY";
+    private int mReviewPage;
+    private int mReviewTotalPages;
+
+    /**
+     * Runs the details request across configuration changes.
+     */
+    private RequestManager mRequestManager;
+
+    /**
+     * Progress dialog while the movie details are fetched.
+     */
+    private ProgressDialog mProgressDialog;
 
     /**
      * Default constructor.
@@ -101,6 +139,7 @@ public class MovieDetailsFragment extends Fragment {
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mRequestManager = RequestManager.get(getFragmentManager(), REQUEST_MANAGER_TAG);
 
         // The detail Activity called via intent.  Inspect the intent for movie data.
         Intent intent = getActivity().getIntent();
@@ -110,41 +149,67 @@ public class MovieDetailsFragment extends Fragment {
                     MovieItem.class.getCanonicalName());
 
             if (mMovieItem != null) {
+                mListOfVideos = new ArrayList<>();
+                mListOfReviews = new ArrayList<>();
 
-                // The MovieItemVideoAdapter will take data from a source and
-                // use it to populate the list it's attached to.
-                mMovieVideoAdapter =
-                        new MovieItemVideoAdapter(
-                                getActivity(), // The current context (this activity)
-                                R.layout.list_video_movie_item,
-                                new ArrayList<MovieItemVideo>());
-
-                // The MovieItemReviewAdapter will take data from a source and
+                // The MovieDetailsAdapter will take data from these lists and
                 // use it to populate the list it's attached to.
-                mMovieReviewAdapter =
-                        new MovieItemReviewAdapter(
+                mMovieDetailsAdapter =
+                        new MovieDetailsAdapter(
                                 getActivity(), // The current context (this activity)
-                                R.layout.list_review_movie_item,
-                                new ArrayList<MovieItemReview>());
+                                mMovieItem,
+                                intent.getStringExtra(EXTRA_THUMBNAIL_URL),
+                                mListOfVideos,
+                                mListOfReviews);
 
                 if (savedInstanceState != null) {
-                    mListOfVideos = (ArrayList<MovieItemVideo>) savedInstanceState.get(VIDEO_LIST_KEY);
-                    if (mListOfVideos != null) {
-                        mMovieVideoAdapter.addAll(mListOfVideos);
-                    }
-                    mListOfReviews = (ArrayList<MovieItemReview>) savedInstanceState.get(REVIEW_LIST_KEY);
-                    if (mListOfReviews != null) {
-                        mMovieReviewAdapter.addAll(mListOfReviews);
-                    }
+                    restoreMovieDetails(savedInstanceState);
                 } else {
-                    mListOfVideos = new ArrayList<>();
-                    mListOfReviews = new ArrayList<>();
-                    updateMovieData(mMovieItem);
+                    // Details opened within the last minutes are shown right away.
+                    MovieDetails cachedDetails = MovieCache.getInstance(getActivity())
+                            .getDetails(mMovieItem.getMovieId());
+                    if (cachedDetails != null) {
+                        showMovieDetails(cachedDetails);
+                    } else {
+                        updateMovieData(mMovieItem);
+                    }
                 }
             }
         }
     }
 
+    /**
+     * Restores the saved details. They are taken from the in-memory cache
+     * when it holds every loaded page of reviews, and read from the local
+     * store otherwise.
+     *
+     * @param savedInstanceState the saved state.
+     */
+    private void restoreMovieDetails(Bundle savedInstanceState) {
+        // A request still running when the fragment was recreated
+        // delivers its result to this fragment, no refetch needed.
+        if (mRequestManager.isRunning(DETAILS_REQUEST)
+                || mRequestManager.isRunning(RESTORE_REQUEST)) {
+            return;
+        }
+        int reviewPage = savedInstanceState.getInt(REVIEW_PAGE_KEY);
+        int reviewTotalPages = savedInstanceState.getInt(REVIEW_TOTAL_PAGES_KEY);
+        if (reviewPage == 0) {
+            // Nothing was shown yet when the state was saved.
+            updateMovieData(mMovieItem);
+            return;
+        }
+        MovieDetails cachedDetails = MovieCache.getInstance(getActivity())
+                .getDetails(mMovieItem.getMovieId());
+        if (cachedDetails != null && reviewPage == cachedDetails.getReviews().getPage()) {
+            showMovieDetails(cachedDetails);
+            return;
+        }
+        mPendingScrollPosition = savedInstanceState.getInt(SCROLL_POSITION_KEY);
+        mRequestManager.start(RESTORE_REQUEST, TaskScheduler.Priority.VISIBLE,
+                new RestoreMovieDetailsTask(getActivity(), mMovieItem, reviewTotalPages));
+    }
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
@@ -152,70 +217,77 @@ public class MovieDetailsFragment extends Fragment {
         View rootView = inflater.inflate(R.layout.fragment_movie_details, container, false);
 
         if (mMovieItem != null) {
-            String value;
-            // Populates movie original title text view value.
-            value = mMovieItem.getOriginalTitle();
-            if (!(value.isEmpty())) {
-                TextView originalTitleTextView =
-                        (TextView) rootView.findViewById(R.id.movie_title_textView);
-                originalTitleTextView.setText(value);
-            }
-
-            // Populates movie poster image.
-            value = mMovieItem.getMoviePoster();
-            if (!(value.isEmpty())) {
-                ImageView moviePosterImageView =
-                        (ImageView) rootView.findViewById(R.id.movie_poster_imageView);
-                Picasso.with(getActivity()).load(
-                        rootView.getResources().getString(R.string.details_poster_api_call) +
-                                value).into(moviePosterImageView);
-            }
-
-            // Populates movie plot synopsis.
-            value = mMovieItem.getPlotSynopsis();
-            if (!(value.isEmpty())) {
-                TextView moviePlotTextView =
-                        (TextView) rootView.findViewById(R.id.movie_plot_textView);
-                moviePlotTextView.setText(value);
-            }
-
-            // Populates movie user rating.
-            value = mMovieItem.getUserRating();
-            if (!(value.isEmpty())) {
-                RatingBar movieRateBar = (RatingBar) rootView.findViewById(R.id.movie_ratingBar);
-                movieRateBar.setRating((Float.parseFloat(value) / 2));
-            }
-
-            // Populates movie release date value.
-            value = mMovieItem.getReleaseDate();
-            if (!(value.isEmpty())) {
-                TextView movieReleaseTextView =
-                        (TextView) rootView.findViewById(R.id.movie_release_textView);
-                movieReleaseTextView.setText(value);
-            }
-
-            ListView videoListView = (ListView) rootView.findViewById(R.id.movie_details_videos_listview);
-            videoListView.setAdapter(mMovieVideoAdapter);
+            RecyclerView recyclerView =
+                    (RecyclerView) rootView.findViewById(R.id.movie_details_recyclerview);
+            mLayoutManager = new LinearLayoutManager(getActivity());
+            recyclerView.setLayoutManager(mLayoutManager);
+            recyclerView.setAdapter(mMovieDetailsAdapter);
             // Adds play trailer using Youtube app or web browser.
-            videoListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            mMovieDetailsAdapter.setOnVideoClickListener(
+                    new MovieDetailsAdapter.OnVideoClickListener() {
+                        @Override
+                        public void onVideoClick(MovieItemVideo videoItem) {
+                            Intent intent = new Intent(
+                                    Intent.ACTION_VIEW,
+                                    Uri.parse("http://www.youtube.com/watch?v="
+                                            + videoItem.getVideoKey()));
+                            startActivity(intent);
+                        }
+                    });
+            mMovieDetailsAdapter.setOnReviewsListener(new MovieDetailsAdapter.OnReviewsListener() {
                 @Override
-                public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
-                    MovieItemVideo videoItem = mMovieVideoAdapter.getItem(position);
-                    Intent intent = new Intent(
-                            Intent.ACTION_VIEW,
-                            Uri.parse("http://www.youtube.com/watch?v=" + videoItem.getVideoKey()));
-                    startActivity(intent);
+                public void onLoadReviewContent(MovieItemReview reviewItem) {
+                    mRequestManager.start(
+                            REVIEW_CONTENT_REQUEST + reviewItem.getReviewId(),
+                            TaskScheduler.Priority.VISIBLE,
+                            new LoadReviewContentTask(getActivity(),
+                                    mMovieItem.getMovieId(), reviewItem.getReviewId()));
                 }
-            });
 
-            ListView reviewListView = (ListView) rootView.findViewById(R.id.movie_details_reviews_listview);
-            reviewListView.setAdapter(mMovieReviewAdapter);
-            reviewListView.setEnabled(false);
+                @Override
+                public void onLoadMoreReviews() {
+                    mMovieDetailsAdapter.setLoadingMoreReviews(true);
+                    mRequestManager.start(REVIEWS_PAGE_REQUEST, TaskScheduler.Priority.VISIBLE,
+                            new FetchReviewsTask(getActivity(), mMovieItem.getMovieId(),
+                                    mReviewPage + 1, mListOfReviews.size()));
+                }
+            });
         }
         return rootView;
     }
 
 
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+        // Delivers the details fetched while the fragment was being recreated.
+        mRequestManager.setCallbacks(this);
+        if (mRequestManager.isRunning(DETAILS_REQUEST)) {
+            showProgress();
+        }
+        if (mMovieDetailsAdapter != null) {
+            mMovieDetailsAdapter.setLoadingMoreReviews(
+                    mRequestManager.isRunning(REVIEWS_PAGE_REQUEST));
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        // The dialog belongs to the Activity being destroyed, the request keeps
+        // running and delivers to the recreated fragment.
+        mRequestManager.setCallbacks(null);
+        mLayoutManager = null;
+        if (mMovieDetailsAdapter != null) {
+            mMovieDetailsAdapter.setOnVideoClickListener(null);
+            mMovieDetailsAdapter.setOnReviewsListener(null);
+        }
+        if (mProgressDialog != null && mProgressDialog.isShowing()) {
+            mProgressDialog.dismiss();
+        }
+        mProgressDialog = null;
+    }
+
     /**
      * Updates the content of the view based on the movie data.
      *
@@ -223,12 +295,12 @@ public class MovieDetailsFragment extends Fragment {
      */
     private void updateMovieData(MovieItem movieItem) {
 
-        if (isNetworkAvailable()) {
-            FetchMovieVideosTask fetchMovieVideosTask = new FetchMovieVideosTask(movieItem);
-            fetchMovieVideosTask.execute();
-            FetchMovieReviewsTask fetchMovieReviewsTask = new FetchMovieReviewsTask(movieItem);
-            fetchMovieReviewsTask.execute();
-        } else {
+        // Without network the task falls back to the data cached in the local store.
+        mRequestManager.start(DETAILS_REQUEST, TaskScheduler.Priority.VISIBLE,
+                new FetchMovieDetailsTask(
+                        getActivity(), MovieCache.getInstance(getActivity()), movieItem));
+
+        if (!isNetworkAvailable()) {
             Toast toast = Toast.makeText(
                     getActivity(), R.string.error_msg_no_network, Toast.LENGTH_LONG);
             toast.setGravity(Gravity.CENTER,0,0);
@@ -252,329 +324,339 @@ public class MovieDetailsFragment extends Fragment {
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putParcelableArrayList(VIDEO_LIST_KEY, mListOfVideos);
-        outState.putParcelableArrayList(REVIEW_LIST_KEY, mListOfReviews);
+        // Only the paging state is saved, long reviews would not fit the
+        // binder transaction of the saved state.
+        outState.putInt(REVIEW_PAGE_KEY, mReviewPage);
+        outState.putInt(SCROLL_POSITION_KEY, mLayoutManager != null
+                ? Math.max(0, mLayoutManager.findFirstVisibleItemPosition())
+                : Math.max(0, mPendingScrollPosition));
+        outState.putInt(REVIEW_TOTAL_PAGES_KEY, mReviewTotalPages);
+    }
+
+    @Override
+    public void onRequestFinished(String key, Object result) {
+        if (REVIEWS_PAGE_REQUEST.equals(key)) {
+            mMovieDetailsAdapter.setLoadingMoreReviews(false);
+            if (result != null) {
+                showMoreReviews((MovieReviewsPage) result);
+            }
+            return;
+        } else if (key.startsWith(REVIEW_CONTENT_REQUEST)) {
+            showReviewContent(key.substring(REVIEW_CONTENT_REQUEST.length()), (String) result);
+            return;
+        } else if (RESTORE_REQUEST.equals(key)) {
+            if (result == null) {
+                // The store no longer holds the details, they are fetched again.
+                mPendingScrollPosition = RecyclerView.NO_POSITION;
+                updateMovieData(mMovieItem);
+                return;
+            }
+            showMovieDetails((MovieDetails) result);
+            if (mLayoutManager != null && mPendingScrollPosition != RecyclerView.NO_POSITION) {
+                mLayoutManager.scrollToPosition(mPendingScrollPosition);
+            }
+            mPendingScrollPosition = RecyclerView.NO_POSITION;
+            return;
+        }
+        if (mProgressDialog != null && mProgressDialog.isShowing()) {
+            mProgressDialog.dismiss();
+        }
+        if (result != null) {
+            showMovieDetails((MovieDetails) result);
+        }
+    }
+
+    /**
+     * Adds the next page of reviews to the list.
+     *
+     * @param reviewsPage the page of reviews.
+     */
+    private void showMoreReviews(MovieReviewsPage reviewsPage) {
+        if (reviewsPage.getPage() != mReviewPage + 1) {
+            return;
+        }
+        boolean hadMoreReviews = mReviewPage < mReviewTotalPages;
+        int firstPosition = mMovieDetailsAdapter.getItemCount() - (hadMoreReviews ? 1 : 0);
+        mReviewPage = reviewsPage.getPage();
+        mReviewTotalPages = reviewsPage.getTotalPages();
+        mListOfReviews.addAll(reviewsPage.getReviews());
+        mMovieDetailsAdapter.setHasMoreReviews(reviewsPage.hasNextPage());
+        mMovieDetailsAdapter.notifyItemRangeInserted(
+                firstPosition, reviewsPage.getReviews().size());
+        if (hadMoreReviews && !reviewsPage.hasNextPage()) {
+            mMovieDetailsAdapter.notifyItemRemoved(mMovieDetailsAdapter.getItemCount());
+        }
+    }
+
+    /**
+     * Shows the content of an expanded review, loaded from the local store.
+     *
+     * @param reviewId id of the review.
+     * @param content the content, null if it is not in the store.
+     */
+    private void showReviewContent(String reviewId, String content) {
+        if (content != null) {
+            mMovieDetailsAdapter.setReviewContent(reviewId, content);
+        }
     }
 
     /**
-     * Obtains the movie videos from the themoviedb.org API and populates the view.
+     * Populates the view with the details of the movie.
+     *
+     * @param movieDetails the movie details.
      */
-    public class FetchMovieVideosTask extends AsyncTask<String, Void, ArrayList<MovieItemVideo>> {
+    private void showMovieDetails(MovieDetails movieDetails) {
+        // Refreshes the movie data shown, which may have changed since
+        // the discover listing was fetched.
+        if (movieDetails.getMovieItem().getMovieId() != MovieItem.NO_ID) {
+            mMovieItem = movieDetails.getMovieItem();
+            mMovieDetailsAdapter.setMovieItem(mMovieItem);
+        }
+
+        mListOfVideos.clear();
+        mListOfVideos.addAll(movieDetails.getVideos());
+        MovieReviewsPage reviewsPage = movieDetails.getReviews();
+        mListOfReviews.clear();
+        mListOfReviews.addAll(reviewsPage.getReviews());
+        mReviewPage = reviewsPage.getPage();
+        mReviewTotalPages = reviewsPage.getTotalPages();
+        mMovieDetailsAdapter.setHasMoreReviews(reviewsPage.hasNextPage());
+        // Only the rows on screen are rebound.
+        mMovieDetailsAdapter.notifyDataSetChanged();
+    }
+
+    /**
+     * Shows the progress dialog of the details request.
+     */
+    private void showProgress() {
+        if (mProgressDialog == null) {
+            mProgressDialog = new ProgressDialog(getActivity());
+            mProgressDialog.setMessage("Loading Movie Details");
+        }
+        if (!mProgressDialog.isShowing()) {
+            mProgressDialog.show();
+        }
+    }
+
+    /**
+     * Obtains the movie details, videos and reviews from the themoviedb.org API
+     * in a single request and caches them in the local store.
+     */
+    private static class FetchMovieDetailsTask implements RequestManager.Request<MovieDetails> {
 
         /**
          * Log identifier for the class.
          */
-        private final String LOG_TAG = FetchMovieVideosTask.class.getSimpleName();
+        private final String LOG_TAG = FetchMovieDetailsTask.class.getSimpleName();
 
         /**
-         * Progress dialog when fetching movie data.
+         * Current movie item.
          */
-        private ProgressDialog mProgressDialog;
+        private final MovieItem mMovieItem;
 
         /**
-         * Current movie item.
+         * Shared client for themoviedb.org.
          */
-        private MovieItem mMovieItem;
+        private final TmdbClient mTmdbClient;
 
         /**
-         * Constructor.
+         * Resolver to reach the local movie store.
          */
-        public FetchMovieVideosTask(MovieItem movieItem) {
-            mProgressDialog = new ProgressDialog(getActivity());
-            mMovieItem = movieItem;
-        }
+        private final ContentResolver mContentResolver;
 
         /**
-         * Extracts the movie video items data from the JSON response from themoviedb.org API.
+         * In-memory cache of the recently opened movie details.
+         */
+        private final MovieCache mMovieCache;
+
+        /**
+         * Constructor.
          *
-         * @param movieDataJsonStr JSON response from themoviedb.org.
-         * @return list of MovieItemVideo with data.
-         * @throws JSONException if an error occurs.
+         * @param context the context, only used to reach application wide services.
+         * @param movieCache in-memory cache of the recently opened movie details.
+         * @param movieItem the movie to fetch the details of.
          */
-        private ArrayList<MovieItemVideo> getVideoEntriesFromJson(String movieDataJsonStr)
-                throws JSONException {
-
-            // Delimiter for movies items.
-            final String VIDEO_LIST = "results";
-            // Obtains the list of videos.
-            JSONObject videosDataJson = new JSONObject(movieDataJsonStr);
-            JSONArray videosArray = videosDataJson.getJSONArray(VIDEO_LIST);
-            // List which will contain the populated video items.
-            ArrayList<MovieItemVideo> videoEntries = new ArrayList<>(videosArray.length());
-
-            // Create video entries
-            for (int i = 0; i < videosArray.length(); i++) {
-                videoEntries.add(i, new MovieItemVideo(videosArray.getJSONObject(i)));
-            }
-            return videoEntries;
+        FetchMovieDetailsTask(Context context, MovieCache movieCache, MovieItem movieItem) {
+            mMovieCache = movieCache;
+            mTmdbClient = TmdbClient.getInstance(context);
+            // Holds no reference to the Activity, the request can outlive it.
+            mContentResolver = context.getApplicationContext().getContentResolver();
+            mMovieItem = movieItem;
         }
 
         @Override
-        protected ArrayList<MovieItemVideo> doInBackground(String... params) {
-            // These two need to be declared outside the try/catch
-            // so that they can be closed in the finally block.
-            HttpURLConnection urlConnection = null;
-            BufferedReader reader = null;
-
-            // Will contain the raw JSON response as a string.
-            String videosJsonStr = null;
-
+        public MovieDetails execute(CancellationToken token) throws IOException {
+            final int movieId = mMovieItem.getMovieId();
             try {
-                // Construct the URL for the themoviedb.org query.
-                final String MOVIEDB_BASE_URL =
-                                "http://api.themoviedb.org/3/movie/"
-                                + mMovieItem.getmMovieId()
-                                +"/videos?";
-                final String API_KEY_PARAM = "api_key";
-                Uri builtUri =
-                        Uri.parse(MOVIEDB_BASE_URL).buildUpon()
-                        .appendQueryParameter(API_KEY_PARAM, getString(R.string.themoviedb_api_key))
-                        .build();
-                URL url;
-                if (builtUri != null) {
-                    url = new URL(builtUri.toString());
-                } else {
-                    Log.e(LOG_TAG, "Error: Invalid URL for themoviedb.org.");
-                    return null;
-                }
-
-                // Create the request to themoviedb.org, and open the connection
-                urlConnection = (HttpURLConnection) url.openConnection();
-                urlConnection.setRequestMethod("GET");
-                urlConnection.connect();
-
-                // Read the input stream into a String
-                InputStream inputStream = urlConnection.getInputStream();
-                StringBuilder buffer = new StringBuilder();
-                if (inputStream == null) {
-                    Log.w(LOG_TAG, "No movie video data has been fetched from themoviedb.org.");
-                    return null;
-                }
-                reader = new BufferedReader(new InputStreamReader(inputStream));
-
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                    // But it does make debugging a *lot* easier if you print out the completed
-                    // buffer for debugging.
-                    buffer.append(line + "\n");
-                }
-
-                if (buffer.length() == 0) {
-                    // Stream was empty.  No point in parsing.
-                    Log.w(LOG_TAG, "No movie video data has been fetched from themoviedb.org.");
-                    return null;
-                }
-                videosJsonStr = buffer.toString();
+                // Cached details are shown right away, expired ones are
+                // refreshed in the background for the next visit.
+                MovieDetails movieDetails = mTmdbClient.getMovieDetails(
+                        movieId, TmdbClient.CachePolicy.STALE_WHILE_REVALIDATE,
+                        new TmdbClient.OnRevalidatedListener<MovieDetails>() {
+                            @Override
+                            public void onRevalidated(MovieDetails result) {
+                                saveMovieDetails(movieId, result);
+                            }
+                        }, token);
+                saveMovieDetails(movieId, movieDetails);
+                return movieDetails;
             } catch (IOException e) {
+                token.throwIfCancelled();
                 Log.e(LOG_TAG, "Error ", e);
-                // If the code didn't successfully get the movies data, there's no point
-                // to parse it.
-                return null;
-            } finally {
-                if (urlConnection != null) {
-                    urlConnection.disconnect();
-                }
-                if (reader != null) {
-                    try {
-                        reader.close();
-                    } catch (final IOException e) {
-                        Log.e(LOG_TAG, "Error closing stream", e);
-                    }
-                }
-            }
-
-            try {
-                return getVideoEntriesFromJson(videosJsonStr);
-            } catch (JSONException e) {
-                Log.e(LOG_TAG, e.getMessage(), e);
-                e.printStackTrace();
             }
-            // This will only happen if there was an error getting or parsing the forecast.
-            return null;
+            // Falls back to the details cached the last time the movie was opened.
+            return MovieStore.loadMovieDetails(mContentResolver, mMovieItem);
         }
 
-        @Override
-        protected void onPostExecute(ArrayList<MovieItemVideo> result) {
-            if (result != null) {
-                mMovieVideoAdapter.clear();
-                mListOfVideos.clear();
-                for (MovieItemVideo videoItem : result) {
-                    mListOfVideos.add(videoItem);
-                }
-                mMovieVideoAdapter.addAll(mListOfVideos);
-            }
-
-            if (mProgressDialog.isShowing()) {
-                mProgressDialog.dismiss();
-            }
-        }
-
-        @Override
-        protected void onPreExecute() {
-            mProgressDialog.setMessage("Loading Trailers");
-            mProgressDialog.show();
+        /**
+         * Caches the movie details in memory and in the local store.
+         *
+         * @param movieId id of the movie.
+         * @param movieDetails the movie details.
+         */
+        private void saveMovieDetails(int movieId, MovieDetails movieDetails) {
+            mMovieCache.putDetails(movieId, movieDetails);
+            MovieStore.saveMovieDetails(mContentResolver, movieDetails);
         }
     }
 
     /**
-     * Obtains the movie reviews from the themoviedb.org API and populates the view.
+     * Obtains a page of the reviews of a movie from the themoviedb.org API and
+     * caches it in the local store.
      */
-    public class FetchMovieReviewsTask extends AsyncTask<String, Void, ArrayList<MovieItemReview>> {
+    private static class FetchReviewsTask implements RequestManager.Request<MovieReviewsPage> {
 
         /**
-         * Log identifier for the class.
+         * Shared client for themoviedb.org.
          */
-        private final String LOG_TAG = FetchMovieReviewsTask.class.getSimpleName();
+        private final TmdbClient mTmdbClient;
 
         /**
-         * Progress dialog when fetching movie data.
+         * Resolver to cache the fetched reviews in the local store.
          */
-        private ProgressDialog mProgressDialog;
+        private final ContentResolver mContentResolver;
 
         /**
-         * Current movie item.
+         * Id of the movie.
          */
-        private MovieItem mMovieItem;
+        private final int mMovieId;
 
         /**
-         * Constructor.
+         * Page of reviews to fetch.
          */
-        public FetchMovieReviewsTask(MovieItem movieItem) {
-            mProgressDialog = new ProgressDialog(getActivity());
-            mMovieItem = movieItem;
-        }
+        private final int mPage;
+
+        /**
+         * Position of the first review of the page among the reviews of the movie.
+         */
+        private final int mFirstPosition;
 
         /**
-         * Extracts the movie review items data from the JSON response from themoviedb.org API.
+         * Constructor.
          *
-         * @param movieDataJsonStr JSON response from themoviedb.org.
-         * @return list of MovieItemReview with data.
-         * @throws JSONException if an error occurs.
+         * @param context the context, only used to reach application wide services.
+         * @param movieId id of the movie.
+         * @param page page of reviews to fetch, starting at 1.
+         * @param firstPosition position of the first review of the page.
          */
-        private ArrayList<MovieItemReview> getReviewEntriesFromJson(String movieDataJsonStr)
-                throws JSONException {
-
-            // Delimiter for movies items.
-            final String REVIEW_LIST = "results";
-            // Obtains the list of reviews.
-            JSONObject reviewsDataJson = new JSONObject(movieDataJsonStr);
-            JSONArray reviewsArray = reviewsDataJson.getJSONArray(REVIEW_LIST);
-            // List which will contain the populated review items.
-            ArrayList<MovieItemReview> reviewEntries = new ArrayList<>(reviewsArray.length());
-
-            // Create review entries
-            for (int i = 0; i < reviewsArray.length(); i++) {
-                reviewEntries.add(i, new MovieItemReview(reviewsArray.getJSONObject(i)));
-            }
-            return reviewEntries;
+        FetchReviewsTask(Context context, int movieId, int page, int firstPosition) {
+            mTmdbClient = TmdbClient.getInstance(context);
+            // Holds no reference to the Activity, the request can outlive it.
+            mContentResolver = context.getApplicationContext().getContentResolver();
+            mMovieId = movieId;
+            mPage = page;
+            mFirstPosition = firstPosition;
         }
 
         @Override
-        protected ArrayList<MovieItemReview> doInBackground(String... params) {
-            // These two need to be declared outside the try/catch
-            // so that they can be closed in the finally block.
-            HttpURLConnection urlConnection = null;
-            BufferedReader reader = null;
+        public MovieReviewsPage execute(CancellationToken token) throws IOException {
+            MovieReviewsPage reviewsPage = mTmdbClient.getMovieReviews(mMovieId, mPage, token);
+            MovieStore.saveReviews(mContentResolver, mMovieId, reviewsPage, mFirstPosition);
+            return reviewsPage;
+        }
+    }
 
-            // Will contain the raw JSON response as a string.
-            String reviewJsonStr = null;
+    /**
+     * Reads the details of a movie back from the local store after the
+     * fragment was recreated.
+     */
+    private static class RestoreMovieDetailsTask implements RequestManager.Request<MovieDetails> {
 
-            try {
-                // Construct the URL for the themoviedb.org query.
-                final String MOVIEDB_BASE_URL =
-                        "http://api.themoviedb.org/3/movie/"
-                                + mMovieItem.getmMovieId()
-                                +"/reviews?";
-                final String API_KEY_PARAM = "api_key";
-                Uri builtUri =
-                        Uri.parse(MOVIEDB_BASE_URL).buildUpon()
-                                .appendQueryParameter(API_KEY_PARAM, getString(R.string.themoviedb_api_key))
-                                .build();
-                URL url;
-                if (builtUri != null) {
-                    url = new URL(builtUri.toString());
-                } else {
-                    Log.e(LOG_TAG, "Error: Invalid URL for themoviedb.org.");
-                    return null;
-                }
+        /**
+         * Resolver to reach the local movie store.
+         */
+        private final ContentResolver mContentResolver;
 
-                // Create the request to themoviedb.org, and open the connection
-                urlConnection = (HttpURLConnection) url.openConnection();
-                urlConnection.setRequestMethod("GET");
-                urlConnection.connect();
-
-                // Read the input stream into a String
-                InputStream inputStream = urlConnection.getInputStream();
-                StringBuilder buffer = new StringBuilder();
-                if (inputStream == null) {
-                    Log.w(LOG_TAG, "No movie review data has been fetched from themoviedb.org.");
-                    return null;
-                }
-                reader = new BufferedReader(new InputStreamReader(inputStream));
-
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                    // But it does make debugging a *lot* easier if you print out the completed
-                    // buffer for debugging.
-                    buffer.append(line + "\n");
-                }
+        /**
+         * Current movie item.
+         */
+        private final MovieItem mMovieItem;
 
-                if (buffer.length() == 0) {
-                    // Stream was empty.  No point in parsing.
-                    Log.w(LOG_TAG, "No movie review data has been fetched from themoviedb.org.");
-                    return null;
-                }
-                reviewJsonStr = buffer.toString();
-            } catch (IOException e) {
-                Log.e(LOG_TAG, "Error ", e);
-                // If the code didn't successfully get the movies data, there's no point
-                // to parse it.
-                return null;
-            } finally {
-                if (urlConnection != null) {
-                    urlConnection.disconnect();
-                }
-                if (reader != null) {
-                    try {
-                        reader.close();
-                    } catch (final IOException e) {
-                        Log.e(LOG_TAG, "Error closing stream", e);
-                    }
-                }
-            }
+        /**
+         * Number of review pages of the movie when the state was saved.
+         */
+        private final int mReviewTotalPages;
 
-            try {
-                return getReviewEntriesFromJson(reviewJsonStr);
-            } catch (JSONException e) {
-                Log.e(LOG_TAG, e.getMessage(), e);
-                e.printStackTrace();
-            }
-            // This will only happen if there was an error getting or parsing the forecast.
-            return null;
+        /**
+         * Constructor.
+         *
+         * @param context the context, only used to reach application wide services.
+         * @param movieItem the movie.
+         * @param reviewTotalPages number of review pages of the movie.
+         */
+        RestoreMovieDetailsTask(Context context, MovieItem movieItem, int reviewTotalPages) {
+            mContentResolver = context.getApplicationContext().getContentResolver();
+            mMovieItem = movieItem;
+            mReviewTotalPages = reviewTotalPages;
         }
 
         @Override
-        protected void onPostExecute(ArrayList<MovieItemReview> result) {
-            if (result != null) {
-                mMovieReviewAdapter.clear();
-                mListOfReviews.clear();
-                for (MovieItemReview reviewItem : result) {
-                    mListOfReviews.add(reviewItem);
-                }
-                mMovieReviewAdapter.addAll(mListOfReviews);
+        public MovieDetails execute(CancellationToken token) throws IOException {
+            MovieDetails movieDetails = MovieStore.loadMovieDetails(mContentResolver, mMovieItem);
+            if (movieDetails == null) {
+                return null;
             }
+            // The store only knows the pages it holds, the next ones can
+            // still be loaded.
+            MovieReviewsPage reviews = movieDetails.getReviews();
+            return new MovieDetails(movieDetails.getMovieItem(), movieDetails.getVideos(),
+                    new MovieReviewsPage(reviews.getReviews(), reviews.getPage(),
+                            Math.max(reviews.getTotalPages(), mReviewTotalPages)));
+        }
+    }
 
-            if (mProgressDialog.isShowing()) {
-                mProgressDialog.dismiss();
-            }
+    /**
+     * Loads the content of a review from the local store.
+     */
+    private static class LoadReviewContentTask implements RequestManager.Request<String> {
+
+        /**
+         * Resolver to reach the local movie store.
+         */
+        private final ContentResolver mContentResolver;
+
+        /**
+         * Ids of the movie and of the review.
+         */
+        private final int mMovieId;
+        private final String mReviewId;
+
+        /**
+         * Constructor.
+         *
+         * @param context the context, only used to reach application wide services.
+         * @param movieId id of the movie.
+         * @param reviewId id of the review.
+         */
+        LoadReviewContentTask(Context context, int movieId, String reviewId) {
+            mContentResolver = context.getApplicationContext().getContentResolver();
+            mMovieId = movieId;
+            mReviewId = reviewId;
         }
 
         @Override
-        protected void onPreExecute() {
-            mProgressDialog.setMessage("Loading Reviews");
-            mProgressDialog.show();
+        public String execute(CancellationToken token) throws IOException {
+            return MovieStore.loadReviewContent(mContentResolver, mMovieId, mReviewId);
         }
     }
 }
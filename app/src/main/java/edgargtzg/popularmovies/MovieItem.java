@@ -16,34 +16,51 @@
 
 package edgargtzg.popularmovies;
 
+import android.content.Context;
+import android.database.Cursor;
 import android.os.Parcel;
 import android.os.Parcelable;
-import android.util.Log;
+import android.util.JsonReader;
 
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.io.IOException;
+import java.util.Locale;
 
 /**
  * Parcelable class which contains details data of a movie.
+ *
+ * The id, rating and release date are held in typed form, parsed once when
+ * the movie is read from a response or the local store, so showing, sorting
+ * and comparing movies parses no strings.
  */
 public class MovieItem implements Parcelable {
 
     /**
-     * Log identifier for the class.
+     * Id of a movie whose id is unknown. themoviedb.org ids start at 1.
+     */
+    public static final int NO_ID = 0;
+
+    /**
+     * Rating of a movie which has no rating.
      */
-    private final String LOG_TAG = MovieItem.class.getSimpleName();
+    public static final float NO_RATING = Float.NaN;
+
+    /**
+     * Release date of a movie which has no release date.
+     */
+    public static final int NO_RELEASE_DATE = Integer.MIN_VALUE;
 
     /**
      * Contains the movie ID.
      */
-    private String mMovieId = "";
+    private int mMovieId = NO_ID;
 
     /**
      * Contains the movie original title.
      */
     private String mOriginalTitle = "";
     /**
-     * Contains the movie poster id.
+     * Contains the movie poster id, interned since the same movie is listed on
+     * several pages and sort orders.
      */
     private String mMoviePoster = "";
     /**
@@ -51,34 +68,83 @@ public class MovieItem implements Parcelable {
      */
     private String mPlotSynopsis = "";
     /**
-     * Contains the movie user rating.
+     * Contains the movie user rating, from 0 to 10.
      */
-    private String mUserRating = "";
+    private float mUserRating = NO_RATING;
     /**
-     * Contains the movie release date.
+     * Contains the movie release date, in days since 1970-01-01.
      */
-    private String mReleaseDate = "";
+    private int mReleaseDate = NO_RELEASE_DATE;
+
+    /**
+     * Contains the movie popularity score of themoviedb.org.
+     */
+    private float mPopularity;
+    /**
+     * Contains the number of user votes the rating is based on.
+     */
+    private int mVoteCount;
+
+    /**
+     * Poster URL last built for the movie and its size, kept so binding the
+     * movie again builds no new string. Not parcelled.
+     */
+    private String mPosterUrl;
+    private String mPosterSize;
 
     /**
      * Default constructor.
-     * @param movieJsonObject the JsonObject to extract the movie data.
+     * @param reader the JsonReader positioned at the movie object.
+     * @throws IOException if the movie object cannot be read.
+     */
+    public MovieItem(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!parseField(reader.nextName(), reader)) {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Populating class variables from the local movie store.
+     *
+     * @param cursor positioned at a row queried with {@link MovieStore#MOVIE_COLUMNS}.
      */
-    public MovieItem(JSONObject movieJsonObject) {
-        parseMovieData(movieJsonObject);
+    public MovieItem(Cursor cursor) {
+        mMovieId = cursor.getInt(MovieStore.COL_MOVIE_ID);
+        mOriginalTitle = cursor.getString(MovieStore.COL_ORIGINAL_TITLE);
+        mMoviePoster = cursor.getString(MovieStore.COL_POSTER_PATH).intern();
+        mPlotSynopsis = cursor.getString(MovieStore.COL_PLOT_SYNOPSIS);
+        mUserRating = cursor.isNull(MovieStore.COL_USER_RATING)
+                ? NO_RATING : cursor.getFloat(MovieStore.COL_USER_RATING);
+        mReleaseDate = cursor.isNull(MovieStore.COL_RELEASE_DATE)
+                ? NO_RELEASE_DATE : cursor.getInt(MovieStore.COL_RELEASE_DATE);
+        mPopularity = cursor.getFloat(MovieStore.COL_POPULARITY);
+        mVoteCount = cursor.getInt(MovieStore.COL_VOTE_COUNT);
+    }
+
+    /**
+     * Creates an empty movie item to be populated field by field.
+     */
+    MovieItem() {
     }
 
     /**
      * Populating class variables.
      *
-     * @param in the parcel request.
+     * @param in the parcel request, written by {@link #writeToParcel}.
      */
     protected MovieItem(Parcel in) {
-        mMovieId = in.readString();
+        mMovieId = in.readInt();
         mOriginalTitle = in.readString();
-        mMoviePoster = in.readString();
+        mMoviePoster = in.readString().intern();
         mPlotSynopsis = in.readString();
-        mUserRating = in.readString();
-        mReleaseDate = in.readString();
+        mUserRating = in.readFloat();
+        mReleaseDate = in.readInt();
+        mPopularity = in.readFloat();
+        mVoteCount = in.readInt();
     }
 
     /**
@@ -97,11 +163,14 @@ public class MovieItem implements Parcelable {
     };
 
     /**
-     * Extracts the movie data from the given JsonObject.
+     * Extracts a movie data field from the given JsonReader.
      *
-     * @param movieJsonObject to be parsed.
+     * @param name name of the field the reader is positioned at.
+     * @param reader to read the field value from.
+     * @return true if the field was consumed, false if it is not a movie field.
+     * @throws IOException if the field value cannot be read.
      */
-    private void parseMovieData(JSONObject movieJsonObject) {
+    boolean parseField(String name, JsonReader reader) throws IOException {
 
         // JSON keys to extract the data.
         final String MOVIE_ID = "id";
@@ -110,16 +179,36 @@ public class MovieItem implements Parcelable {
         final String PLOT_SYNOPSIS = "overview";
         final String USER_RATING = "vote_average";
         final String RELEASE_DATE = "release_date";
+        final String POPULARITY = "popularity";
+        final String VOTE_COUNT = "vote_count";
 
-        try {
-            mMovieId = movieJsonObject.get(MOVIE_ID).toString();
-            mOriginalTitle = (String)movieJsonObject.get(ORIGINAL_TITLE);
-            mMoviePoster = (String)movieJsonObject.get(MOVIE_POSTER);
-            mPlotSynopsis = (String)movieJsonObject.get(PLOT_SYNOPSIS);
-            mUserRating = movieJsonObject.get(USER_RATING).toString();
-            mReleaseDate = (String)movieJsonObject.get(RELEASE_DATE);
-        } catch (JSONException | ClassCastException e) {
-            Log.e(LOG_TAG,"Could not parse data for movie item.",e);
+        switch (name) {
+            case MOVIE_ID:
+                mMovieId = TmdbJsonParser.nextInt(reader, NO_ID);
+                return true;
+            case ORIGINAL_TITLE:
+                mOriginalTitle = TmdbJsonParser.nextString(reader);
+                return true;
+            case MOVIE_POSTER:
+                mMoviePoster = TmdbJsonParser.nextString(reader).intern();
+                return true;
+            case PLOT_SYNOPSIS:
+                mPlotSynopsis = TmdbJsonParser.nextString(reader);
+                return true;
+            case USER_RATING:
+                mUserRating = TmdbJsonParser.nextFloat(reader, NO_RATING);
+                return true;
+            case RELEASE_DATE:
+                mReleaseDate = parseDate(TmdbJsonParser.nextString(reader));
+                return true;
+            case POPULARITY:
+                mPopularity = TmdbJsonParser.nextFloat(reader, 0f);
+                return true;
+            case VOTE_COUNT:
+                mVoteCount = TmdbJsonParser.nextInt(reader, 0);
+                return true;
+            default:
+                return false;
         }
     }
 
@@ -141,6 +230,40 @@ public class MovieItem implements Parcelable {
         return mMoviePoster;
     }
 
+    /**
+     * Checks whether another movie item holds the same data as this one.
+     *
+     * @param other the other movie item.
+     * @return true if every field is equal.
+     */
+    public boolean hasSameContent(MovieItem other) {
+        return mMovieId == other.mMovieId
+                && mReleaseDate == other.mReleaseDate
+                && mVoteCount == other.mVoteCount
+                && Float.compare(mPopularity, other.mPopularity) == 0
+                && Float.compare(mUserRating, other.mUserRating) == 0
+                && mMoviePoster.equals(other.mMoviePoster)
+                && mOriginalTitle.equals(other.mOriginalTitle)
+                && mPlotSynopsis.equals(other.mPlotSynopsis);
+    }
+
+    /**
+     * Gets the URL of the poster to load for a view of the given width.
+     * Must be called on the main thread.
+     *
+     * @param context any context.
+     * @param widthPx width of the view in physical pixels, 0 if unknown.
+     * @return the poster URL.
+     */
+    public String getPosterUrl(Context context, int widthPx) {
+        String size = PosterSizer.getSize(context, widthPx);
+        if (size != mPosterSize) {
+            mPosterUrl = PosterSizer.buildPosterUrl(context, size, mMoviePoster);
+            mPosterSize = size;
+        }
+        return mPosterUrl;
+    }
+
     /**
      * Gets the movie plot synopsis.
      *
@@ -153,30 +276,151 @@ public class MovieItem implements Parcelable {
     /**
      * Gets the movie user rating.
      *
-     * @return the movie user rating.
+     * @return the movie user rating from 0 to 10, or {@link #NO_RATING}.
      */
-    public String getUserRating() {
+    public float getUserRating() {
         return mUserRating;
     }
 
+    /**
+     * Checks whether the movie has a user rating.
+     *
+     * @return true if {@link #getUserRating()} is a rating.
+     */
+    public boolean hasUserRating() {
+        return !Float.isNaN(mUserRating);
+    }
+
+    /**
+     * Gets the movie popularity.
+     *
+     * @return the popularity score of themoviedb.org, 0 if unknown.
+     */
+    public float getPopularity() {
+        return mPopularity;
+    }
+
+    /**
+     * Gets the number of user votes.
+     *
+     * @return the number of votes the user rating is based on.
+     */
+    public int getVoteCount() {
+        return mVoteCount;
+    }
+
     /**
      * Gets the movie id.
      *
-     * @return the movie id.
+     * @return the movie id, or {@link #NO_ID}.
      */
-    public String getmMovieId() {
+    public int getMovieId() {
         return mMovieId;
     }
 
     /**
      * Gets the movie release date.
      *
-     * @return the movie release date.
+     * @return the movie release date in days since 1970-01-01, or
+     *         {@link #NO_RELEASE_DATE}.
      */
-    public String getReleaseDate() {
+    public int getReleaseDate() {
         return mReleaseDate;
     }
 
+    /**
+     * Gets the movie release date in the yyyy-MM-dd form of themoviedb.org.
+     *
+     * @return the movie release date, empty if unknown.
+     */
+    public String getReleaseDateText() {
+        return formatDate(mReleaseDate);
+    }
+
+    /**
+     * Converts a yyyy-MM-dd date to days since 1970-01-01.
+     *
+     * @param date the date.
+     * @return the number of days, or {@link #NO_RELEASE_DATE} if the string is
+     *         not a valid date.
+     */
+    static int parseDate(String date) {
+        if (date == null || date.length() != 10
+                || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            return NO_RELEASE_DATE;
+        }
+        int year;
+        int month;
+        int day;
+        try {
+            year = Integer.parseInt(date.substring(0, 4));
+            month = Integer.parseInt(date.substring(5, 7));
+            day = Integer.parseInt(date.substring(8, 10));
+        } catch (NumberFormatException e) {
+            return NO_RELEASE_DATE;
+        }
+        // Rejects dates such as 2015-02-30, which would roll over.
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return NO_RELEASE_DATE;
+        }
+        return epochDay(year, month, day);
+    }
+
+    /**
+     * Gets the number of days of a month.
+     *
+     * @param year the year.
+     * @param month the month, from 1 to 12.
+     * @return the number of days.
+     */
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            boolean leapYear = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+            return leapYear ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * Converts a date to days since 1970-01-01.
+     *
+     * @param year the year.
+     * @param month the month, from 1 to 12.
+     * @param day the day of the month, from 1.
+     * @return the number of days.
+     */
+    static int epochDay(int year, int month, int day) {
+        // Days from the civil calendar, counting years from March.
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Converts days since 1970-01-01 to a yyyy-MM-dd date.
+     *
+     * @param epochDay the number of days, or {@link #NO_RELEASE_DATE}.
+     * @return the date, empty for {@link #NO_RELEASE_DATE}.
+     */
+    static String formatDate(int epochDay) {
+        if (epochDay == NO_RELEASE_DATE) {
+            return "";
+        }
+        int z = epochDay + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        int month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return String.format(Locale.US, "%04d-%02d-%02d", year, month, day);
+    }
+
     @Override
     public int describeContents() {
         return 0;
@@ -184,11 +428,13 @@ public class MovieItem implements Parcelable {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
-        dest.writeString(mMovieId);
+        dest.writeInt(mMovieId);
         dest.writeString(mOriginalTitle);
         dest.writeString(mMoviePoster);
         dest.writeString(mPlotSynopsis);
-        dest.writeString(mUserRating);
-        dest.writeString(mReleaseDate);
+        dest.writeFloat(mUserRating);
+        dest.writeInt(mReleaseDate);
+        dest.writeFloat(mPopularity);
+        dest.writeInt(mVoteCount);
     }
 }
@@ -13,53 +13,314 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+
 package edgargtzg.popularmovies;
 
-import android.app.Activity;
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 
+import com.squareup.picasso.Callback;
 import com.squareup.picasso.Picasso;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Adapter to populate a view with movie items.
+ * Adapter to populate a grid with movie items.
+ *
+ * The adapter shows a snapshot of the movie list. A new list is compared with
+ * the shown one on a background thread, and only the movies which were
+ * inserted, removed, moved or changed are then rebound.
  */
-public class MovieItemAdapter extends ArrayAdapter<MovieItem>{
+public class MovieItemAdapter extends RecyclerView.Adapter<MovieItemAdapter.PosterHolder> {
+
+    /**
+     * Receives clicks on the movies of the grid.
+     */
+    public interface OnMovieClickListener {
+
+        /**
+         * Called when a movie is clicked.
+         *
+         * @param movieItem the movie.
+         * @param itemView view of the movie in the grid.
+         */
+        void onMovieClick(MovieItem movieItem, View itemView);
+    }
+
+    /**
+     * Keeps the poster view of a grid item.
+     */
+    class PosterHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        /**
+         * Poster of the movie.
+         */
+        final ImageView mPosterImageView;
+
+        /**
+         * URL of the poster loaded into the view, null if none.
+         */
+        String mPosterUrl;
+
+        PosterHolder(View itemView) {
+            super(itemView);
+            mPosterImageView = (ImageView) itemView.findViewById(
+                    R.id.grid_item_movie_poster_imageview);
+            itemView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION && mOnMovieClickListener != null) {
+                mOnMovieClickListener.onMovieClick(mMovies.get(position), itemView);
+            }
+        }
+    }
+
+    /**
+     * The current context.
+     */
+    private final Context mAdapterContext;
+
+    /**
+     * Loads the posters.
+     */
+    private final Picasso mPicasso;
+
+    /**
+     * Posts computed differences back to the main thread.
+     */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Movies shown, replaced as a whole when a new list is applied.
+     */
+    private List<MovieItem> mMovies = new ArrayList<>();
+
+    /**
+     * Incremented for each new list, so only the difference of the latest
+     * one is applied.
+     */
+    private int mGeneration;
 
-    private Context mAdapterContext;
-    private ArrayList<MovieItem> mMovieEntries;
+    /**
+     * Number of columns of the grid.
+     */
+    private final int mColumns;
 
-    public MovieItemAdapter(Context context, int gridItemId, ArrayList<MovieItem> movieEntries) {
-        super(context, gridItemId, movieEntries);
+    /**
+     * Width of the grid cells in pixels, from the width of the screen until
+     * the grid is laid out.
+     */
+    private int mCellWidth;
+
+    /**
+     * Receives clicks on the movies.
+     */
+    private OnMovieClickListener mOnMovieClickListener;
+
+    /**
+     * Start of the timing of the next poster displayed, 0 if none is timed.
+     */
+    private long mFirstPosterStartNanos;
+
+    /**
+     * Records the time until the first poster displayed since the timing started.
+     */
+    private final Callback mFirstPosterCallback = new Callback() {
+        @Override
+        public void onSuccess() {
+            if (mFirstPosterStartNanos != 0) {
+                Metrics.record("discover.first_poster",
+                        System.nanoTime() - mFirstPosterStartNanos);
+                mFirstPosterStartNanos = 0;
+            }
+        }
+
+        @Override
+        public void onError() {
+            // The next poster which loads is timed instead.
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param context the current context.
+     * @param columns number of columns of the grid.
+     */
+    public MovieItemAdapter(Context context, int columns) {
         mAdapterContext = context;
-        mMovieEntries = movieEntries;
+        mPicasso = Picasso.with(context);
+        mColumns = columns;
+        // The grid fills the width of the screen, which sizes the posters
+        // bound before the grid is first laid out.
+        setGridWidth(context.getResources().getDisplayMetrics().widthPixels);
+        // Movie ids identify the items across lists, which keeps the views of
+        // unchanged movies bound to them.
+        setHasStableIds(true);
+    }
+
+    /**
+     * Sets the receiver of the clicks on the movies.
+     *
+     * @param listener the receiver.
+     */
+    public void setOnMovieClickListener(OnMovieClickListener listener) {
+        mOnMovieClickListener = listener;
+    }
+
+    /**
+     * Sets the width of the grid, which determines the size of the posters.
+     *
+     * @param gridWidth width of the grid in pixels.
+     */
+    public void setGridWidth(int gridWidth) {
+        mCellWidth = gridWidth / mColumns;
+    }
+
+    /**
+     * Gets the width of the grid cells.
+     *
+     * @return the width in pixels, estimated from the width of the screen
+     *         until the grid is laid out.
+     */
+    public int getCellWidth() {
+        return mCellWidth;
+    }
+
+    /**
+     * Gets a movie shown.
+     *
+     * @param position position of the movie.
+     * @return the movie.
+     */
+    public MovieItem getItem(int position) {
+        return mMovies.get(position);
+    }
+
+    /**
+     * Shows a new list of movies. The difference with the shown list is
+     * computed on a background thread and then applied.
+     *
+     * @param movies the movies, must not be modified afterwards.
+     * @param onApplied run once the list is shown, may be null.
+     */
+    public void submitList(final List<MovieItem> movies, final Runnable onApplied) {
+        final int generation = ++mGeneration;
+        final List<MovieItem> oldMovies = mMovies;
+        if (oldMovies.isEmpty() || movies.isEmpty()) {
+            // Nothing to compare, the list is swapped right away.
+            mMovies = movies;
+            if (!oldMovies.isEmpty()) {
+                notifyItemRangeRemoved(0, oldMovies.size());
+            } else if (!movies.isEmpty()) {
+                notifyItemRangeInserted(0, movies.size());
+            }
+            if (onApplied != null) {
+                onApplied.run();
+            }
+            return;
+        }
+        TaskScheduler.getInstance().executeCpu(TaskScheduler.Priority.VISIBLE, null,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        long startNanos = System.nanoTime();
+                        Metrics.beginSection("adapter.diff");
+                        final MovieListDiff diff;
+                        try {
+                            diff = MovieListDiff.compute(oldMovies, movies);
+                        } finally {
+                            Metrics.endSection("adapter.diff", startNanos);
+                        }
+                        mMainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                // A newer list was submitted meanwhile.
+                                if (generation != mGeneration) {
+                                    return;
+                                }
+                                mMovies = movies;
+                                long startNanos = System.nanoTime();
+                                Metrics.beginSection("adapter.dispatch");
+                                try {
+                                    diff.dispatchUpdatesTo(MovieItemAdapter.this);
+                                } finally {
+                                    Metrics.endSection("adapter.dispatch", startNanos);
+                                }
+                                if (onApplied != null) {
+                                    onApplied.run();
+                                }
+                            }
+                        });
+                    }
+                });
     }
 
     @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
+    public PosterHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        // The grid is measured by now, even on its first layout.
+        if (parent.getWidth() > 0) {
+            setGridWidth(parent.getWidth());
+        }
+        View itemView = LayoutInflater.from(mAdapterContext)
+                .inflate(R.layout.grid_movie_item, parent, false);
+        return new PosterHolder(itemView);
+    }
 
-        if(convertView == null) {
-            LayoutInflater layoutInflater = ((Activity) mAdapterContext).getLayoutInflater();
-            convertView = layoutInflater.inflate(R.layout.grid_movie_item, parent, false);
+    @Override
+    public void onBindViewHolder(PosterHolder holder, int position) {
+        long startNanos = System.nanoTime();
+        Metrics.beginSection("adapter.bind");
+        try {
+            String posterUrl = mMovies.get(position).getPosterUrl(mAdapterContext, mCellWidth);
+            // A changed movie keeping the same poster has nothing to reload.
+            if (posterUrl.equals(holder.mPosterUrl)) {
+                return;
+            }
+            holder.mPosterUrl = posterUrl;
+            if (mFirstPosterStartNanos != 0) {
+                mPicasso.load(posterUrl).into(holder.mPosterImageView, mFirstPosterCallback);
+            } else {
+                mPicasso.load(posterUrl).into(holder.mPosterImageView);
+            }
+        } finally {
+            Metrics.endSection("adapter.bind", startNanos);
         }
+    }
 
-        ImageView imageView =  (ImageView) convertView.findViewById(
-                R.id.grid_item_movie_poster_imageview);
-        Picasso.with(mAdapterContext).load(
-                convertView.getResources().getString(R.string.grid_poster_api_call) +
-                mMovieEntries.get(position).getMoviePoster()).into(imageView);
+    /**
+     * Times the next poster displayed, from the given start.
+     *
+     * @param startNanos start of the timing, from {@link System#nanoTime()}.
+     */
+    public void timeNextPoster(long startNanos) {
+        mFirstPosterStartNanos = startNanos;
+    }
 
-        return convertView;
+    @Override
+    public void onViewRecycled(PosterHolder holder) {
+        // The poster of a cell which left the screen is no longer needed.
+        mPicasso.cancelRequest(holder.mPosterImageView);
+        holder.mPosterUrl = null;
     }
 
     @Override
-    public MovieItem getItem(int position) {
-        return mMovieEntries.get(position);
+    public int getItemCount() {
+        return mMovies.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mMovies.get(position).getMovieId();
     }
 }
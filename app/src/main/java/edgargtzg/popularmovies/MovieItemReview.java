@@ -16,22 +16,37 @@
 
 package edgargtzg.popularmovies;
 
+import android.database.Cursor;
 import android.os.Parcel;
 import android.os.Parcelable;
-import android.util.Log;
+import android.util.JsonReader;
 
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.io.IOException;
 
 /**
  * Contains a review of a movie item.
+ *
+ * Reviews can be tens of kilobytes long, so a short preview is built when the
+ * review is fetched and shown until the review is expanded. Reviews read back
+ * from the local store or from a parcel only hold the preview, the full
+ * content of a truncated review is then loaded from the store on demand.
  */
 public class MovieItemReview implements Parcelable {
 
     /**
-     * Log identifier for the class.
+     * Maximum length of the preview, in characters.
+     */
+    static final int PREVIEW_LENGTH = 280;
+
+    /**
+     * Appended to a truncated preview.
+     */
+    private static final String ELLIPSIS = "\u2026";
+
+    /**
+     * Contains the themoviedb.org id of the review.
      */
-    private final String LOG_TAG = MovieItemReview.class.getSimpleName();
+    private String mReviewId = "";
 
     /**
      * Contains the review author.
@@ -39,27 +54,59 @@ public class MovieItemReview implements Parcelable {
     private String mReviewAuthor = "";
 
     /**
-     * Contains the review content.
+     * Contains the start of the review content.
+     */
+    private String mReviewPreview = "";
+
+    /**
+     * Whether the preview is shorter than the content.
+     */
+    private boolean mTruncated;
+
+    /**
+     * Contains the review content, null for a truncated review read back from
+     * the local store or from a parcel.
      */
     private String mReviewContent = "";
 
     /**
      * Default constructor.
      *
-     * @param movieJsonObject the JsonObject to extract the movie review data.
+     * @param reader the JsonReader positioned at the movie review object.
+     * @throws IOException if the movie review object cannot be read.
+     */
+    public MovieItemReview(JsonReader reader) throws IOException {
+        parseMovieData(reader);
+        mReviewPreview = buildPreview(mReviewContent);
+        // A cut preview plus the ellipsis can be as long as the content.
+        mTruncated = mReviewPreview != mReviewContent;
+    }
+
+    /**
+     * Populating class variables from the local movie store, without the
+     * content of a truncated review.
+     *
+     * @param cursor positioned at a row queried with {@link MovieStore#REVIEW_COLUMNS}.
      */
-    public MovieItemReview(JSONObject movieJsonObject) {
-        parseMovieData(movieJsonObject);
+    public MovieItemReview(Cursor cursor) {
+        mReviewId = cursor.getString(MovieStore.COL_REVIEW_ID);
+        mReviewAuthor = cursor.getString(MovieStore.COL_REVIEW_AUTHOR);
+        mReviewPreview = cursor.getString(MovieStore.COL_REVIEW_PREVIEW);
+        mTruncated = cursor.getInt(MovieStore.COL_REVIEW_TRUNCATED) != 0;
+        mReviewContent = mTruncated ? null : mReviewPreview;
     }
 
     /**
-     * Populating class variables.
+     * Populating class variables, without the content of a truncated review.
      *
      * @param in the parcel request.
      */
     protected MovieItemReview(Parcel in) {
+        mReviewId = in.readString();
         mReviewAuthor = in.readString();
-        mReviewContent = in.readString();
+        mReviewPreview = in.readString();
+        mTruncated = in.readByte() != 0;
+        mReviewContent = mTruncated ? null : mReviewPreview;
     }
 
     /**
@@ -78,22 +125,64 @@ public class MovieItemReview implements Parcelable {
     };
 
     /**
-     * Extracts the movie review data from the given JsonObject.
+     * Extracts the movie review data from the given JsonReader.
      *
-     * @param movieJsonObject to be parsed.
+     * @param reader to be parsed.
+     * @throws IOException if the movie review object cannot be read.
      */
-    private void parseMovieData(JSONObject movieJsonObject) {
+    private void parseMovieData(JsonReader reader) throws IOException {
 
         // JSON keys to extract the data.
+        final String REVIEW_ID = "id";
         final String REVIEW_AUTHOR = "author";
         final String REVIEW_CONTENT = "content";
 
-        try {
-            mReviewAuthor = (String)movieJsonObject.get(REVIEW_AUTHOR);
-            mReviewContent = (String)movieJsonObject.get(REVIEW_CONTENT);
-        } catch (JSONException | ClassCastException e) {
-            Log.e(LOG_TAG, "Could not parse data for videos of movie item.", e);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case REVIEW_ID:
+                    mReviewId = TmdbJsonParser.nextString(reader);
+                    break;
+                case REVIEW_AUTHOR:
+                    mReviewAuthor = TmdbJsonParser.nextString(reader);
+                    break;
+                case REVIEW_CONTENT:
+                    mReviewContent = TmdbJsonParser.nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Builds the preview of a review: the content itself if it is short,
+     * otherwise its start cut at a word boundary.
+     *
+     * @param content the review content.
+     * @return the preview, the same instance as the content if it was not cut.
+     */
+    static String buildPreview(String content) {
+        if (content.length() <= PREVIEW_LENGTH) {
+            return content;
+        }
+        int end = PREVIEW_LENGTH;
+        int space = content.lastIndexOf(' ', end);
+        if (space > PREVIEW_LENGTH / 2) {
+            end = space;
         }
+        return content.substring(0, end).trim() + ELLIPSIS;
+    }
+
+    /**
+     * Gets the themoviedb.org id of the review.
+     *
+     * @return the review id.
+     */
+    public String getReviewId() {
+        return mReviewId;
     }
 
     /**
@@ -105,10 +194,28 @@ public class MovieItemReview implements Parcelable {
         return mReviewAuthor;
     }
 
+    /**
+     * Gets the preview of the review.
+     *
+     * @return the start of the review content.
+     */
+    public String getReviewPreview() {
+        return mReviewPreview;
+    }
+
+    /**
+     * Checks whether the preview is shorter than the content.
+     *
+     * @return true if the review is truncated.
+     */
+    public boolean isTruncated() {
+        return mTruncated;
+    }
+
     /**
      * Gets the review content.
      *
-     * @return the review content.
+     * @return the review content, null if it is only in the local store.
      */
     public String getReviewContent() {
         return mReviewContent;
@@ -121,7 +228,10 @@ public class MovieItemReview implements Parcelable {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
+        // The content stays in the local store, it is reloaded on demand.
+        dest.writeString(mReviewId);
         dest.writeString(mReviewAuthor);
-        dest.writeString(mReviewContent);
+        dest.writeString(mReviewPreview);
+        dest.writeByte((byte) (mTruncated ? 1 : 0));
     }
 }
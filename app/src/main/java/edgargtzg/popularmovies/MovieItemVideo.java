@@ -16,23 +16,18 @@
 
 package edgargtzg.popularmovies;
 
+import android.database.Cursor;
 import android.os.Parcel;
 import android.os.Parcelable;
-import android.util.Log;
+import android.util.JsonReader;
 
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.io.IOException;
 
 /**
  * Contains the video information of a movie item.
  */
 public class MovieItemVideo implements Parcelable {
 
-    /**
-     * Log identifier for the class.
-     */
-    private final String LOG_TAG = MovieItemVideo.class.getSimpleName();
-
     /**
      * Contains the movie video key.
      */
@@ -53,25 +48,46 @@ public class MovieItemVideo implements Parcelable {
      */
     private String mVideoType = "";
 
+    /**
+     * Video sites and types known to themoviedb.org, parcelled as their index.
+     * Entries may only be appended.
+     */
+    private static final String[] KNOWN_SITES = {"YouTube", "Vimeo"};
+    private static final String[] KNOWN_TYPES =
+            {"Trailer", "Teaser", "Clip", "Featurette", "Behind the Scenes", "Bloopers"};
+
     /**
      * Default constructor.
      *
-     * @param movieJsonObject the JsonObject to extract the movie video data.
+     * @param reader the JsonReader positioned at the movie video object.
+     * @throws IOException if the movie video object cannot be read.
      */
-    public MovieItemVideo(JSONObject movieJsonObject) {
-        parseMovieData(movieJsonObject);
+    public MovieItemVideo(JsonReader reader) throws IOException {
+        parseMovieData(reader);
+    }
+
+    /**
+     * Populating class variables from the local movie store.
+     *
+     * @param cursor positioned at a row queried with {@link MovieStore#VIDEO_COLUMNS}.
+     */
+    public MovieItemVideo(Cursor cursor) {
+        mVideoKey = cursor.getString(MovieStore.COL_VIDEO_KEY);
+        mVideoName = cursor.getString(MovieStore.COL_VIDEO_NAME);
+        mVideoSite = cursor.getString(MovieStore.COL_VIDEO_SITE);
+        mVideoType = cursor.getString(MovieStore.COL_VIDEO_TYPE);
     }
 
     /**
      * Populating class variables.
      *
-     * @param in the parcel request.
+     * @param in the parcel request, written by {@link #writeToParcel}.
      */
     protected MovieItemVideo(Parcel in) {
         mVideoKey = in.readString();
         mVideoName = in.readString();
-        mVideoSite = in.readString();
-        mVideoType = in.readString();
+        mVideoSite = CompactParcel.readKnown(in, KNOWN_SITES);
+        mVideoType = CompactParcel.readKnown(in, KNOWN_TYPES);
     }
 
     /**
@@ -90,11 +106,12 @@ public class MovieItemVideo implements Parcelable {
     };
 
     /**
-     * Extracts the movie video data from the given JsonObject.
+     * Extracts the movie video data from the given JsonReader.
      *
-     * @param movieJsonObject to be parsed.
+     * @param reader to be parsed.
+     * @throws IOException if the movie video object cannot be read.
      */
-    private void parseMovieData(JSONObject movieJsonObject) {
+    private void parseMovieData(JsonReader reader) throws IOException {
 
         // JSON keys to extract the data.
         final String VIDEO_KEY = "key";
@@ -102,14 +119,27 @@ public class MovieItemVideo implements Parcelable {
         final String VIDEO_SITE = "site";
         final String VIDEO_TYPE = "type";
 
-        try {
-            mVideoKey = (String)movieJsonObject.get(VIDEO_KEY);
-            mVideoName = (String)movieJsonObject.get(VIDEO_NAME);
-            mVideoSite = (String)movieJsonObject.get(VIDEO_SITE);
-            mVideoType = (String)movieJsonObject.get(VIDEO_TYPE);
-        } catch (JSONException | ClassCastException e) {
-            Log.e(LOG_TAG, "Could not parse data for videos of movie item.", e);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case VIDEO_KEY:
+                    mVideoKey = TmdbJsonParser.nextString(reader);
+                    break;
+                case VIDEO_NAME:
+                    mVideoName = TmdbJsonParser.nextString(reader);
+                    break;
+                case VIDEO_SITE:
+                    mVideoSite = TmdbJsonParser.nextString(reader);
+                    break;
+                case VIDEO_TYPE:
+                    mVideoType = TmdbJsonParser.nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
         }
+        reader.endObject();
     }
 
     /**
@@ -153,11 +183,14 @@ public class MovieItemVideo implements Parcelable {
         return 0;
     }
 
+    /**
+     * Writes the video with its site and type as indexes of the known ones.
+     */
     @Override
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeString(mVideoKey);
         dest.writeString(mVideoName);
-        dest.writeString(mVideoSite);
-        dest.writeString(mVideoType);
+        CompactParcel.writeKnown(dest, KNOWN_SITES, mVideoSite);
+        CompactParcel.writeKnown(dest, KNOWN_TYPES, mVideoType);
     }
 }
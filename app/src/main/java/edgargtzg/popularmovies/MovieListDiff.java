@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.List;
+
+/**
+ * Difference between two lists of movies, as the item updates which turn the
+ * old list into the new one.
+ *
+ * Movies are matched by id. Movies only in the old list are removed, movies
+ * only in the new list are inserted, movies at another position are moved and
+ * movies whose data differs are changed. The lists are compared as
+ * {@link MovieTable}s, by primitive id. Computing the difference may run on
+ * any thread, dispatching it must happen on the main thread.
+ */
+public final class MovieListDiff {
+
+    /**
+     * Update types.
+     */
+    private static final int REMOVE = 0;
+    private static final int INSERT = 1;
+    private static final int MOVE = 2;
+    private static final int CHANGE = 3;
+
+    /**
+     * Updates in the order they apply, as triples of type and two arguments:
+     * position and count for ranges, from and to positions for moves.
+     */
+    private final int[] mUpdates;
+
+    /**
+     * Constructor.
+     *
+     * @param updates the updates as type, argument, argument triples.
+     */
+    private MovieListDiff(int[] updates) {
+        mUpdates = updates;
+    }
+
+    /**
+     * Computes the difference between two lists of movies.
+     *
+     * @param oldMovies the list shown.
+     * @param newMovies the list to show.
+     * @return the difference.
+     */
+    public static MovieListDiff compute(List<MovieItem> oldMovies, List<MovieItem> newMovies) {
+        return compute(new MovieTable(oldMovies), new MovieTable(newMovies));
+    }
+
+    /**
+     * Computes the difference between two tables of movies.
+     *
+     * @param oldTable the movies shown.
+     * @param newTable the movies to show.
+     * @return the difference.
+     */
+    public static MovieListDiff compute(MovieTable oldTable, MovieTable newTable) {
+        UpdateList updates = new UpdateList();
+
+        // Removes the movies which are gone, from the end so positions hold.
+        int oldSize = oldTable.size();
+        int newSize = newTable.size();
+        boolean[] gone = new boolean[oldSize];
+        for (int i = oldSize - 1; i >= 0; i--) {
+            if (newTable.indexOf(oldTable.getId(i)) < 0) {
+                gone[i] = true;
+                updates.add(REMOVE, i, 1);
+            }
+        }
+
+        // The list as the updates apply: ids and old rows, -1 for inserted movies.
+        int[] ids = new int[oldSize + newSize];
+        int[] rows = new int[oldSize + newSize];
+        int size = 0;
+        for (int i = 0; i < oldSize; i++) {
+            if (!gone[i]) {
+                ids[size] = oldTable.getId(i);
+                rows[size++] = i;
+            }
+        }
+
+        // Brings the remaining movies in order, inserting the new ones.
+        for (int target = 0; target < newSize; target++) {
+            int id = newTable.getId(target);
+            if (target < size && ids[target] == id) {
+                if (rows[target] >= 0
+                        && !oldTable.hasSameContent(rows[target], newTable, target)) {
+                    updates.add(CHANGE, target, 1);
+                }
+                continue;
+            }
+            int from = indexOf(ids, size, id, target + 1);
+            if (from < 0) {
+                System.arraycopy(ids, target, ids, target + 1, size - target);
+                System.arraycopy(rows, target, rows, target + 1, size - target);
+                ids[target] = id;
+                rows[target] = -1;
+                size++;
+                updates.add(INSERT, target, 1);
+            } else {
+                int row = rows[from];
+                System.arraycopy(ids, target, ids, target + 1, from - target);
+                System.arraycopy(rows, target, rows, target + 1, from - target);
+                ids[target] = id;
+                rows[target] = row;
+                updates.add(MOVE, from, target);
+                if (row >= 0 && !oldTable.hasSameContent(row, newTable, target)) {
+                    updates.add(CHANGE, target, 1);
+                }
+            }
+        }
+        // Movies listed twice in the old list, on two pages, are left over.
+        if (size > newSize) {
+            updates.add(REMOVE, newSize, size - newSize);
+        }
+        return new MovieListDiff(updates.toArray());
+    }
+
+    /**
+     * Checks whether the lists were identical.
+     *
+     * @return true if there is no update.
+     */
+    public boolean isEmpty() {
+        return mUpdates.length == 0;
+    }
+
+    /**
+     * Notifies an adapter of the updates. The adapter must already hold the
+     * new list.
+     *
+     * @param adapter the adapter.
+     */
+    public void dispatchUpdatesTo(RecyclerView.Adapter adapter) {
+        for (int i = 0; i < mUpdates.length; i += 3) {
+            int first = mUpdates[i + 1];
+            int second = mUpdates[i + 2];
+            switch (mUpdates[i]) {
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(first, second);
+                    break;
+                case INSERT:
+                    adapter.notifyItemRangeInserted(first, second);
+                    break;
+                case MOVE:
+                    adapter.notifyItemMoved(first, second);
+                    break;
+                case CHANGE:
+                    adapter.notifyItemRangeChanged(first, second);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Finds a movie by id.
+     *
+     * @param ids the movie ids.
+     * @param size number of ids in use.
+     * @param id id of the movie.
+     * @param start first position to look at.
+     * @return the position of the movie, -1 if not found.
+     */
+    private static int indexOf(int[] ids, int size, int id, int start) {
+        for (int i = start; i < size; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Growable list of updates which merges consecutive ranges of the same type.
+     */
+    private static class UpdateList {
+
+        private int[] mValues = new int[48];
+        private int mSize;
+
+        void add(int type, int first, int second) {
+            if (mSize > 0 && type != MOVE && mValues[mSize - 3] == type) {
+                int lastPosition = mValues[mSize - 2];
+                int lastCount = mValues[mSize - 1];
+                if (type == REMOVE && first == lastPosition - 1) {
+                    // Removals run backwards, the range grows at its start.
+                    mValues[mSize - 2] = first;
+                    mValues[mSize - 1] = lastCount + second;
+                    return;
+                } else if (type != REMOVE && first == lastPosition + lastCount) {
+                    mValues[mSize - 1] = lastCount + second;
+                    return;
+                }
+            }
+            if (mSize + 3 > mValues.length) {
+                int[] values = new int[mValues.length * 2];
+                System.arraycopy(mValues, 0, values, 0, mSize);
+                mValues = values;
+            }
+            mValues[mSize++] = type;
+            mValues[mSize++] = first;
+            mValues[mSize++] = second;
+        }
+
+        int[] toArray() {
+            int[] values = new int[mSize];
+            System.arraycopy(mValues, 0, values, 0, mSize);
+            return values;
+        }
+    }
+}
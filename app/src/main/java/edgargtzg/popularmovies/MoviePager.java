@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.util.SparseBooleanArray;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Keeps a window of consecutive discover pages as a single flat list of movies.
+ *
+ * Movies already in the window are skipped when a page is added, and once the
+ * window holds more than the maximum number of pages the pages furthest from
+ * the one being added are dropped so memory stays bounded.
+ */
+public class MoviePager {
+
+    /**
+     * Movies of every page in the window, in order.
+     */
+    private final ArrayList<MovieItem> mMovies = new ArrayList<>();
+
+    /**
+     * Number of movies each page of the window contributed, in order.
+     */
+    private final LinkedList<Integer> mPageSizes = new LinkedList<>();
+
+    /**
+     * Ids of the movies in the window.
+     */
+    private final SparseBooleanArray mMovieIds = new SparseBooleanArray();
+
+    /**
+     * Maximum number of pages kept in the window.
+     */
+    private final int mMaxPages;
+
+    /**
+     * First page of the window, 0 when the window is empty.
+     */
+    private int mFirstPage;
+
+    /**
+     * Whether a page past the last one has been requested.
+     */
+    private boolean mLastPageReached;
+
+    /**
+     * Constructor.
+     *
+     * @param maxPages maximum number of pages kept in the window.
+     */
+    public MoviePager(int maxPages) {
+        mMaxPages = Math.max(1, maxPages);
+    }
+
+    /**
+     * Gets the movies of the window. The list is updated in place.
+     *
+     * @return the movies of the window.
+     */
+    public ArrayList<MovieItem> getMovies() {
+        return mMovies;
+    }
+
+    /**
+     * Gets the maximum number of pages kept in the window.
+     *
+     * @return the maximum number of pages.
+     */
+    public int getMaxPages() {
+        return mMaxPages;
+    }
+
+    /**
+     * Gets the number of movies each page of the window contributed.
+     *
+     * @return the page sizes, in order.
+     */
+    public int[] getPageSizes() {
+        int[] pageSizes = new int[mPageSizes.size()];
+        int i = 0;
+        for (Integer pageSize : mPageSizes) {
+            pageSizes[i++] = pageSize;
+        }
+        return pageSizes;
+    }
+
+    /**
+     * Gets the first page of the window.
+     *
+     * @return the first page, 0 when the window is empty.
+     */
+    public int getFirstPage() {
+        return mFirstPage;
+    }
+
+    /**
+     * Gets the page to request to extend the window at its end.
+     *
+     * @return the next page.
+     */
+    public int getNextPage() {
+        return mFirstPage == 0 ? 1 : mFirstPage + mPageSizes.size();
+    }
+
+    /**
+     * Gets the page to request to extend the window at its start.
+     *
+     * @return the previous page, 0 if the window already starts at the first page.
+     */
+    public int getPreviousPage() {
+        return mFirstPage > 1 ? mFirstPage - 1 : 0;
+    }
+
+    /**
+     * Checks whether there may be more pages after the window.
+     *
+     * @return true unless an empty page has been received at the end.
+     */
+    public boolean hasNextPage() {
+        return !mLastPageReached;
+    }
+
+    /**
+     * Empties the window.
+     */
+    public void reset() {
+        mMovies.clear();
+        mPageSizes.clear();
+        mMovieIds.clear();
+        mFirstPage = 0;
+        mLastPageReached = false;
+    }
+
+    /**
+     * Restores a window previously read with {@link #getMovies()},
+     * {@link #getFirstPage()} and {@link #getPageSizes()}.
+     *
+     * @param firstPage first page of the window.
+     * @param pageSizes number of movies of each page.
+     * @param movies movies of the window.
+     */
+    public void restore(int firstPage, int[] pageSizes, List<MovieItem> movies) {
+        reset();
+        if (firstPage < 1 || pageSizes == null || movies == null) {
+            return;
+        }
+        mFirstPage = firstPage;
+        for (int pageSize : pageSizes) {
+            mPageSizes.add(pageSize);
+        }
+        for (MovieItem movie : movies) {
+            mMovies.add(movie);
+            mMovieIds.put(movie.getMovieId(), true);
+        }
+    }
+
+    /**
+     * Adds a page at the end of the window.
+     *
+     * @param page the page number, must be {@link #getNextPage()}.
+     * @param movies the movies of the page.
+     * @return the number of movies added, which were appended to {@link #getMovies()}.
+     */
+    public int appendPage(int page, List<MovieItem> movies) {
+        if (page != getNextPage()) {
+            return 0;
+        }
+        if (movies.isEmpty()) {
+            mLastPageReached = true;
+            return 0;
+        }
+        if (mFirstPage == 0) {
+            mFirstPage = page;
+        }
+        int added = 0;
+        for (MovieItem movie : movies) {
+            if (addMovieId(movie)) {
+                mMovies.add(movie);
+                added++;
+            }
+        }
+        mPageSizes.addLast(added);
+        return added;
+    }
+
+    /**
+     * Adds a page at the start of the window.
+     *
+     * @param page the page number, must be {@link #getPreviousPage()}.
+     * @param movies the movies of the page.
+     * @return the number of movies added, which were inserted at the start of
+     *         {@link #getMovies()}.
+     */
+    public int prependPage(int page, List<MovieItem> movies) {
+        if (page < 1 || page != getPreviousPage()) {
+            return 0;
+        }
+        ArrayList<MovieItem> accepted = new ArrayList<>(movies.size());
+        for (MovieItem movie : movies) {
+            if (addMovieId(movie)) {
+                accepted.add(movie);
+            }
+        }
+        mMovies.addAll(0, accepted);
+        mPageSizes.addFirst(accepted.size());
+        mFirstPage = page;
+        return accepted.size();
+    }
+
+    /**
+     * Drops pages from the start of the window until it fits the maximum size.
+     *
+     * @return the number of movies removed from the start of {@link #getMovies()}.
+     */
+    public int trimStart() {
+        int removed = 0;
+        while (mPageSizes.size() > mMaxPages) {
+            removed += mPageSizes.removeFirst();
+            mFirstPage++;
+        }
+        removeMovies(0, removed);
+        return removed;
+    }
+
+    /**
+     * Drops pages from the end of the window until it fits the maximum size.
+     *
+     * @return the number of movies removed from the end of {@link #getMovies()}.
+     */
+    public int trimEnd() {
+        int removed = 0;
+        while (mPageSizes.size() > mMaxPages) {
+            removed += mPageSizes.removeLast();
+            // The dropped pages can be requested again.
+            mLastPageReached = false;
+        }
+        removeMovies(mMovies.size() - removed, mMovies.size());
+        return removed;
+    }
+
+    /**
+     * Removes a range of movies from the window.
+     *
+     * @param from first index to remove, inclusive.
+     * @param to last index to remove, exclusive.
+     */
+    private void removeMovies(int from, int to) {
+        List<MovieItem> range = mMovies.subList(from, to);
+        for (MovieItem movie : range) {
+            mMovieIds.delete(movie.getMovieId());
+        }
+        range.clear();
+    }
+
+    /**
+     * Adds the id of a movie to the ids in the window.
+     *
+     * @param movie the movie.
+     * @return true if the id was not in the window yet.
+     */
+    private boolean addMovieId(MovieItem movie) {
+        int movieId = movie.getMovieId();
+        if (mMovieIds.get(movieId)) {
+            return false;
+        }
+        mMovieIds.put(movieId, true);
+        return true;
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.content.ContentProvider;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.net.Uri;
+
+import java.util.HashSet;
+
+import edgargtzg.popularmovies.MovieContract.ListingEntry;
+import edgargtzg.popularmovies.MovieContract.MovieEntry;
+import edgargtzg.popularmovies.MovieContract.ReviewEntry;
+import edgargtzg.popularmovies.MovieContract.SearchEntry;
+import edgargtzg.popularmovies.MovieContract.VideoEntry;
+
+/**
+ * Exposes the local movie store to the rest of the application.
+ */
+public class MovieProvider extends ContentProvider {
+
+    static final int MOVIE = 100;
+    static final int MOVIE_WITH_ID = 101;
+    static final int LISTING = 200;
+    static final int VIDEOS = 300;
+    static final int REVIEWS = 400;
+    static final int REVIEW_WITH_ID = 401;
+    static final int SEARCH = 500;
+
+    /**
+     * Matches the URIs supported by this provider.
+     */
+    private static final UriMatcher sUriMatcher = buildUriMatcher();
+
+    /**
+     * Movies of a listing joined with their details.
+     */
+    private static final SQLiteQueryBuilder sListingQueryBuilder;
+
+    static {
+        sListingQueryBuilder = new SQLiteQueryBuilder();
+        sListingQueryBuilder.setTables(
+                ListingEntry.TABLE_NAME + " INNER JOIN " + MovieEntry.TABLE_NAME +
+                        " ON " + ListingEntry.TABLE_NAME + "." + ListingEntry.COLUMN_MOVIE_ID +
+                        " = " + MovieEntry.TABLE_NAME + "." + MovieEntry.COLUMN_MOVIE_ID);
+    }
+
+    private static final String sListingSelection =
+            ListingEntry.TABLE_NAME + "." + ListingEntry.COLUMN_SORT_BY + " = ?";
+
+    private static final String sListingSortOrder =
+            ListingEntry.TABLE_NAME + "." + ListingEntry.COLUMN_PAGE + " ASC, " +
+                    ListingEntry.TABLE_NAME + "." + ListingEntry.COLUMN_POSITION + " ASC";
+
+    /**
+     * Movies joined with their row of the full-text index.
+     */
+    private static final SQLiteQueryBuilder sSearchQueryBuilder;
+
+    static {
+        sSearchQueryBuilder = new SQLiteQueryBuilder();
+        sSearchQueryBuilder.setTables(
+                MovieEntry.TABLE_NAME + " INNER JOIN " + SearchEntry.TABLE_NAME +
+                        " ON " + MovieEntry.TABLE_NAME + "." + MovieEntry.COLUMN_MOVIE_ID +
+                        " = " + SearchEntry.TABLE_NAME + ".docid");
+    }
+
+    private static final String sSearchSelection = SearchEntry.TABLE_NAME + " MATCH ?";
+
+    private static final String sSearchSortOrder =
+            MovieEntry.TABLE_NAME + "." + MovieEntry.COLUMN_POPULARITY + " DESC";
+
+    private MovieDbHelper mOpenHelper;
+
+    /**
+     * Builds the matcher for every URI supported by this provider.
+     *
+     * @return the URI matcher.
+     */
+    static UriMatcher buildUriMatcher() {
+        final UriMatcher matcher = new UriMatcher(UriMatcher.NO_MATCH);
+        final String authority = MovieContract.CONTENT_AUTHORITY;
+
+        matcher.addURI(authority, MovieContract.PATH_MOVIE, MOVIE);
+        matcher.addURI(authority, MovieContract.PATH_MOVIE + "/#", MOVIE_WITH_ID);
+        matcher.addURI(authority, MovieContract.PATH_LISTING + "/*", LISTING);
+        matcher.addURI(authority, MovieContract.PATH_VIDEO + "/#", VIDEOS);
+        matcher.addURI(authority, MovieContract.PATH_REVIEW + "/#", REVIEWS);
+        matcher.addURI(authority, MovieContract.PATH_REVIEW + "/#/*", REVIEW_WITH_ID);
+        matcher.addURI(authority, MovieContract.PATH_SEARCH + "/*", SEARCH);
+        return matcher;
+    }
+
+    @Override
+    public boolean onCreate() {
+        mOpenHelper = new MovieDbHelper(getContext());
+        return true;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        switch (sUriMatcher.match(uri)) {
+            case MOVIE:
+                return MovieEntry.CONTENT_TYPE;
+            case MOVIE_WITH_ID:
+                return MovieEntry.CONTENT_ITEM_TYPE;
+            case LISTING:
+                return ListingEntry.CONTENT_TYPE;
+            case VIDEOS:
+                return VideoEntry.CONTENT_TYPE;
+            case REVIEWS:
+                return ReviewEntry.CONTENT_TYPE;
+            case REVIEW_WITH_ID:
+                return ReviewEntry.CONTENT_ITEM_TYPE;
+            case SEARCH:
+                return SearchEntry.CONTENT_TYPE;
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        Cursor cursor;
+        switch (sUriMatcher.match(uri)) {
+            case MOVIE: {
+                cursor = db.query(MovieEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder);
+                break;
+            }
+            case MOVIE_WITH_ID: {
+                cursor = db.query(MovieEntry.TABLE_NAME, projection,
+                        MovieEntry.COLUMN_MOVIE_ID + " = ?",
+                        new String[]{String.valueOf(ContentUris.parseId(uri))},
+                        null, null, sortOrder);
+                break;
+            }
+            case LISTING: {
+                cursor = sListingQueryBuilder.query(db, projection, sListingSelection,
+                        new String[]{ListingEntry.getSortByFromUri(uri)},
+                        null, null, sListingSortOrder);
+                break;
+            }
+            case VIDEOS: {
+                cursor = db.query(VideoEntry.TABLE_NAME, projection,
+                        VideoEntry.COLUMN_MOVIE_ID + " = ?",
+                        new String[]{String.valueOf(ContentUris.parseId(uri))},
+                        null, null, VideoEntry.COLUMN_POSITION + " ASC");
+                break;
+            }
+            case REVIEWS: {
+                cursor = db.query(ReviewEntry.TABLE_NAME, projection,
+                        ReviewEntry.COLUMN_MOVIE_ID + " = ?",
+                        new String[]{String.valueOf(ContentUris.parseId(uri))},
+                        null, null, ReviewEntry.COLUMN_POSITION + " ASC");
+                break;
+            }
+            case REVIEW_WITH_ID: {
+                cursor = db.query(ReviewEntry.TABLE_NAME, projection,
+                        ReviewEntry.COLUMN_MOVIE_ID + " = ? AND " +
+                                ReviewEntry.COLUMN_REVIEW_ID + " = ?",
+                        new String[]{uri.getPathSegments().get(1),
+                                ReviewEntry.getReviewIdFromUri(uri)},
+                        null, null, sortOrder);
+                break;
+            }
+            case SEARCH: {
+                cursor = sSearchQueryBuilder.query(db, projection, sSearchSelection,
+                        new String[]{SearchEntry.getMatchQueryFromUri(uri)},
+                        null, null, sSearchSortOrder,
+                        uri.getQueryParameter(SearchEntry.PARAM_LIMIT));
+                break;
+            }
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        return cursor;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        Uri returnUri;
+        switch (sUriMatcher.match(uri)) {
+            case MOVIE: {
+                long _id = db.insert(MovieEntry.TABLE_NAME, null, values);
+                if (_id < 0) {
+                    throw new SQLException("Failed to insert row into " + uri);
+                }
+                returnUri = MovieEntry.buildMovieUri(
+                        values.getAsLong(MovieEntry.COLUMN_MOVIE_ID));
+                break;
+            }
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+        getContext().getContentResolver().notifyChange(uri, null);
+        return returnUri;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int rowsDeleted;
+        switch (sUriMatcher.match(uri)) {
+            case MOVIE:
+                rowsDeleted = db.delete(MovieEntry.TABLE_NAME, selection, selectionArgs);
+                break;
+            case LISTING:
+                rowsDeleted = db.delete(ListingEntry.TABLE_NAME,
+                        ListingEntry.COLUMN_SORT_BY + " = ?",
+                        new String[]{ListingEntry.getSortByFromUri(uri)});
+                break;
+            case REVIEWS:
+                rowsDeleted = db.delete(ReviewEntry.TABLE_NAME,
+                        ReviewEntry.COLUMN_MOVIE_ID + " = ?",
+                        new String[]{String.valueOf(ContentUris.parseId(uri))});
+                break;
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+        if (rowsDeleted != 0) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+        return rowsDeleted;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int rowsUpdated;
+        switch (sUriMatcher.match(uri)) {
+            case MOVIE:
+                rowsUpdated = db.update(MovieEntry.TABLE_NAME, values, selection, selectionArgs);
+                break;
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+        if (rowsUpdated != 0) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+        return rowsUpdated;
+    }
+
+    /**
+     * Inserts rows in a single transaction.
+     *
+     * For a listing URI every value holds the movie columns plus its listing
+     * page and position, and the listing pages present in the values are
+     * replaced. For video URIs the rows of that movie are replaced. For review
+     * URIs the review pages present in the values are replaced, and a first
+     * page replaces every review of that movie.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int returnCount = 0;
+        switch (sUriMatcher.match(uri)) {
+            case MOVIE: {
+                db.beginTransaction();
+                try {
+                    for (ContentValues value : values) {
+                        if (db.insert(MovieEntry.TABLE_NAME, null, value) != -1) {
+                            returnCount++;
+                        }
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                break;
+            }
+            case LISTING: {
+                String sortBy = ListingEntry.getSortByFromUri(uri);
+                db.beginTransaction();
+                try {
+                    HashSet<Integer> replacedPages = new HashSet<>();
+                    ContentValues listingValue = new ContentValues();
+                    for (ContentValues value : values) {
+                        ContentValues movieValue = new ContentValues(value);
+                        Integer page = movieValue.getAsInteger(ListingEntry.COLUMN_PAGE);
+                        Integer position = movieValue.getAsInteger(ListingEntry.COLUMN_POSITION);
+                        movieValue.remove(ListingEntry.COLUMN_PAGE);
+                        movieValue.remove(ListingEntry.COLUMN_POSITION);
+                        if (replacedPages.add(page)) {
+                            db.delete(ListingEntry.TABLE_NAME,
+                                    ListingEntry.COLUMN_SORT_BY + " = ? AND " +
+                                            ListingEntry.COLUMN_PAGE + " = ?",
+                                    new String[]{sortBy, String.valueOf(page)});
+                        }
+                        if (db.insert(MovieEntry.TABLE_NAME, null, movieValue) == -1) {
+                            continue;
+                        }
+                        listingValue.clear();
+                        listingValue.put(ListingEntry.COLUMN_SORT_BY, sortBy);
+                        listingValue.put(ListingEntry.COLUMN_PAGE, page);
+                        listingValue.put(ListingEntry.COLUMN_POSITION, position);
+                        listingValue.put(ListingEntry.COLUMN_MOVIE_ID,
+                                movieValue.getAsLong(MovieEntry.COLUMN_MOVIE_ID));
+                        if (db.insert(ListingEntry.TABLE_NAME, null, listingValue) != -1) {
+                            returnCount++;
+                        }
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                getContext().getContentResolver().notifyChange(MovieEntry.CONTENT_URI, null);
+                break;
+            }
+            case VIDEOS: {
+                returnCount = replaceMovieRows(db, VideoEntry.TABLE_NAME,
+                        VideoEntry.COLUMN_MOVIE_ID, ContentUris.parseId(uri), values);
+                break;
+            }
+            case REVIEWS: {
+                returnCount = replaceReviewPages(db, ContentUris.parseId(uri), values);
+                break;
+            }
+            default:
+                return super.bulkInsert(uri, values);
+        }
+        getContext().getContentResolver().notifyChange(uri, null);
+        return returnCount;
+    }
+
+    /**
+     * Replaces the review pages of a movie present in the given rows. A first
+     * page starts the reviews over, so every review of the movie is replaced.
+     *
+     * @param db the writable database.
+     * @param movieId themoviedb.org id of the movie.
+     * @param values the new rows.
+     * @return the number of inserted rows.
+     */
+    private static int replaceReviewPages(SQLiteDatabase db, long movieId,
+                                          ContentValues[] values) {
+        int returnCount = 0;
+        String movieIdArg = String.valueOf(movieId);
+        db.beginTransaction();
+        try {
+            HashSet<Integer> replacedPages = new HashSet<>();
+            for (ContentValues value : values) {
+                Integer page = value.getAsInteger(ReviewEntry.COLUMN_PAGE);
+                if (replacedPages.add(page)) {
+                    if (page == 1) {
+                        db.delete(ReviewEntry.TABLE_NAME, ReviewEntry.COLUMN_MOVIE_ID + " = ?",
+                                new String[]{movieIdArg});
+                    } else {
+                        db.delete(ReviewEntry.TABLE_NAME,
+                                ReviewEntry.COLUMN_MOVIE_ID + " = ? AND " +
+                                        ReviewEntry.COLUMN_PAGE + " = ?",
+                                new String[]{movieIdArg, String.valueOf(page)});
+                    }
+                }
+                value.put(ReviewEntry.COLUMN_MOVIE_ID, movieId);
+                if (db.insert(ReviewEntry.TABLE_NAME, null, value) != -1) {
+                    returnCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return returnCount;
+    }
+
+    /**
+     * Replaces every row of a movie in the given table.
+     *
+     * @param db the writable database.
+     * @param table the table to update.
+     * @param movieIdColumn name of the movie id column of the table.
+     * @param movieId themoviedb.org id of the movie.
+     * @param values the new rows.
+     * @return the number of inserted rows.
+     */
+    private static int replaceMovieRows(SQLiteDatabase db, String table, String movieIdColumn,
+                                        long movieId, ContentValues[] values) {
+        int returnCount = 0;
+        db.beginTransaction();
+        try {
+            db.delete(table, movieIdColumn + " = ?", new String[]{String.valueOf(movieId)});
+            for (ContentValues value : values) {
+                value.put(movieIdColumn, movieId);
+                if (db.insert(table, null, value) != -1) {
+                    returnCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return returnCount;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Order and filters applied on the device to the movies already fetched, so
+ * changing them needs no request to themoviedb.org.
+ *
+ * A query sorts by up to two keys among rating, release date, popularity and
+ * title, and keeps the movies released within a range of years and rated by
+ * enough users. Applying a query runs over a {@link MovieTable} and may run
+ * on any thread.
+ */
+public final class MovieQuery {
+
+    /**
+     * Year bound meaning no bound.
+     */
+    public static final int NO_YEAR = 0;
+
+    /**
+     * Columns to sort by, most significant first, and their direction.
+     */
+    private final int[] mSortColumns;
+    private final boolean[] mDescending;
+
+    /**
+     * Earliest and latest release years kept, or {@link #NO_YEAR}.
+     */
+    private final int mFromYear;
+    private final int mToYear;
+
+    /**
+     * Lowest number of votes kept.
+     */
+    private final int mMinVoteCount;
+
+    /**
+     * Constructor.
+     *
+     * @param sortColumns the {@link MovieTable} SORT_BY constants to sort by,
+     *                    most significant first, may be empty.
+     * @param descending for each column, true to put the highest values first.
+     * @param fromYear earliest release year kept, or {@link #NO_YEAR}.
+     * @param toYear latest release year kept, or {@link #NO_YEAR}.
+     * @param minVoteCount lowest number of votes kept.
+     */
+    public MovieQuery(int[] sortColumns, boolean[] descending, int fromYear, int toYear,
+                      int minVoteCount) {
+        mSortColumns = sortColumns;
+        mDescending = descending;
+        mFromYear = fromYear;
+        mToYear = toYear;
+        mMinVoteCount = minVoteCount;
+    }
+
+    /**
+     * Reads the query chosen in the settings.
+     *
+     * @param context any context, used to read the preference keys.
+     * @param preferences the preferences.
+     * @return the query.
+     */
+    public static MovieQuery fromPreferences(Context context, SharedPreferences preferences) {
+        String none = context.getString(R.string.pref_order_value_none);
+        String first = preferences.getString(context.getString(R.string.pref_local_sort_key), none);
+        String then = preferences.getString(context.getString(R.string.pref_local_then_key), none);
+
+        int[] columns = new int[2];
+        boolean[] descending = new boolean[2];
+        int count = 0;
+        for (String key : new String[]{first, then}) {
+            int column = toSortColumn(context, key);
+            if (column < 0 || contains(columns, count, column)) {
+                continue;
+            }
+            columns[count] = column;
+            // Titles read best from A to Z, the other keys from the highest value.
+            descending[count] = column != MovieTable.SORT_BY_TITLE;
+            count++;
+        }
+        return new MovieQuery(Arrays.copyOf(columns, count), Arrays.copyOf(descending, count),
+                readInt(preferences, context.getString(R.string.pref_min_year_key), NO_YEAR),
+                readInt(preferences, context.getString(R.string.pref_max_year_key), NO_YEAR),
+                readInt(preferences, context.getString(R.string.pref_min_votes_key), 0));
+    }
+
+    /**
+     * Checks whether a preference key is one the query is read from.
+     *
+     * @param context any context, used to read the preference keys.
+     * @param key the preference key.
+     * @return true if changing the preference changes the query.
+     */
+    public static boolean isQueryPreference(Context context, String key) {
+        return context.getString(R.string.pref_local_sort_key).equals(key)
+                || context.getString(R.string.pref_local_then_key).equals(key)
+                || context.getString(R.string.pref_min_year_key).equals(key)
+                || context.getString(R.string.pref_max_year_key).equals(key)
+                || context.getString(R.string.pref_min_votes_key).equals(key);
+    }
+
+    /**
+     * Checks whether the query sorts the movies. A query which does not keeps
+     * the order the movies were fetched in.
+     *
+     * @return true if there is a sort key.
+     */
+    public boolean hasSortKeys() {
+        return mSortColumns.length > 0;
+    }
+
+    /**
+     * Checks whether the query leaves the movies as they were fetched.
+     *
+     * @return true if the query neither sorts nor filters.
+     */
+    public boolean isIdentity() {
+        return !hasSortKeys() && mFromYear == NO_YEAR && mToYear == NO_YEAR
+                && mMinVoteCount <= 0;
+    }
+
+    /**
+     * Applies the query.
+     *
+     * @param table the movies.
+     * @return the movies kept, in order.
+     */
+    public ArrayList<MovieItem> apply(MovieTable table) {
+        int[] rows;
+        if (hasSortKeys()) {
+            rows = table.sortedRows(mSortColumns, mDescending);
+        } else {
+            rows = new int[table.size()];
+            for (int row = 0; row < rows.length; row++) {
+                rows[row] = row;
+            }
+        }
+        // Movies without a release date are dropped as soon as either year
+        // is bounded, the lowest date above NO_RELEASE_DATE excluding them.
+        int fromDate;
+        if (mFromYear != NO_YEAR) {
+            fromDate = MovieItem.epochDay(mFromYear, 1, 1);
+        } else if (mToYear != NO_YEAR) {
+            fromDate = MovieItem.NO_RELEASE_DATE + 1;
+        } else {
+            fromDate = MovieItem.NO_RELEASE_DATE;
+        }
+        int toDate = mToYear != NO_YEAR
+                ? MovieItem.epochDay(mToYear, 12, 31) : Integer.MAX_VALUE;
+        return table.getMovies(table.filterRows(rows, mMinVoteCount, fromDate, toDate));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        } else if (!(other instanceof MovieQuery)) {
+            return false;
+        }
+        MovieQuery query = (MovieQuery) other;
+        return mFromYear == query.mFromYear && mToYear == query.mToYear
+                && mMinVoteCount == query.mMinVoteCount
+                && Arrays.equals(mSortColumns, query.mSortColumns)
+                && Arrays.equals(mDescending, query.mDescending);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(mSortColumns);
+        result = 31 * result + Arrays.hashCode(mDescending);
+        result = 31 * result + mFromYear;
+        result = 31 * result + mToYear;
+        return 31 * result + mMinVoteCount;
+    }
+
+    /**
+     * Maps a local order preference value to a column of the movie table.
+     *
+     * @param context any context, used to read the preference values.
+     * @param value the preference value.
+     * @return the SORT_BY constant, -1 for none.
+     */
+    private static int toSortColumn(Context context, String value) {
+        if (context.getString(R.string.pref_order_value_rating).equals(value)) {
+            return MovieTable.SORT_BY_RATING;
+        } else if (context.getString(R.string.pref_order_value_release_date).equals(value)) {
+            return MovieTable.SORT_BY_RELEASE_DATE;
+        } else if (context.getString(R.string.pref_order_value_popularity).equals(value)) {
+            return MovieTable.SORT_BY_POPULARITY;
+        } else if (context.getString(R.string.pref_order_value_title).equals(value)) {
+            return MovieTable.SORT_BY_TITLE;
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether a column is already among the sort keys.
+     *
+     * @param columns the sort columns.
+     * @param count number of columns in use.
+     * @param column the column.
+     * @return true if it is.
+     */
+    private static boolean contains(int[] columns, int count, int column) {
+        for (int i = 0; i < count; i++) {
+            if (columns[i] == column) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads a whole number typed in a text preference.
+     *
+     * @param preferences the preferences.
+     * @param key the preference key.
+     * @param fallback value if the preference is empty or not a number.
+     * @return the number.
+     */
+    private static int readInt(SharedPreferences preferences, String key, int fallback) {
+        try {
+            return Integer.parseInt(preferences.getString(key, "").trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
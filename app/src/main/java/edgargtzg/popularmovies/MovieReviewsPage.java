@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import java.util.ArrayList;
+
+/**
+ * Contains a page of the reviews of a movie.
+ */
+public class MovieReviewsPage {
+
+    /**
+     * Contains the reviews of the page.
+     */
+    private final ArrayList<MovieItemReview> mReviews;
+
+    /**
+     * The page number, starting at 1.
+     */
+    private final int mPage;
+
+    /**
+     * Number of review pages of the movie.
+     */
+    private final int mTotalPages;
+
+    /**
+     * Default constructor.
+     *
+     * @param reviews the reviews of the page.
+     * @param page the page number, starting at 1.
+     * @param totalPages number of review pages of the movie.
+     */
+    public MovieReviewsPage(ArrayList<MovieItemReview> reviews, int page, int totalPages) {
+        mReviews = reviews;
+        mPage = page;
+        mTotalPages = totalPages;
+    }
+
+    /**
+     * Gets the reviews of the page.
+     *
+     * @return the reviews of the page.
+     */
+    public ArrayList<MovieItemReview> getReviews() {
+        return mReviews;
+    }
+
+    /**
+     * Gets the page number.
+     *
+     * @return the page number, starting at 1.
+     */
+    public int getPage() {
+        return mPage;
+    }
+
+    /**
+     * Gets the number of review pages of the movie.
+     *
+     * @return the number of pages.
+     */
+    public int getTotalPages() {
+        return mTotalPages;
+    }
+
+    /**
+     * Checks whether the movie has reviews past this page.
+     *
+     * @return true if there is a next page.
+     */
+    public boolean hasNextPage() {
+        return mPage < mTotalPages;
+    }
+}
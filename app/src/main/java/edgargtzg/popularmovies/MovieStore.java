@@ -0,0 +1,500 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import edgargtzg.popularmovies.MovieContract.ListingEntry;
+import edgargtzg.popularmovies.MovieContract.MovieEntry;
+import edgargtzg.popularmovies.MovieContract.ReviewEntry;
+import edgargtzg.popularmovies.MovieContract.SearchEntry;
+import edgargtzg.popularmovies.MovieContract.VideoEntry;
+
+/**
+ * Reads and writes movie data through the {@link MovieProvider}.
+ *
+ * Must not be called from the UI thread.
+ */
+public final class MovieStore {
+
+    /**
+     * Columns of a movie row, qualified so they can be used on joined queries.
+     */
+    public static final String[] MOVIE_COLUMNS = {
+            MovieEntry.TABLE_NAME + "." + MovieEntry.COLUMN_MOVIE_ID,
+            MovieEntry.COLUMN_ORIGINAL_TITLE,
+            MovieEntry.COLUMN_POSTER_PATH,
+            MovieEntry.COLUMN_PLOT_SYNOPSIS,
+            MovieEntry.COLUMN_USER_RATING,
+            MovieEntry.COLUMN_RELEASE_DATE,
+            MovieEntry.COLUMN_POPULARITY,
+            MovieEntry.COLUMN_VOTE_COUNT
+    };
+
+    // These indices are tied to MOVIE_COLUMNS.
+    static final int COL_MOVIE_ID = 0;
+    static final int COL_ORIGINAL_TITLE = 1;
+    static final int COL_POSTER_PATH = 2;
+    static final int COL_PLOT_SYNOPSIS = 3;
+    static final int COL_USER_RATING = 4;
+    static final int COL_RELEASE_DATE = 5;
+    static final int COL_POPULARITY = 6;
+    static final int COL_VOTE_COUNT = 7;
+
+    /**
+     * Columns of a listing row, the movie columns followed by the listing page.
+     */
+    public static final String[] LISTING_COLUMNS = {
+            MovieEntry.TABLE_NAME + "." + MovieEntry.COLUMN_MOVIE_ID,
+            MovieEntry.COLUMN_ORIGINAL_TITLE,
+            MovieEntry.COLUMN_POSTER_PATH,
+            MovieEntry.COLUMN_PLOT_SYNOPSIS,
+            MovieEntry.COLUMN_USER_RATING,
+            MovieEntry.COLUMN_RELEASE_DATE,
+            MovieEntry.COLUMN_POPULARITY,
+            MovieEntry.COLUMN_VOTE_COUNT,
+            ListingEntry.TABLE_NAME + "." + ListingEntry.COLUMN_PAGE
+    };
+
+    // This index is tied to LISTING_COLUMNS.
+    static final int COL_LISTING_PAGE = 8;
+
+    /**
+     * Columns of a video row.
+     */
+    public static final String[] VIDEO_COLUMNS = {
+            VideoEntry.COLUMN_KEY,
+            VideoEntry.COLUMN_NAME,
+            VideoEntry.COLUMN_SITE,
+            VideoEntry.COLUMN_TYPE
+    };
+
+    // These indices are tied to VIDEO_COLUMNS.
+    static final int COL_VIDEO_KEY = 0;
+    static final int COL_VIDEO_NAME = 1;
+    static final int COL_VIDEO_SITE = 2;
+    static final int COL_VIDEO_TYPE = 3;
+
+    /**
+     * Columns of a review row.
+     */
+    public static final String[] REVIEW_COLUMNS = {
+            ReviewEntry.COLUMN_REVIEW_ID,
+            ReviewEntry.COLUMN_AUTHOR,
+            ReviewEntry.COLUMN_PREVIEW,
+            ReviewEntry.COLUMN_TRUNCATED,
+            ReviewEntry.COLUMN_PAGE
+    };
+
+    // These indices are tied to REVIEW_COLUMNS.
+    static final int COL_REVIEW_ID = 0;
+    static final int COL_REVIEW_AUTHOR = 1;
+    static final int COL_REVIEW_PREVIEW = 2;
+    static final int COL_REVIEW_TRUNCATED = 3;
+    static final int COL_REVIEW_PAGE = 4;
+
+    /**
+     * Not instantiable.
+     */
+    private MovieStore() {
+    }
+
+    /**
+     * Replaces a page of the movies of a listing.
+     *
+     * @param contentResolver resolver to reach the provider.
+     * @param sortBy sort order of the listing.
+     * @param page discover page of the movies, starting at 1.
+     * @param movies movies of the page, in order.
+     */
+    public static void saveListingPage(ContentResolver contentResolver, String sortBy, int page,
+                                       List<MovieItem> movies) {
+        ContentValues[] values = new ContentValues[movies.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = toContentValues(movies.get(i));
+            values[i].put(ListingEntry.COLUMN_PAGE, page);
+            values[i].put(ListingEntry.COLUMN_POSITION, i);
+        }
+        contentResolver.bulkInsert(ListingEntry.buildListingUri(sortBy), values);
+    }
+
+    /**
+     * Inserts or replaces movies which belong to no listing, such as search
+     * results. They are indexed for search as any other movie.
+     *
+     * @param contentResolver resolver to reach the provider.
+     * @param movies the movies.
+     */
+    public static void saveMovies(ContentResolver contentResolver, List<MovieItem> movies) {
+        ContentValues[] values = new ContentValues[movies.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = toContentValues(movies.get(i));
+        }
+        contentResolver.bulkInsert(MovieEntry.CONTENT_URI, values);
+    }
+
+    /**
+     * Inserts or replaces the details of a movie.
+     *
+     * @param contentResolver resolver to reach the provider.
+     * @param movie the movie.
+     */
+    public static void saveMovie(ContentResolver contentResolver, MovieItem movie) {
+        contentResolver.insert(MovieEntry.CONTENT_URI, toContentValues(movie));
+    }
+
+    /**
+     * Inserts or replaces a movie with its videos and the first page of its
+     * reviews, as fetched together from themoviedb.org.
+     *
+     * @param contentResolver resolver to reach the provider.
+     * @param movieDetails the movie details.
+     */
+    public static void saveMovieDetails(ContentResolver contentResolver,
+                                        MovieDetails movieDetails) {
+        int movieId = movieDetails.getMovieItem().getMovieId();
+        saveMovie(contentResolver, movieDetails.getMovieItem());
+        saveVideos(contentResolver, movieId, movieDetails.getVideos());
+        saveReviews(contentResolver, movieId, movieDetails.getReviews(), 0);
+    }
+
+    /**
+     * Replaces the videos of a movie.
+     *
+     * @param contentResolver resolver to reach the provider.
+     * @param movieId themoviedb.org id of the movie.
+     * @param videos videos of the movie, in order.
+     */
+    public static void saveVideos(ContentResolver contentResolver, int movieId,
+                                  List<MovieItemVideo> videos) {
+        ContentValues[] values = new ContentValues[videos.size()];
+        for (int i = 0; i < values.length; i++) {
+            MovieItemVideo video = videos.get(i);
+            values[i] = new ContentValues();
+            values[i].put(VideoEntry.COLUMN_POSITION, i);
+            values[i].put(VideoEntry.COLUMN_KEY, video.getVideoKey());
+            values[i].put(VideoEntry.COLUMN_NAME, video.getVideoName());
+            values[i].put(VideoEntry.COLUMN_SITE, video.getVideoSite());
+            values[i].put(VideoEntry.COLUMN_TYPE, video.getVideoType());
+        }
+        contentResolver.bulkInsert(
+                VideoEntry.buildMovieVideosUri(movieId), values);
+    }
+
+    /**
+     * Replaces a page of the reviews of a movie. Saving the first page drops
+     * the other pages saved before.
+     *
+     * @param contentResolver resolver to reach the provider.
+     * @param movieId themoviedb.org id of the movie.
+     * @param reviewsPage the page of reviews, fetched from themoviedb.org.
+     * @param firstPosition position of the first review of the page among
+     *                      the reviews of the movie.
+     */
+    public static void saveReviews(ContentResolver contentResolver, int movieId,
+                                   MovieReviewsPage reviewsPage, int firstPosition) {
+        List<MovieItemReview> reviews = reviewsPage.getReviews();
+        if (reviewsPage.getPage() == 1 && reviews.isEmpty()) {
+            // An empty first page inserts no row to start the reviews over
+            // with, the reviews removed from themoviedb.org are dropped here.
+            contentResolver.delete(ReviewEntry.buildMovieReviewsUri(movieId), null, null);
+            return;
+        }
+        ContentValues[] values = new ContentValues[reviews.size()];
+        for (int i = 0; i < values.length; i++) {
+            MovieItemReview review = reviews.get(i);
+            values[i] = new ContentValues();
+            values[i].put(ReviewEntry.COLUMN_REVIEW_ID, review.getReviewId());
+            values[i].put(ReviewEntry.COLUMN_PAGE, reviewsPage.getPage());
+            values[i].put(ReviewEntry.COLUMN_POSITION, firstPosition + i);
+            values[i].put(ReviewEntry.COLUMN_AUTHOR, review.getReviewAuthor());
+            values[i].put(ReviewEntry.COLUMN_PREVIEW, review.getReviewPreview());
+            values[i].put(ReviewEntry.COLUMN_TRUNCATED, review.isTruncated() ? 1 : 0);
+            values[i].put(ReviewEntry.COLUMN_CONTENT, review.getReviewContent());
+        }
+        contentResolver.bulkInsert(
+                ReviewEntry.buildMovieReviewsUri(movieId), values);
+    }
+
+    /**
+     * Loads the movies of a listing.
+     *
+     * @param contentResolver resolver to reach the provider.
+     * @param sortBy sort order of the listing.
+     * @return the movies of the listing, in order.
+     */
+    public static ArrayList<MovieItem> loadListing(ContentResolver contentResolver,
+                                                   String sortBy) {
+        ArrayList<MovieItem> movies = new ArrayList<>();
+        Cursor cursor = contentResolver.query(ListingEntry.buildListingUri(sortBy),
+                MOVIE_COLUMNS, null, null, null);
+        if (cursor != null) {
+            try {
+                movies = readMovies(cursor);
+            } finally {
+                cursor.close();
+            }
+        }
+        return movies;
+    }
+
+    /**
+     * Loads every movie of the store, from any listing or opened before.
+     *
+     * @param contentResolver resolver to reach the provider.
+     * @return the movies, in no particular order.
+     */
+    public static ArrayList<MovieItem> loadCatalog(ContentResolver contentResolver) {
+        ArrayList<MovieItem> movies = new ArrayList<>();
+        Cursor cursor = contentResolver.query(MovieEntry.CONTENT_URI,
+                MOVIE_COLUMNS, null, null, null);
+        if (cursor != null) {
+            try {
+                movies = readMovies(cursor);
+            } finally {
+                cursor.close();
+            }
+        }
+        return movies;
+    }
+
+    /**
+     * Searches the titles and plot synopses of the stored movies. Every word
+     * of the text must match the start of a word of the movie.
+     *
+     * @param contentResolver resolver to reach the provider.
+     * @param text the text typed by the user.
+     * @param limit maximum number of movies.
+     * @return the matching movies, the most popular first.
+     */
+    public static ArrayList<MovieItem> searchMovies(ContentResolver contentResolver,
+                                                    String text, int limit) {
+        ArrayList<MovieItem> movies = new ArrayList<>();
+        String matchQuery = toMatchQuery(text);
+        if (matchQuery == null) {
+            return movies;
+        }
+        Cursor cursor = contentResolver.query(SearchEntry.buildSearchUri(matchQuery, limit),
+                MOVIE_COLUMNS, null, null, null);
+        if (cursor != null) {
+            try {
+                movies = readMovies(cursor);
+            } finally {
+                cursor.close();
+            }
+        }
+        return movies;
+    }
+
+    /**
+     * Turns the text typed by the user into a full-text query matching every
+     * word as a prefix. Characters other than letters and digits only
+     * separate words, so the text cannot form query operators.
+     *
+     * @param text the text.
+     * @return the query, or null if the text has no word.
+     */
+    static String toMatchQuery(String text) {
+        StringBuilder query = new StringBuilder();
+        // The FTS tokenizer folds ASCII only, so the user locale must not
+        // lower case letters differently, such as I to a dotless i in Turkish.
+        for (String word : text.toLowerCase(Locale.US).split("[^\\p{L}\\p{Nd}]+")) {
+            if (!word.isEmpty()) {
+                if (query.length() > 0) {
+                    query.append(' ');
+                }
+                query.append(word).append('*');
+            }
+        }
+        return query.length() > 0 ? query.toString() : null;
+    }
+
+    /**
+     * Loads the details of a movie.
+     *
+     * @param contentResolver resolver to reach the provider.
+     * @param movieId themoviedb.org id of the movie.
+     * @return the movie, or null if it is not in the store.
+     */
+    public static MovieItem loadMovie(ContentResolver contentResolver, int movieId) {
+        MovieItem movie = null;
+        Cursor cursor = contentResolver.query(
+                MovieEntry.buildMovieUri(movieId),
+                MOVIE_COLUMNS, null, null, null);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) {
+                    movie = new MovieItem(cursor);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return movie;
+    }
+
+    /**
+     * Loads the videos of a movie.
+     *
+     * @param contentResolver resolver to reach the provider.
+     * @param movieId themoviedb.org id of the movie.
+     * @return the videos of the movie, in order.
+     */
+    public static ArrayList<MovieItemVideo> loadVideos(ContentResolver contentResolver,
+                                                       int movieId) {
+        ArrayList<MovieItemVideo> videos = new ArrayList<>();
+        Cursor cursor = contentResolver.query(
+                VideoEntry.buildMovieVideosUri(movieId),
+                VIDEO_COLUMNS, null, null, null);
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    videos.add(new MovieItemVideo(cursor));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return videos;
+    }
+
+    /**
+     * Loads the saved reviews of a movie, as a single page spanning every
+     * saved page. The content of truncated reviews is not loaded.
+     *
+     * @param contentResolver resolver to reach the provider.
+     * @param movieId themoviedb.org id of the movie.
+     * @return the reviews of the movie, in order.
+     */
+    public static MovieReviewsPage loadReviews(ContentResolver contentResolver,
+                                               int movieId) {
+        ArrayList<MovieItemReview> reviews = new ArrayList<>();
+        int lastPage = 1;
+        Cursor cursor = contentResolver.query(
+                ReviewEntry.buildMovieReviewsUri(movieId),
+                REVIEW_COLUMNS, null, null, null);
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    reviews.add(new MovieItemReview(cursor));
+                    lastPage = Math.max(lastPage, cursor.getInt(COL_REVIEW_PAGE));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return new MovieReviewsPage(reviews, lastPage, lastPage);
+    }
+
+    /**
+     * Loads the details of a movie saved the last time it was opened, with
+     * its videos and its saved reviews.
+     *
+     * @param contentResolver resolver to reach the provider.
+     * @param movieItem the movie, used as is if it is not in the store.
+     * @return the movie details, or null if neither videos nor reviews were saved.
+     */
+    public static MovieDetails loadMovieDetails(ContentResolver contentResolver,
+                                                MovieItem movieItem) {
+        int movieId = movieItem.getMovieId();
+        ArrayList<MovieItemVideo> videos = loadVideos(contentResolver, movieId);
+        MovieReviewsPage reviews = loadReviews(contentResolver, movieId);
+        if (videos.isEmpty() && reviews.getReviews().isEmpty()) {
+            return null;
+        }
+        MovieItem storedMovie = loadMovie(contentResolver, movieId);
+        return new MovieDetails(storedMovie != null ? storedMovie : movieItem, videos, reviews);
+    }
+
+    /**
+     * Loads the content of a review.
+     *
+     * @param contentResolver resolver to reach the provider.
+     * @param movieId themoviedb.org id of the movie.
+     * @param reviewId themoviedb.org id of the review.
+     * @return the content of the review, or null if it is not in the store.
+     */
+    public static String loadReviewContent(ContentResolver contentResolver, int movieId,
+                                           String reviewId) {
+        String content = null;
+        Cursor cursor = contentResolver.query(
+                ReviewEntry.buildReviewUri(movieId, reviewId),
+                new String[]{ReviewEntry.COLUMN_CONTENT}, null, null, null);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) {
+                    content = cursor.getString(0);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return content;
+    }
+
+    /**
+     * Reads every movie of a cursor queried with {@link #MOVIE_COLUMNS} or
+     * {@link #LISTING_COLUMNS}.
+     * The cursor is left open.
+     *
+     * @param cursor the cursor.
+     * @return the movies of the cursor.
+     */
+    public static ArrayList<MovieItem> readMovies(Cursor cursor) {
+        ArrayList<MovieItem> movies = new ArrayList<>(cursor.getCount());
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            movies.add(new MovieItem(cursor));
+        }
+        return movies;
+    }
+
+    /**
+     * Converts a movie to the values of its movie row.
+     *
+     * @param movie the movie.
+     * @return the movie row values.
+     */
+    private static ContentValues toContentValues(MovieItem movie) {
+        ContentValues values = new ContentValues();
+        values.put(MovieEntry.COLUMN_MOVIE_ID, movie.getMovieId());
+        values.put(MovieEntry.COLUMN_ORIGINAL_TITLE, movie.getOriginalTitle());
+        values.put(MovieEntry.COLUMN_POSTER_PATH, movie.getMoviePoster());
+        values.put(MovieEntry.COLUMN_PLOT_SYNOPSIS, movie.getPlotSynopsis());
+        // An unknown rating or release date is stored as null, so it is not
+        // read back as a rating of 0 or a date.
+        if (movie.hasUserRating()) {
+            values.put(MovieEntry.COLUMN_USER_RATING, movie.getUserRating());
+        } else {
+            values.putNull(MovieEntry.COLUMN_USER_RATING);
+        }
+        if (movie.getReleaseDate() != MovieItem.NO_RELEASE_DATE) {
+            values.put(MovieEntry.COLUMN_RELEASE_DATE, movie.getReleaseDate());
+        } else {
+            values.putNull(MovieEntry.COLUMN_RELEASE_DATE);
+        }
+        values.put(MovieEntry.COLUMN_POPULARITY, movie.getPopularity());
+        values.put(MovieEntry.COLUMN_VOTE_COUNT, movie.getVoteCount());
+        return values;
+    }
+}
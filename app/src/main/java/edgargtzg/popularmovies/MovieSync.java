@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.Log;
+import android.util.SparseBooleanArray;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Refreshes the local store in the background: the first discover pages of
+ * both sort orders and the details of the movies at the top of them, so the
+ * app opens on fresh data even without a connection.
+ */
+public final class MovieSync {
+
+    /**
+     * Log identifier for the class.
+     */
+    private static final String LOG_TAG = MovieSync.class.getSimpleName();
+
+    /**
+     * Sort orders refreshed by the sync.
+     */
+    private static final String[] SORT_ORDERS = {
+            TmdbClient.SORT_BY_POPULARITY,
+            TmdbClient.SORT_BY_RATING
+    };
+
+    private MovieSync() {
+    }
+
+    /**
+     * Runs the sync on the calling thread, which must not be the UI thread.
+     * Responses still fresh in the HTTP cache are not fetched again, so a
+     * sync right after the app was used costs no traffic.
+     *
+     * @param context the context, only used to reach application wide services.
+     * @param token cancels the sync between requests.
+     * @throws IOException if a request fails or the sync is cancelled.
+     */
+    public static void run(Context context, CancellationToken token) throws IOException {
+        Resources resources = context.getResources();
+        int pageCount = resources.getInteger(R.integer.sync_pages);
+        int detailCount = resources.getInteger(R.integer.sync_detail_count);
+        TmdbClient tmdbClient = TmdbClient.getInstance(context);
+        MovieCache movieCache = MovieCache.getInstance(context);
+        ContentResolver contentResolver = context.getApplicationContext().getContentResolver();
+
+        ArrayList<MovieItem> topMovies = new ArrayList<>();
+        for (String sortBy : SORT_ORDERS) {
+            for (int page = 1; page <= pageCount; page++) {
+                token.throwIfCancelled();
+                ArrayList<MovieItem> movies = tmdbClient.discoverMovies(
+                        sortBy, page, TmdbClient.CachePolicy.DEFAULT, null, token);
+                movieCache.putPage(sortBy, page, movies);
+                MovieStore.saveListingPage(contentResolver, sortBy, page, movies);
+                if (page == 1) {
+                    topMovies.addAll(movies.subList(0, Math.min(detailCount, movies.size())));
+                }
+            }
+        }
+
+        // Both sort orders often share their top movies.
+        SparseBooleanArray synced = new SparseBooleanArray();
+        for (MovieItem movie : topMovies) {
+            int movieId = movie.getMovieId();
+            if (movieId == MovieItem.NO_ID || synced.get(movieId)) {
+                continue;
+            }
+            synced.put(movieId, true);
+            token.throwIfCancelled();
+            MovieDetails movieDetails = tmdbClient.getMovieDetails(
+                    movieId, TmdbClient.CachePolicy.DEFAULT, null, token);
+            movieCache.putDetails(movieId, movieDetails);
+            MovieStore.saveMovieDetails(contentResolver, movieDetails);
+        }
+
+        // Persists the responses right away, the process may be killed once
+        // the sync is done.
+        tmdbClient.flushCache();
+        Log.d(LOG_TAG, "Synced " + synced.size() + " movie details");
+    }
+}
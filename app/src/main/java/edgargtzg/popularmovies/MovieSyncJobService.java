@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Runs the periodic {@link MovieSync} job scheduled by {@link SyncScheduler}.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class MovieSyncJobService extends JobService {
+
+    /**
+     * Log identifier for the class.
+     */
+    private static final String LOG_TAG = MovieSyncJobService.class.getSimpleName();
+
+    /**
+     * Cancels the running sync when the system stops the job.
+     */
+    private CancellationToken mToken;
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final CancellationToken token = new CancellationToken();
+        mToken = token;
+        TaskScheduler.getInstance().executeIo(TaskScheduler.Priority.BACKGROUND, token,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean succeeded = false;
+                        try {
+                            MovieSync.run(MovieSyncJobService.this, token);
+                            succeeded = true;
+                        } catch (IOException e) {
+                            Log.w(LOG_TAG, "Sync failed", e);
+                        } catch (RuntimeException e) {
+                            // Such as a failed write to the store, which must
+                            // not bring down the process of an unattended job.
+                            Log.e(LOG_TAG, "Sync failed", e);
+                        }
+                        if (!token.isCancelled()) {
+                            // A failed sync is retried with the backoff of the job.
+                            jobFinished(params, !succeeded);
+                        }
+                    }
+                });
+        // The job goes on in the background.
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The constraints no longer hold, the sync runs again when they do.
+        if (mToken != null) {
+            mToken.cancel();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.app.IntentService;
+import android.content.Intent;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Runs the {@link MovieSync} set off by the alarms of {@link SyncScheduler},
+ * on versions without the job scheduler.
+ */
+public class MovieSyncService extends IntentService {
+
+    /**
+     * Log identifier for the class.
+     */
+    private static final String LOG_TAG = MovieSyncService.class.getSimpleName();
+
+    public MovieSyncService() {
+        super(LOG_TAG);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        // Outside of a charging, unmetered window the sync waits for the next alarm.
+        if (!SyncScheduler.canSyncNow(this)) {
+            return;
+        }
+        boolean succeeded = false;
+        try {
+            MovieSync.run(this, new CancellationToken());
+            succeeded = true;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Sync failed", e);
+        } catch (RuntimeException e) {
+            // Such as a failed write to the store, retried like any failure.
+            Log.e(LOG_TAG, "Sync failed", e);
+        }
+        SyncScheduler.onAlarmSyncFinished(this, succeeded);
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable table of movies held column by column.
+ *
+ * The ids, ratings, release dates, popularity and vote counts of the movies
+ * are kept in primitive arrays, so looking up, sorting, filtering and
+ * comparing thousands of movies walks contiguous memory and allocates no
+ * boxed values. Titles are sorted through their collation rank, computed once
+ * per table. The movie items are kept alongside, for showing the rows. A
+ * table may be built and read on any thread.
+ */
+public final class MovieTable {
+
+    /**
+     * Columns to sort by.
+     */
+    public static final int SORT_BY_RATING = 0;
+    public static final int SORT_BY_RELEASE_DATE = 1;
+    public static final int SORT_BY_POPULARITY = 2;
+    public static final int SORT_BY_TITLE = 3;
+
+    /**
+     * The movies, by row.
+     */
+    private final MovieItem[] mMovies;
+
+    /**
+     * Movie ids, user ratings, release dates, popularity and vote counts, by row.
+     */
+    private final int[] mIds;
+    private final float[] mRatings;
+    private final int[] mReleaseDates;
+    private final float[] mPopularity;
+    private final int[] mVoteCounts;
+
+    /**
+     * Rank of the title of each row in collation order, null until titles are
+     * first sorted.
+     */
+    private int[] mTitleRanks;
+
+    /**
+     * Open addressing index from movie id to row, holding row + 1 so that 0
+     * marks a free slot. Its length is a power of two.
+     */
+    private final int[] mIdIndex;
+
+    /**
+     * Builds the table of a list of movies.
+     *
+     * @param movies the movies, in row order.
+     */
+    public MovieTable(List<MovieItem> movies) {
+        int size = movies.size();
+        mMovies = movies.toArray(new MovieItem[size]);
+        mIds = new int[size];
+        mRatings = new float[size];
+        mReleaseDates = new int[size];
+        mPopularity = new float[size];
+        mVoteCounts = new int[size];
+        mIdIndex = new int[indexCapacity(size)];
+        int mask = mIdIndex.length - 1;
+        for (int row = 0; row < size; row++) {
+            MovieItem movie = mMovies[row];
+            int movieId = movie.getMovieId();
+            mIds[row] = movieId;
+            mRatings[row] = movie.getUserRating();
+            mReleaseDates[row] = movie.getReleaseDate();
+            mPopularity[row] = movie.getPopularity();
+            mVoteCounts[row] = movie.getVoteCount();
+            // A movie listed twice keeps its first row.
+            int slot = hash(movieId) & mask;
+            while (mIdIndex[slot] != 0 && mIds[mIdIndex[slot] - 1] != movieId) {
+                slot = (slot + 1) & mask;
+            }
+            if (mIdIndex[slot] == 0) {
+                mIdIndex[slot] = row + 1;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of rows.
+     *
+     * @return the number of rows.
+     */
+    public int size() {
+        return mIds.length;
+    }
+
+    /**
+     * Gets the movie of a row.
+     *
+     * @param row the row.
+     * @return the movie.
+     */
+    public MovieItem getMovie(int row) {
+        return mMovies[row];
+    }
+
+    /**
+     * Gets the movie id of a row.
+     *
+     * @param row the row.
+     * @return the movie id.
+     */
+    public int getId(int row) {
+        return mIds[row];
+    }
+
+    /**
+     * Gets the user rating of a row.
+     *
+     * @param row the row.
+     * @return the user rating, or {@link MovieItem#NO_RATING}.
+     */
+    public float getRating(int row) {
+        return mRatings[row];
+    }
+
+    /**
+     * Gets the release date of a row.
+     *
+     * @param row the row.
+     * @return the release date in days since 1970-01-01, or
+     *         {@link MovieItem#NO_RELEASE_DATE}.
+     */
+    public int getReleaseDate(int row) {
+        return mReleaseDates[row];
+    }
+
+    /**
+     * Finds the row of a movie.
+     *
+     * @param movieId id of the movie.
+     * @return the first row of the movie, -1 if it is not in the table.
+     */
+    public int indexOf(int movieId) {
+        int mask = mIdIndex.length - 1;
+        int slot = hash(movieId) & mask;
+        while (mIdIndex[slot] != 0) {
+            int row = mIdIndex[slot] - 1;
+            if (mIds[row] == movieId) {
+                return row;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether a row holds the same data as a row of another table.
+     * The primitive columns are compared first, the strings only if they match.
+     *
+     * @param row the row of this table.
+     * @param other the other table.
+     * @param otherRow the row of the other table.
+     * @return true if every field is equal.
+     */
+    public boolean hasSameContent(int row, MovieTable other, int otherRow) {
+        return mIds[row] == other.mIds[otherRow]
+                && mReleaseDates[row] == other.mReleaseDates[otherRow]
+                && Float.compare(mRatings[row], other.mRatings[otherRow]) == 0
+                && mMovies[row].hasSameContent(other.mMovies[otherRow]);
+    }
+
+    /**
+     * Sorts the rows by a column. Movies without a value in the column come
+     * last, movies with equal values keep their row order.
+     *
+     * @param column one of the SORT_BY constants.
+     * @param descending true to put the highest values first.
+     * @return the rows in sorted order.
+     */
+    public int[] sortedRows(int column, boolean descending) {
+        return sortedRows(new int[]{column}, new boolean[]{descending});
+    }
+
+    /**
+     * Sorts the rows by several columns, ties of a column being ordered by
+     * the next one. Movies without a value in a column come last for it,
+     * movies equal in every column keep their row order.
+     *
+     * @param columns the SORT_BY constants of the columns, most significant first.
+     * @param descending for each column, true to put the highest values first.
+     * @return the rows in sorted order.
+     */
+    public int[] sortedRows(int[] columns, boolean[] descending) {
+        int size = size();
+        int[] rows = new int[size];
+        for (int row = 0; row < size; row++) {
+            rows[row] = row;
+        }
+        // Sorts by the least significant column first, each later sort
+        // keeping the order of its ties since the position is part of the key.
+        long[] keys = new long[size];
+        int[] sorted = new int[size];
+        for (int k = columns.length - 1; k >= 0; k--) {
+            for (int i = 0; i < size; i++) {
+                keys[i] = ((long) sortKey(columns[k], descending[k], rows[i]) << 32) | i;
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < size; i++) {
+                sorted[i] = rows[(int) keys[i]];
+            }
+            int[] swap = rows;
+            rows = sorted;
+            sorted = swap;
+        }
+        return rows;
+    }
+
+    /**
+     * Selects the rows with enough votes and within a release date range.
+     *
+     * @param rows the rows to select from, in the order to keep.
+     * @param minVoteCount lowest number of votes, 0 to keep every movie.
+     * @param fromDate earliest release date in days since 1970-01-01, or
+     *                 {@link MovieItem#NO_RELEASE_DATE} for no lower bound,
+     *                 which also keeps movies without a release date.
+     * @param toDate latest release date in days since 1970-01-01, or
+     *               {@link Integer#MAX_VALUE} for no upper bound.
+     * @return the selected rows.
+     */
+    public int[] filterRows(int[] rows, int minVoteCount, int fromDate, int toDate) {
+        int[] selected = new int[rows.length];
+        int count = 0;
+        for (int row : rows) {
+            int releaseDate = mReleaseDates[row];
+            if (mVoteCounts[row] >= minVoteCount
+                    && releaseDate >= fromDate && releaseDate <= toDate) {
+                selected[count++] = row;
+            }
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * Gets the movies of the given rows.
+     *
+     * @param rows the rows.
+     * @return the movies, in the order of the rows.
+     */
+    public ArrayList<MovieItem> getMovies(int[] rows) {
+        ArrayList<MovieItem> movies = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            movies.add(mMovies[row]);
+        }
+        return movies;
+    }
+
+    /**
+     * Gets the key of a row for sorting by a column, lower keys first.
+     *
+     * @param column one of the SORT_BY constants.
+     * @param descending true to put the highest values first.
+     * @param row the row.
+     * @return the key, {@link Integer#MAX_VALUE} if the row has no value.
+     */
+    private int sortKey(int column, boolean descending, int row) {
+        int key;
+        switch (column) {
+            case SORT_BY_RATING:
+                if (Float.isNaN(mRatings[row])) {
+                    return Integer.MAX_VALUE;
+                }
+                key = sortableBits(mRatings[row]);
+                break;
+            case SORT_BY_RELEASE_DATE:
+                if (mReleaseDates[row] == MovieItem.NO_RELEASE_DATE) {
+                    return Integer.MAX_VALUE;
+                }
+                key = mReleaseDates[row];
+                break;
+            case SORT_BY_POPULARITY:
+                key = sortableBits(mPopularity[row]);
+                break;
+            case SORT_BY_TITLE:
+                key = getTitleRanks()[row];
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown sort column " + column);
+        }
+        // Never MAX_VALUE, so values stay ahead of the rows without one.
+        if (descending) {
+            key = ~key;
+        }
+        return Math.min(key, Integer.MAX_VALUE - 1);
+    }
+
+    /**
+     * Gets the rank of the title of each row in the collation order of the
+     * default locale, equal titles sharing a rank.
+     *
+     * @return the ranks, by row.
+     */
+    private synchronized int[] getTitleRanks() {
+        if (mTitleRanks == null) {
+            int size = size();
+            Collator collator = Collator.getInstance();
+            RankedTitle[] titles = new RankedTitle[size];
+            for (int row = 0; row < size; row++) {
+                titles[row] = new RankedTitle(
+                        collator.getCollationKey(mMovies[row].getOriginalTitle()), row);
+            }
+            Arrays.sort(titles);
+            int[] ranks = new int[size];
+            for (int i = 0, rank = 0; i < size; i++) {
+                if (i > 0 && titles[i].compareTo(titles[i - 1]) != 0) {
+                    rank = i;
+                }
+                ranks[titles[i].mRow] = rank;
+            }
+            mTitleRanks = ranks;
+        }
+        return mTitleRanks;
+    }
+
+    /**
+     * Maps a float to an int which orders the same way.
+     *
+     * @param value the float, not NaN.
+     * @return the int.
+     */
+    private static int sortableBits(float value) {
+        int bits = Float.floatToIntBits(value == 0 ? 0 : value);
+        // Negative floats order in reverse as ints, flipping all but the sign fixes it.
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+
+    /**
+     * Spreads the bits of a movie id, which are often sequential.
+     *
+     * @param movieId the movie id.
+     * @return the hash.
+     */
+    private static int hash(int movieId) {
+        int h = movieId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Gets the capacity of the id index for a number of rows, keeping it at
+     * most half full.
+     *
+     * @param size the number of rows.
+     * @return a power of two.
+     */
+    private static int indexCapacity(int size) {
+        int capacity = 4;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Title of a row, compared by its collation key.
+     */
+    private static final class RankedTitle implements Comparable<RankedTitle> {
+
+        /**
+         * Collation key of the title.
+         */
+        final CollationKey mKey;
+
+        /**
+         * The row.
+         */
+        final int mRow;
+
+        /**
+         * Constructor.
+         *
+         * @param key collation key of the title.
+         * @param row the row.
+         */
+        RankedTitle(CollationKey key, int row) {
+            mKey = key;
+            mRow = row;
+        }
+
+        @Override
+        public int compareTo(RankedTitle other) {
+            return mKey.compareTo(other.mKey);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.widget.ImageView;
+
+/**
+ * Image view which keeps the 2:3 aspect ratio of the posters of
+ * themoviedb.org, so grid cells have their final size before the poster is
+ * loaded and do not move when it arrives.
+ */
+public class PosterImageView extends ImageView {
+
+    /**
+     * Height of a poster relative to its width.
+     */
+    private static final float ASPECT_RATIO = 1.5f;
+
+    public PosterImageView(Context context) {
+        super(context);
+    }
+
+    public PosterImageView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public PosterImageView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        setMeasuredDimension(width, Math.round(width * ASPECT_RATIO));
+    }
+}
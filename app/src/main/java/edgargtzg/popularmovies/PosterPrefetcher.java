@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.os.SystemClock;
+import android.support.v4.net.ConnectivityManagerCompat;
+
+import com.squareup.picasso.Picasso;
+
+import java.util.HashSet;
+
+/**
+ * Warms the image cache with the posters about to scroll into a grid.
+ *
+ * Follows the scroll position of the grid and fetches, at low priority, the
+ * posters of the next rows in the scroll direction. The faster the grid
+ * scrolls, the more rows are fetched ahead. Fetches which fall out of that
+ * range before completing are cancelled. By default nothing is prefetched
+ * on metered networks.
+ */
+public class PosterPrefetcher {
+
+    /**
+     * How far ahead of the scroll position posters are fetched, in seconds of
+     * scrolling at the current speed.
+     */
+    private static final float LOOKAHEAD_SECONDS = 0.75f;
+
+    /**
+     * Maximum number of rows fetched ahead, as a multiple of the minimum.
+     */
+    private static final int MAX_ROWS_FACTOR = 4;
+
+    /**
+     * Weight of the latest sample in the smoothed scroll speed.
+     */
+    private static final float SPEED_SMOOTHING = 0.5f;
+
+    /**
+     * Image loader shared with the grid, whose cache is warmed.
+     */
+    private final Picasso mPicasso;
+
+    /**
+     * Context to build the poster URLs.
+     */
+    private final Context mContext;
+
+    /**
+     * Adapter of the grid, whose movies are read in order.
+     */
+    private final MovieItemAdapter mAdapter;
+
+    /**
+     * Minimum number of rows fetched ahead.
+     */
+    private final int mMinRows;
+
+    /**
+     * Whether prefetching only happens on unmetered networks.
+     */
+    private final boolean mUnmeteredOnly;
+
+    /**
+     * URLs of the posters being fetched, which are also their Picasso tags.
+     */
+    private HashSet<String> mFetching = new HashSet<>();
+
+    /**
+     * URLs of the posters in the current range, reused between scroll events.
+     */
+    private HashSet<String> mInRange = new HashSet<>();
+
+    /**
+     * First visible position and time of the previous scroll event.
+     */
+    private int mLastFirstVisible = -1;
+    private long mLastScrollTime;
+
+    /**
+     * Smoothed scroll speed, in rows per second.
+     */
+    private float mRowsPerSecond;
+
+    /**
+     * Constructor.
+     *
+     * @param context any context.
+     * @param adapter adapter of the grid, read when the grid scrolls.
+     */
+    public PosterPrefetcher(Context context, MovieItemAdapter adapter) {
+        mContext = context.getApplicationContext();
+        mPicasso = Picasso.with(mContext);
+        mAdapter = adapter;
+        mMinRows = context.getResources().getInteger(R.integer.poster_prefetch_rows);
+        mUnmeteredOnly = context.getResources().getBoolean(R.bool.poster_prefetch_unmetered_only);
+    }
+
+    /**
+     * Updates the prefetched posters after the grid scrolled.
+     *
+     * @param columns number of columns of the grid.
+     * @param cellWidth width of the grid cells in pixels.
+     * @param firstVisibleItem index of the first visible item.
+     * @param visibleItemCount number of visible items.
+     */
+    public void onScroll(int columns, int cellWidth, int firstVisibleItem,
+                         int visibleItemCount) {
+        columns = Math.max(1, columns);
+        long now = SystemClock.elapsedRealtime();
+        int scrolledItems = mLastFirstVisible < 0 ? 0 : firstVisibleItem - mLastFirstVisible;
+        if (mLastFirstVisible >= 0) {
+            if (scrolledItems == 0) {
+                // Same row as before, the range is unchanged.
+                return;
+            }
+            if (now > mLastScrollTime) {
+                float rowsPerSecond = Math.abs(scrolledItems) / (float) columns
+                        * 1000f / (now - mLastScrollTime);
+                mRowsPerSecond += SPEED_SMOOTHING * (rowsPerSecond - mRowsPerSecond);
+            }
+        }
+        mLastFirstVisible = firstVisibleItem;
+        mLastScrollTime = now;
+
+        if (visibleItemCount == 0 || mAdapter.getItemCount() == 0 || !isNetworkAllowed()) {
+            cancelAll();
+            return;
+        }
+
+        int rows = Math.min(mMinRows * MAX_ROWS_FACTOR,
+                Math.max(mMinRows, (int) Math.ceil(mRowsPerSecond * LOOKAHEAD_SECONDS)));
+        int from;
+        int to;
+        if (scrolledItems >= 0) {
+            from = firstVisibleItem + visibleItemCount;
+            to = from + rows * columns;
+        } else {
+            to = firstVisibleItem;
+            from = to - rows * columns;
+        }
+        from = Math.max(0, from);
+        to = Math.min(mAdapter.getItemCount(), to);
+
+        HashSet<String> inRange = mInRange;
+        inRange.clear();
+        for (int i = from; i < to; i++) {
+            inRange.add(mAdapter.getItem(i).getPosterUrl(mContext, cellWidth));
+        }
+
+        // Cancels the fetches which fell out of range, then starts the new ones.
+        for (String url : mFetching) {
+            if (!inRange.contains(url)) {
+                mPicasso.cancelTag(url);
+            }
+        }
+        for (String url : inRange) {
+            if (!mFetching.contains(url)) {
+                mPicasso.load(url)
+                        .priority(Picasso.Priority.LOW)
+                        .tag(url)
+                        .fetch();
+            }
+        }
+        // Swaps the sets rather than copying, the old one is reused next time.
+        mInRange = mFetching;
+        mFetching = inRange;
+    }
+
+    /**
+     * Cancels every prefetch in progress.
+     */
+    public void cancelAll() {
+        for (String url : mFetching) {
+            mPicasso.cancelTag(url);
+        }
+        mFetching.clear();
+        mLastFirstVisible = -1;
+        mRowsPerSecond = 0;
+    }
+
+    /**
+     * Checks whether the active network may be used for prefetching.
+     *
+     * @return true if there is a network, and it is unmetered when required.
+     */
+    private boolean isNetworkAllowed() {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager.getActiveNetworkInfo() == null) {
+            return false;
+        }
+        return !mUnmeteredOnly
+                || !ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.content.Context;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.NetworkPolicy;
+import com.squareup.picasso.Picasso;
+
+/**
+ * Picks the poster size of themoviedb.org to load for an image view.
+ *
+ * Posters are available in a fixed ladder of widths. The smallest one which
+ * covers the view in physical pixels is used, so small grid cells on low
+ * density screens no longer download and decode full size posters.
+ */
+public final class PosterSizer {
+
+    /**
+     * Poster widths available from themoviedb.org, in pixels, ascending.
+     */
+    private static final int[] POSTER_WIDTHS = {92, 154, 185, 342, 500, 780};
+
+    /**
+     * Size names matching {@link #POSTER_WIDTHS}, followed by the largest size.
+     */
+    private static final String[] POSTER_SIZES =
+            {"w92", "w154", "w185", "w342", "w500", "w780", "original"};
+
+    /**
+     * Base URL of the posters, read once from the resources.
+     */
+    private static String sPosterBaseUrl;
+
+    /**
+     * Constructor, the class only has static helpers.
+     */
+    private PosterSizer() {
+    }
+
+    /**
+     * Gets the size name of the smallest poster covering the given width.
+     *
+     * @param widthPx width of the view in physical pixels.
+     * @return the size name, for example "w185". The same instance is always
+     *         returned for a size, so sizes can be compared by reference.
+     */
+    public static String getSize(int widthPx) {
+        for (int i = 0; i < POSTER_WIDTHS.length; i++) {
+            if (POSTER_WIDTHS[i] >= widthPx) {
+                return POSTER_SIZES[i];
+            }
+        }
+        return POSTER_SIZES[POSTER_SIZES.length - 1];
+    }
+
+    /**
+     * Gets the size name of the poster to load for a view of the given width.
+     *
+     * @param context any context.
+     * @param widthPx width of the view in physical pixels, 0 if unknown in
+     *                which case the width of the screen is used.
+     * @return the size name.
+     */
+    public static String getSize(Context context, int widthPx) {
+        if (widthPx <= 0) {
+            widthPx = context.getResources().getDisplayMetrics().widthPixels;
+        }
+        return getSize(widthPx);
+    }
+
+    /**
+     * Builds the URL of a poster of the given size.
+     *
+     * @param context any context.
+     * @param size size name from {@link #getSize(int)}.
+     * @param posterPath poster path of the movie.
+     * @return the poster URL.
+     */
+    public static String buildPosterUrl(Context context, String size, String posterPath) {
+        if (sPosterBaseUrl == null) {
+            sPosterBaseUrl = context.getString(R.string.poster_base_url);
+        }
+        return sPosterBaseUrl + size + posterPath;
+    }
+
+    /**
+     * Builds the URL of the poster to load for a view of the given width.
+     *
+     * @param context any context.
+     * @param posterPath poster path of the movie.
+     * @param widthPx width of the view in physical pixels, 0 if unknown in
+     *                which case the width of the screen is used.
+     * @return the poster URL.
+     */
+    public static String getPosterUrl(Context context, String posterPath, int widthPx) {
+        return buildPosterUrl(context, getSize(context, widthPx), posterPath);
+    }
+
+    /**
+     * Loads a poster into a view, first showing a smaller size of it if that
+     * one is already cached, then replacing it with the size fitting the view.
+     *
+     * @param context any context.
+     * @param imageView the view.
+     * @param thumbnailUrl URL of the smaller poster already loaded elsewhere,
+     *                     may be null.
+     * @param posterUrl URL of the poster fitting the view.
+     */
+    public static void loadProgressively(final Context context, final ImageView imageView,
+                                         String thumbnailUrl, final String posterUrl) {
+        final Picasso picasso = Picasso.with(context);
+        if (thumbnailUrl == null || thumbnailUrl.equals(posterUrl)) {
+            picasso.load(posterUrl).into(imageView);
+            return;
+        }
+        // The thumbnail is only taken from the caches, never downloaded.
+        picasso.load(thumbnailUrl)
+                .networkPolicy(NetworkPolicy.OFFLINE)
+                .into(imageView, new Callback() {
+                    @Override
+                    public void onSuccess() {
+                        // Keeps the thumbnail on screen while the larger poster loads.
+                        picasso.load(posterUrl)
+                                .placeholder(imageView.getDrawable())
+                                .noFade()
+                                .into(imageView);
+                    }
+
+                    @Override
+                    public void onError() {
+                        picasso.load(posterUrl).into(imageView);
+                    }
+                });
+    }
+}
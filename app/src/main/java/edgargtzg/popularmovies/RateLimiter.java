@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Process wide token bucket which keeps the calls to themoviedb.org under the
+ * request rate allowed per API key.
+ *
+ * The bucket holds up to a burst of tokens and refills at a steady rate, each
+ * call takes a token. Calls are served by priority: a call never takes a token
+ * while a more urgent one is waiting, the last tokens of the bucket are kept
+ * for {@link TaskScheduler.Priority#VISIBLE} calls, and a
+ * {@link TaskScheduler.Priority#PREFETCH} call which would wait too long is
+ * dropped rather than delaying the calls behind it.
+ */
+public final class RateLimiter {
+
+    /**
+     * Thrown when a prefetch call is dropped.
+     */
+    public static class DroppedException extends IOException {
+
+        /**
+         * Constructor.
+         */
+        DroppedException() {
+            super("Dropped by the rate limiter.");
+        }
+    }
+
+    /**
+     * Snapshot of the counters of the limiter.
+     */
+    public static class Stats {
+
+        /**
+         * Calls granted, queued before being granted or dropped, and dropped,
+         * by lane ordinal.
+         */
+        public final long[] mGranted;
+        public final long[] mQueued;
+        public final long[] mDropped;
+
+        /**
+         * Total time calls spent queued, in milliseconds.
+         */
+        public final long mQueuedTimeMs;
+
+        /**
+         * Constructor.
+         *
+         * @param granted calls granted by lane ordinal.
+         * @param queued calls queued by lane ordinal.
+         * @param dropped calls dropped by lane ordinal.
+         * @param queuedTimeMs total time calls spent queued, in milliseconds.
+         */
+        Stats(long[] granted, long[] queued, long[] dropped, long queuedTimeMs) {
+            mGranted = granted;
+            mQueued = queued;
+            mDropped = dropped;
+            mQueuedTimeMs = queuedTimeMs;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (TaskScheduler.Priority priority : TaskScheduler.Priority.values()) {
+                int lane = priority.ordinal();
+                text.append(priority).append(": granted=").append(mGranted[lane])
+                        .append(" queued=").append(mQueued[lane])
+                        .append(" dropped=").append(mDropped[lane]).append(", ");
+            }
+            return text.append("queued time=").append(mQueuedTimeMs).append(" ms").toString();
+        }
+    }
+
+    /**
+     * Maximum number of tokens in the bucket.
+     */
+    private final int mBurst;
+
+    /**
+     * Refill rate of the bucket, in tokens per millisecond.
+     */
+    private final double mTokensPerMs;
+
+    /**
+     * Number of tokens only {@link TaskScheduler.Priority#VISIBLE} calls may take.
+     */
+    private final int mVisibleReserve;
+
+    /**
+     * Longest a prefetch call may wait for a token, in milliseconds.
+     */
+    private final long mMaxPrefetchWaitMs;
+
+    /**
+     * Tokens currently in the bucket.
+     */
+    private double mTokens;
+
+    /**
+     * Time of the last refill, in elapsed realtime milliseconds.
+     */
+    private long mLastRefill;
+
+    /**
+     * Number of calls waiting, by lane ordinal.
+     */
+    private final int[] mWaiting = new int[TaskScheduler.Priority.values().length];
+
+    /**
+     * Counters of the calls, by lane ordinal.
+     */
+    private final long[] mGranted = new long[TaskScheduler.Priority.values().length];
+    private final long[] mQueued = new long[TaskScheduler.Priority.values().length];
+    private final long[] mDropped = new long[TaskScheduler.Priority.values().length];
+
+    /**
+     * Total time calls spent queued, in milliseconds.
+     */
+    private long mQueuedTimeMs;
+
+    /**
+     * Constructor. The bucket starts full.
+     *
+     * @param burst maximum number of tokens in the bucket.
+     * @param tokensPerSecond refill rate of the bucket.
+     * @param visibleReserve number of tokens only visible calls may take.
+     * @param maxPrefetchWaitMs longest a prefetch call may wait, in milliseconds.
+     */
+    public RateLimiter(int burst, int tokensPerSecond, int visibleReserve,
+                       long maxPrefetchWaitMs) {
+        mBurst = burst;
+        mTokensPerMs = tokensPerSecond / 1000.0;
+        mVisibleReserve = Math.min(visibleReserve, burst - 1);
+        mMaxPrefetchWaitMs = maxPrefetchWaitMs;
+        mTokens = burst;
+        mLastRefill = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Takes a token for a call, waiting for one if the bucket is empty.
+     *
+     * @param priority lane of the call.
+     * @param token cancels the wait.
+     * @throws DroppedException if a prefetch call would wait too long.
+     * @throws InterruptedIOException if the token is cancelled.
+     */
+    public void acquire(TaskScheduler.Priority priority, CancellationToken token)
+            throws IOException {
+        // Wakes up the wait below when the call is cancelled.
+        Runnable wakeUp = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (RateLimiter.this) {
+                    RateLimiter.this.notifyAll();
+                }
+            }
+        };
+        token.onCancel(wakeUp);
+        try {
+            acquireLocked(priority, token);
+        } finally {
+            token.removeOnCancel(wakeUp);
+        }
+    }
+
+    /**
+     * Takes a token for a call, holding the lock of the limiter.
+     *
+     * @param priority lane of the call.
+     * @param token cancels the wait.
+     * @throws IOException if the call is dropped or cancelled.
+     */
+    private synchronized void acquireLocked(TaskScheduler.Priority priority,
+                                            CancellationToken token) throws IOException {
+        int lane = priority.ordinal();
+        // The tokens a call of this lane must leave in the bucket.
+        int floor = priority == TaskScheduler.Priority.VISIBLE ? 0 : mVisibleReserve;
+        long start = SystemClock.elapsedRealtime();
+        boolean queued = false;
+        try {
+            while (true) {
+                token.throwIfCancelled();
+                long now = SystemClock.elapsedRealtime();
+                refill(now);
+                boolean moreUrgentWaiting = false;
+                for (int i = 0; i < lane; i++) {
+                    moreUrgentWaiting |= mWaiting[i] > 0;
+                }
+                if (!moreUrgentWaiting && mTokens >= floor + 1) {
+                    mTokens -= 1;
+                    mGranted[lane]++;
+                    if (queued) {
+                        mQueuedTimeMs += now - start;
+                    }
+                    return;
+                }
+                // Time until the bucket holds a token for this lane.
+                long waitMs = Math.max(1, (long) Math.ceil((floor + 1 - mTokens) / mTokensPerMs));
+                if (priority == TaskScheduler.Priority.PREFETCH
+                        && now - start + waitMs > mMaxPrefetchWaitMs) {
+                    mDropped[lane]++;
+                    throw new DroppedException();
+                }
+                if (!queued) {
+                    queued = true;
+                    mWaiting[lane]++;
+                    mQueued[lane]++;
+                }
+                try {
+                    wait(waitMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted");
+                }
+            }
+        } finally {
+            if (queued) {
+                mWaiting[lane]--;
+                // A less urgent call may now take its turn.
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Adds the tokens earned since the last refill.
+     *
+     * @param now current time in elapsed realtime milliseconds.
+     */
+    private void refill(long now) {
+        mTokens = Math.min(mBurst, mTokens + (now - mLastRefill) * mTokensPerMs);
+        mLastRefill = now;
+    }
+
+    /**
+     * Takes a snapshot of the counters of the limiter.
+     *
+     * @return the snapshot.
+     */
+    public synchronized Stats getStats() {
+        return new Stats(mGranted.clone(), mQueued.clone(), mDropped.clone(), mQueuedTimeMs);
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Headless fragment which runs the requests of a screen and outlives its
+ * configuration changes.
+ *
+ * Requests are identified by a key: starting a request cancels the one still
+ * running under the same key, and a cancelled request aborts its socket read
+ * and never delivers a result. Results are delivered on the main thread to the
+ * current callbacks, or kept until callbacks are set again when the screen is
+ * being recreated. Every request is cancelled when the screen finishes.
+ */
+public class RequestManager extends Fragment {
+
+    /**
+     * Log identifier for the class.
+     */
+    private static final String LOG_TAG = RequestManager.class.getSimpleName();
+
+    /**
+     * Work performed by a request, on a thread of the {@link TaskScheduler}.
+     *
+     * Implementations must not reference an Activity or a Fragment, since
+     * they outlive both.
+     *
+     * @param <T> type of the result.
+     */
+    public interface Request<T> {
+
+        /**
+         * Performs the request.
+         *
+         * @param token cancelled when the result is no longer wanted.
+         * @return the result, may be null.
+         * @throws IOException if the request fails.
+         */
+        T execute(CancellationToken token) throws IOException;
+    }
+
+    /**
+     * Receives the results of the requests.
+     */
+    public interface Callbacks {
+
+        /**
+         * Called on the main thread when a request finishes.
+         *
+         * @param key key the request was started with.
+         * @param result result of the request, null if it failed.
+         */
+        void onRequestFinished(String key, Object result);
+    }
+
+    /**
+     * Posts results to the main thread.
+     */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Tokens of the running requests, by key.
+     */
+    private final HashMap<String, CancellationToken> mRunning = new HashMap<>();
+
+    /**
+     * Results which finished while no callbacks were set, by key.
+     */
+    private final HashMap<String, Object> mPendingResults = new HashMap<>();
+
+    /**
+     * Current receiver of the results.
+     */
+    private Callbacks mCallbacks;
+
+    /**
+     * Default constructor.
+     */
+    public RequestManager() {
+    }
+
+    /**
+     * Gets the request manager with the given tag, adding it to the fragment
+     * manager if it does not exist yet.
+     *
+     * @param fragmentManager fragment manager of the Activity.
+     * @param tag tag identifying the request manager.
+     * @return the request manager.
+     */
+    public static RequestManager get(FragmentManager fragmentManager, String tag) {
+        RequestManager requestManager = (RequestManager) fragmentManager.findFragmentByTag(tag);
+        if (requestManager == null) {
+            requestManager = new RequestManager();
+            fragmentManager.beginTransaction().add(requestManager, tag).commit();
+        }
+        return requestManager;
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        // Keeps the running requests across configuration changes.
+        setRetainInstance(true);
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        // The screen is finishing, nobody will see the results.
+        for (String key : new ArrayList<>(mRunning.keySet())) {
+            cancel(key);
+        }
+        mMainHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * Sets the receiver of the results, and delivers to it the results which
+     * finished while there was none.
+     *
+     * @param callbacks the receiver, or null while the screen is recreated.
+     */
+    public void setCallbacks(Callbacks callbacks) {
+        mCallbacks = callbacks;
+        if (mCallbacks == null || mPendingResults.isEmpty()) {
+            return;
+        }
+        HashMap<String, Object> pendingResults = new HashMap<>(mPendingResults);
+        mPendingResults.clear();
+        for (String key : pendingResults.keySet()) {
+            mCallbacks.onRequestFinished(key, pendingResults.get(key));
+        }
+    }
+
+    /**
+     * Starts a request, cancelling the one running under the same key.
+     *
+     * @param key key of the request.
+     * @param priority lane to run the request on.
+     * @param request the request.
+     */
+    public void start(final String key, TaskScheduler.Priority priority,
+                      final Request<?> request) {
+        cancel(key);
+        final CancellationToken token = new CancellationToken();
+        mRunning.put(key, token);
+        TaskScheduler.getInstance().executeIo(priority, token, new Runnable() {
+            @Override
+            public void run() {
+                Object result = null;
+                try {
+                    result = request.execute(token);
+                } catch (IOException e) {
+                    if (!token.isCancelled()) {
+                        Log.e(LOG_TAG, "Error ", e);
+                    }
+                } catch (RuntimeException e) {
+                    // Still delivered below so that the key stops running.
+                    Log.e(LOG_TAG, "Error ", e);
+                }
+                final Object finalResult = result;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(key, token, finalResult);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Cancels the request running under the given key, if any, and drops its
+     * result if it was not delivered yet.
+     *
+     * @param key key of the request.
+     */
+    public void cancel(String key) {
+        CancellationToken token = mRunning.remove(key);
+        if (token != null) {
+            token.cancel();
+        }
+        mPendingResults.remove(key);
+    }
+
+    /**
+     * Checks whether a request is running under the given key.
+     *
+     * @param key key of the request.
+     * @return true if the request is running.
+     */
+    public boolean isRunning(String key) {
+        return mRunning.containsKey(key);
+    }
+
+    /**
+     * Delivers the result of a request unless it was cancelled or superseded.
+     *
+     * @param key key of the request.
+     * @param token token of the request.
+     * @param result result of the request.
+     */
+    private void deliver(String key, CancellationToken token, Object result) {
+        if (token.isCancelled() || mRunning.get(key) != token) {
+            return;
+        }
+        mRunning.remove(key);
+        if (mCallbacks != null) {
+            mCallbacks.onRequestFinished(key, result);
+        } else {
+            mPendingResults.put(key, result);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+
+/**
+ * Coalesces concurrent calls with the same key into a single execution.
+ *
+ * The first caller of a key runs the call on its own thread, and callers
+ * arriving while it runs wait for it and receive the same result (or the same
+ * failure). A caller whose token is cancelled stops waiting right away, and
+ * the call itself is only cancelled once every caller waiting for it has been.
+ */
+public class SingleFlight {
+
+    /**
+     * Work shared by the callers of a key.
+     *
+     * @param <T> type of the result.
+     */
+    public interface Call<T> {
+
+        /**
+         * Performs the call.
+         *
+         * @param token cancelled once no caller waits for the result anymore.
+         * @return the result, shared by every caller.
+         * @throws IOException if the call fails.
+         */
+        T run(CancellationToken token) throws IOException;
+    }
+
+    /**
+     * Calls in flight, by key.
+     */
+    private final HashMap<String, Flight> mFlights = new HashMap<>();
+
+    /**
+     * Runs the call unless one with the same key is already in flight, in
+     * which case waits for it instead.
+     *
+     * @param key identifies calls producing the same result.
+     * @param token cancelled when the caller no longer wants the result.
+     * @param call the call.
+     * @param <T> type of the result.
+     * @return the result of the call, which may be shared with other callers
+     *         and must not be modified.
+     * @throws IOException if the call fails.
+     * @throws InterruptedIOException if the token is cancelled.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(final String key, CancellationToken token, Call<T> call)
+            throws IOException {
+        token.throwIfCancelled();
+        final Flight flight;
+        boolean leader = false;
+        synchronized (mFlights) {
+            Flight inFlight = mFlights.get(key);
+            if (inFlight == null) {
+                inFlight = new Flight();
+                mFlights.put(key, inFlight);
+                leader = true;
+            }
+            inFlight.mWaiters++;
+            flight = inFlight;
+        }
+
+        Runnable leave = new Runnable() {
+            @Override
+            public void run() {
+                leave(key, flight);
+            }
+        };
+        token.onCancel(leave);
+        try {
+            if (leader) {
+                T result = null;
+                IOException error = null;
+                try {
+                    result = call.run(flight.mToken);
+                } catch (IOException e) {
+                    error = e;
+                } catch (RuntimeException | Error e) {
+                    // The leader rethrows as is, followers still see a failure.
+                    error = new IOException(e);
+                    throw e;
+                } finally {
+                    synchronized (mFlights) {
+                        if (mFlights.get(key) == flight) {
+                            mFlights.remove(key);
+                        }
+                    }
+                    flight.complete(result, error);
+                }
+            }
+            return (T) flight.await(token);
+        } finally {
+            token.removeOnCancel(leave);
+        }
+    }
+
+    /**
+     * Removes a cancelled caller from a call, cancelling the call if it was
+     * the last one waiting for it.
+     *
+     * @param key key of the call.
+     * @param flight the call.
+     */
+    private void leave(String key, Flight flight) {
+        synchronized (mFlights) {
+            if (--flight.mWaiters > 0) {
+                flight.wakeUp();
+                return;
+            }
+            // Later callers start a new call rather than joining a cancelled one.
+            if (mFlights.get(key) == flight) {
+                mFlights.remove(key);
+            }
+        }
+        flight.mToken.cancel();
+        flight.wakeUp();
+    }
+
+    /**
+     * A call in flight and its outcome.
+     */
+    private static class Flight {
+
+        /**
+         * Cancels the call once every caller has been cancelled.
+         */
+        final CancellationToken mToken = new CancellationToken();
+
+        /**
+         * Number of callers waiting for the call, guarded by the map of flights.
+         */
+        int mWaiters;
+
+        /**
+         * Outcome of the call, guarded by this flight.
+         */
+        private boolean mDone;
+        private Object mResult;
+        private IOException mError;
+
+        /**
+         * Records the outcome of the call and wakes up the waiting callers.
+         *
+         * @param result the result, if the call succeeded.
+         * @param error the failure, if the call failed.
+         */
+        synchronized void complete(Object result, IOException error) {
+            mResult = result;
+            mError = error;
+            mDone = true;
+            notifyAll();
+        }
+
+        /**
+         * Wakes up the waiting callers so they check their tokens.
+         */
+        synchronized void wakeUp() {
+            notifyAll();
+        }
+
+        /**
+         * Waits for the outcome of the call.
+         *
+         * @param token token of the caller.
+         * @return the result of the call.
+         * @throws IOException if the call failed.
+         * @throws InterruptedIOException if the token is cancelled.
+         */
+        synchronized Object await(CancellationToken token) throws IOException {
+            while (!mDone) {
+                token.throwIfCancelled();
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted");
+                }
+            }
+            token.throwIfCancelled();
+            if (mError != null) {
+                // Each caller gets its own exception, with the shared one as cause.
+                IOException error = mError instanceof InterruptedIOException
+                        ? new InterruptedIOException(mError.getMessage())
+                        : new IOException(mError.getMessage());
+                error.initCause(mError);
+                throw error;
+            }
+            return mResult;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.SystemClock;
+import android.support.v4.net.ConnectivityManagerCompat;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the periodic {@link MovieSync}, only while the device is charging
+ * on an unmetered network.
+ *
+ * From Lollipop on the sync is a persisted periodic job, which the system
+ * batches with the work of other apps and backs off exponentially on failure.
+ * On older versions it runs from an inexact, non-wakeup repeating alarm,
+ * which the system also batches and which only fires once the device is awake
+ * anyway; the constraints are checked when it fires, and failures are retried
+ * with an exponential backoff of one-shot alarms.
+ */
+public final class SyncScheduler {
+
+    /**
+     * Id of the sync job.
+     */
+    private static final int JOB_ID = 1;
+
+    /**
+     * Request codes of the pending intents of the repeating and retry alarms.
+     */
+    private static final int REQUEST_PERIODIC = 0;
+    private static final int REQUEST_RETRY = 1;
+
+    /**
+     * Preferences file of the sync state, kept apart from the user settings.
+     */
+    private static final String PREFS_NAME = "sync";
+
+    /**
+     * Number of failed syncs in a row, drives the backoff of the retry alarms.
+     */
+    private static final String PREF_FAILED_ATTEMPTS = "failed_attempts";
+
+    private SyncScheduler() {
+    }
+
+    /**
+     * Schedules the periodic sync, has no effect if it is already scheduled.
+     *
+     * @param context the context.
+     */
+    public static void schedule(Context context) {
+        context = context.getApplicationContext();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            scheduleJob(context);
+        } else {
+            scheduleAlarm(context);
+        }
+    }
+
+    /**
+     * Schedules the periodic sync job unless it is already pending.
+     *
+     * @param context the application context.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJob(Context context) {
+        JobScheduler jobScheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo pendingJob : jobScheduler.getAllPendingJobs()) {
+            if (pendingJob.getId() == JOB_ID) {
+                return;
+            }
+        }
+        Resources resources = context.getResources();
+        JobInfo jobInfo = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, MovieSyncJobService.class))
+                .setPeriodic(TimeUnit.HOURS.toMillis(
+                        resources.getInteger(R.integer.sync_interval_hours)))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setPersisted(true)
+                .setBackoffCriteria(TimeUnit.SECONDS.toMillis(
+                                resources.getInteger(R.integer.sync_backoff_initial_seconds)),
+                        JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                .build();
+        jobScheduler.schedule(jobInfo);
+    }
+
+    /**
+     * Sets the repeating sync alarm unless it is already set.
+     *
+     * @param context the application context.
+     */
+    private static void scheduleAlarm(Context context) {
+        Intent intent = new Intent(context, MovieSyncService.class);
+        if (PendingIntent.getService(context, REQUEST_PERIODIC, intent,
+                PendingIntent.FLAG_NO_CREATE) != null) {
+            return;
+        }
+        long intervalMs = TimeUnit.HOURS.toMillis(
+                context.getResources().getInteger(R.integer.sync_interval_hours));
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + intervalMs, intervalMs,
+                PendingIntent.getService(context, REQUEST_PERIODIC, intent, 0));
+    }
+
+    /**
+     * Tells whether the device is charging on an unmetered network, the only
+     * time the alarm driven sync runs.
+     *
+     * @param context the context.
+     * @return true if the sync can run now.
+     */
+    static boolean canSyncNow(Context context) {
+        // The battery status is a sticky broadcast, no receiver is registered.
+        Intent batteryStatus = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (batteryStatus == null
+                || batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) == 0) {
+            return false;
+        }
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected()
+                && !ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+    }
+
+    /**
+     * Records the outcome of an alarm driven sync: a success resets the
+     * backoff, a failure sets a one-shot retry alarm whose delay doubles with
+     * each failure in a row, up to a maximum.
+     *
+     * @param context the context.
+     * @param succeeded whether the sync succeeded.
+     */
+    static void onAlarmSyncFinished(Context context, boolean succeeded) {
+        SharedPreferences preferences =
+                context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (succeeded) {
+            preferences.edit().remove(PREF_FAILED_ATTEMPTS).apply();
+            return;
+        }
+        int failedAttempts = preferences.getInt(PREF_FAILED_ATTEMPTS, 0);
+        preferences.edit().putInt(PREF_FAILED_ATTEMPTS, failedAttempts + 1).apply();
+
+        Resources resources = context.getResources();
+        long maxDelayMs = TimeUnit.HOURS.toMillis(
+                resources.getInteger(R.integer.sync_backoff_max_hours));
+        long delayMs = TimeUnit.SECONDS.toMillis(
+                resources.getInteger(R.integer.sync_backoff_initial_seconds));
+        for (int i = 0; i < failedAttempts && delayMs < maxDelayMs; i++) {
+            delayMs *= 2;
+        }
+        delayMs = Math.min(delayMs, maxDelayMs);
+
+        // A new retry replaces a pending one.
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.set(AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + delayMs,
+                PendingIntent.getService(context, REQUEST_RETRY,
+                        new Intent(context, MovieSyncService.class),
+                        PendingIntent.FLAG_UPDATE_CURRENT));
+    }
+}
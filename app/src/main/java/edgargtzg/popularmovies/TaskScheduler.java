@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.os.Process;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Application wide scheduler for background work.
+ *
+ * Network work and CPU bound work run on separate bounded pools, so
+ * independent requests run concurrently instead of queuing on the serial
+ * AsyncTask executor. Within a pool, queued work runs by priority lane and
+ * then in submission order.
+ */
+public final class TaskScheduler {
+
+    /**
+     * Priority lanes, in the order queued work is picked up.
+     */
+    public enum Priority {
+        /**
+         * Data the user is waiting for on screen.
+         */
+        VISIBLE,
+        /**
+         * Work whose result is not shown right away.
+         */
+        BACKGROUND,
+        /**
+         * Speculative work, only run when nothing else is queued.
+         */
+        PREFETCH
+    }
+
+    /**
+     * Number of threads for network work, which mostly waits on sockets.
+     */
+    private static final int IO_POOL_SIZE = 4;
+
+    /**
+     * Number of threads for CPU bound work, leaving a core for the UI thread.
+     */
+    private static final int CPU_POOL_SIZE =
+            Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 3));
+
+    /**
+     * Idle threads are released after this many seconds.
+     */
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Single shared instance.
+     */
+    private static TaskScheduler sInstance;
+
+    /**
+     * Lane of the work running on the current thread, null outside of the pools.
+     */
+    private static final ThreadLocal<Priority> sCurrentPriority = new ThreadLocal<>();
+
+    /**
+     * Pool for network work.
+     */
+    private final ThreadPoolExecutor mIoPool;
+
+    /**
+     * Pool for CPU bound work.
+     */
+    private final ThreadPoolExecutor mCpuPool;
+
+    /**
+     * Submission counter, keeps FIFO order within a lane.
+     */
+    private final AtomicLong mSequence = new AtomicLong();
+
+    /**
+     * Constructor.
+     */
+    private TaskScheduler() {
+        mIoPool = createPool("tmdb-io", IO_POOL_SIZE);
+        mCpuPool = createPool("tmdb-cpu", CPU_POOL_SIZE);
+    }
+
+    /**
+     * Gets the shared scheduler.
+     *
+     * @return the shared scheduler.
+     */
+    public static synchronized TaskScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new TaskScheduler();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Gets the lane of the work running on the calling thread, so the layers
+     * below a request can tell how urgent it is without passing it along.
+     *
+     * @return the lane, {@link Priority#BACKGROUND} outside of the pools.
+     */
+    public static Priority getCurrentPriority() {
+        Priority priority = sCurrentPriority.get();
+        return priority != null ? priority : Priority.BACKGROUND;
+    }
+
+    /**
+     * Runs network work on the given lane unless the token is cancelled before
+     * it starts.
+     *
+     * @param priority the lane.
+     * @param token cancellation token of the work.
+     * @param work the work.
+     */
+    public void executeIo(Priority priority, CancellationToken token, Runnable work) {
+        mIoPool.execute(new PrioritizedRunnable(priority, mSequence.getAndIncrement(), token, work));
+    }
+
+    /**
+     * Runs CPU bound work on the given lane unless the token is cancelled before
+     * it starts.
+     *
+     * @param priority the lane.
+     * @param token cancellation token of the work.
+     * @param work the work.
+     */
+    public void executeCpu(Priority priority, CancellationToken token, Runnable work) {
+        mCpuPool.execute(new PrioritizedRunnable(priority, mSequence.getAndIncrement(), token, work));
+    }
+
+    /**
+     * Creates a fixed size pool whose queue is ordered by priority.
+     *
+     * @param name prefix of the thread names.
+     * @param size number of threads.
+     * @return the pool.
+     */
+    private static ThreadPoolExecutor createPool(final String name, int size) {
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Keeps background work from competing with the UI thread.
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, name + "-" + mCount.getAndIncrement());
+            }
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Queued work ordered by lane and then by submission.
+     */
+    private static class PrioritizedRunnable
+            implements Runnable, Comparable<PrioritizedRunnable> {
+
+        private final Priority mPriority;
+        private final long mSequence;
+        private final CancellationToken mToken;
+        private final Runnable mWork;
+
+        PrioritizedRunnable(Priority priority, long sequence, CancellationToken token,
+                            Runnable work) {
+            mPriority = priority;
+            mSequence = sequence;
+            mToken = token;
+            mWork = work;
+        }
+
+        @Override
+        public void run() {
+            if (mToken != null && mToken.isCancelled()) {
+                return;
+            }
+            sCurrentPriority.set(mPriority);
+            try {
+                mWork.run();
+            } finally {
+                sCurrentPriority.remove();
+            }
+        }
+
+        @Override
+        public int compareTo(PrioritizedRunnable other) {
+            int byPriority = mPriority.compareTo(other.mPriority);
+            if (byPriority != 0) {
+                return byPriority;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+}
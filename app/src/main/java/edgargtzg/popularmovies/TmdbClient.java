@@ -0,0 +1,926 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.net.Uri;
+import android.net.http.HttpResponseCache;
+import android.util.JsonReader;
+import android.util.Log;
+import android.util.MalformedJsonException;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Shared client for the themoviedb.org API.
+ *
+ * All requests go through a single instance so the underlying connections to
+ * api.themoviedb.org are kept alive and reused by the platform connection pool
+ * instead of being torn down after every call.
+ *
+ * Responses go through an on-disk HTTP cache which honours the Cache-Control
+ * headers of themoviedb.org and revalidates expired responses with conditional
+ * requests. Identical requests made at the same time share a single call.
+ *
+ * Failed requests are retried a few times with an exponential, jittered
+ * backoff, honouring the Retry-After header of rate limited responses. A
+ * circuit breaker stops calling themoviedb.org for a while after repeated
+ * failures, and a request which still fails falls back to the cached response
+ * when there is one, however stale.
+ *
+ * Every call over the network takes a token from a process wide
+ * {@link RateLimiter}, on the lane of the work making it, so prefetching and
+ * background syncs never use up the request rate allowed to the API key ahead
+ * of what the user is waiting for.
+ *
+ * Responses are requested gzip compressed and decompressed here rather than
+ * by the platform, so the bytes of each endpoint can be counted both as
+ * transferred and as decoded.
+ *
+ * The connect, time to first byte, download and parse phases of every
+ * response are traced and recorded in {@link Metrics}.
+ */
+public class TmdbClient {
+
+    /**
+     * Log identifier for the class.
+     */
+    private static final String LOG_TAG = TmdbClient.class.getSimpleName();
+
+    /**
+     * Base URL for the themoviedb.org API.
+     */
+    private static final String MOVIEDB_BASE_URL = "http://api.themoviedb.org/3/";
+
+    /**
+     * Query parameter names.
+     */
+    private static final String API_KEY_PARAM = "api_key";
+    private static final String SORT_BY_PARAM = "sort_by";
+    private static final String PAGE_PARAM = "page";
+    private static final String APPEND_TO_RESPONSE_PARAM = "append_to_response";
+    private static final String QUERY_PARAM = "query";
+
+    /**
+     * Sort order values accepted by the discover endpoint.
+     */
+    public static final String SORT_BY_POPULARITY = "popularity.desc";
+    public static final String SORT_BY_RATING = "vote_average.desc";
+
+    /**
+     * How a request uses the response cache.
+     */
+    public enum CachePolicy {
+        /**
+         * Standard HTTP caching: fresh responses come from the cache, expired
+         * ones are revalidated with the server before being returned.
+         */
+        DEFAULT,
+        /**
+         * Returns a cached response right away even if it expired (up to the
+         * maximum staleness), and revalidates an expired one in the background.
+         */
+        STALE_WHILE_REVALIDATE
+    }
+
+    /**
+     * Receives a response refreshed in the background after a stale cached
+     * response was returned.
+     *
+     * @param <T> type of the decoded response.
+     */
+    public interface OnRevalidatedListener<T> {
+
+        /**
+         * Called on a background thread with the refreshed response.
+         *
+         * @param result the refreshed response.
+         */
+        void onRevalidated(T result);
+    }
+
+    /**
+     * Directory of the response cache, relative to the cache directory of the app.
+     */
+    private static final String HTTP_CACHE_DIR = "tmdb-http";
+
+    /**
+     * Maximum number of idle connections kept alive per host.
+     */
+    private static final int MAX_POOLED_CONNECTIONS = 5;
+
+    /**
+     * Encoding of the JSON responses of themoviedb.org.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Path prefix of the API version, left out of the endpoint names.
+     */
+    private static final String API_VERSION_PATH = "/3/";
+
+    /**
+     * Numeric path segments, the ids folded out of the endpoint names.
+     */
+    private static final Pattern ID_SEGMENT = Pattern.compile("/\\d+(?=/|$)");
+
+    /**
+     * Single shared instance.
+     */
+    private static TmdbClient sInstance;
+
+    /**
+     * API key for themoviedb.org.
+     */
+    private final String mApiKey;
+
+    /**
+     * Connect timeout in milliseconds.
+     */
+    private final int mConnectTimeoutMs;
+
+    /**
+     * Read timeout in milliseconds.
+     */
+    private final int mReadTimeoutMs;
+
+    /**
+     * Directory of the response cache.
+     */
+    private final File mCacheDir;
+
+    /**
+     * Size cap of the response cache in bytes, least recently used responses
+     * are evicted beyond it.
+     */
+    private final long mCacheSizeBytes;
+
+    /**
+     * How long past its expiry a cached response may be returned by
+     * {@link CachePolicy#STALE_WHILE_REVALIDATE}, in seconds.
+     */
+    private final int mMaxStaleSeconds;
+
+    /**
+     * Whether the response cache has been installed.
+     */
+    private boolean mCacheInstalled;
+
+    /**
+     * Shares a call between identical requests in flight.
+     */
+    private final SingleFlight mSingleFlight = new SingleFlight();
+
+    /**
+     * Number of times a failed request is retried.
+     */
+    private final int mMaxRetries;
+
+    /**
+     * Backoff before the first retry, doubled for each further retry, in
+     * milliseconds.
+     */
+    private final long mRetryBaseDelayMs;
+
+    /**
+     * Cap of the backoff between retries, in milliseconds. A request whose
+     * Retry-After is longer is not retried.
+     */
+    private final long mRetryMaxDelayMs;
+
+    /**
+     * Stops calling themoviedb.org after repeated failures.
+     */
+    private final CircuitBreaker mCircuitBreaker;
+
+    /**
+     * Keeps the calls under the request rate of the API key.
+     */
+    private final RateLimiter mRateLimiter;
+
+    /**
+     * Counts the responses and their bytes per endpoint.
+     */
+    private final TransferStats mTransferStats = new TransferStats();
+
+    /**
+     * Source of the backoff jitter.
+     */
+    private final Random mRandom = new Random();
+
+    /**
+     * Constructor.
+     *
+     * @param apiKey API key for themoviedb.org.
+     * @param connectTimeoutMs connect timeout in milliseconds.
+     * @param readTimeoutMs read timeout in milliseconds.
+     * @param cacheDir directory of the response cache.
+     * @param cacheSizeBytes size cap of the response cache in bytes.
+     * @param maxStaleSeconds how long past its expiry a cached response may be
+     *                        returned, in seconds.
+     * @param maxRetries number of times a failed request is retried.
+     * @param retryBaseDelayMs backoff before the first retry, in milliseconds.
+     * @param retryMaxDelayMs cap of the backoff between retries, in milliseconds.
+     * @param circuitBreaker stops calling themoviedb.org after repeated failures.
+     * @param rateLimiter keeps the calls under the request rate of the API key.
+     */
+    private TmdbClient(String apiKey, int connectTimeoutMs, int readTimeoutMs,
+                       File cacheDir, long cacheSizeBytes, int maxStaleSeconds,
+                       int maxRetries, long retryBaseDelayMs, long retryMaxDelayMs,
+                       CircuitBreaker circuitBreaker, RateLimiter rateLimiter) {
+        mApiKey = apiKey;
+        mConnectTimeoutMs = connectTimeoutMs;
+        mReadTimeoutMs = readTimeoutMs;
+        mCacheDir = cacheDir;
+        mCacheSizeBytes = cacheSizeBytes;
+        mMaxStaleSeconds = maxStaleSeconds;
+        mMaxRetries = maxRetries;
+        mRetryBaseDelayMs = retryBaseDelayMs;
+        mRetryMaxDelayMs = retryMaxDelayMs;
+        mCircuitBreaker = circuitBreaker;
+        mRateLimiter = rateLimiter;
+        // HttpURLConnection pools persistent connections as long as they are not
+        // disconnected and their streams are fully consumed and closed.
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(MAX_POOLED_CONNECTIONS));
+    }
+
+    /**
+     * Gets the shared client instance.
+     *
+     * @param context any context, only the application context is retained.
+     * @return the shared client.
+     */
+    public static synchronized TmdbClient getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            Resources resources = appContext.getResources();
+            sInstance = new TmdbClient(
+                    resources.getString(R.string.themoviedb_api_key),
+                    resources.getInteger(R.integer.tmdb_connect_timeout_ms),
+                    resources.getInteger(R.integer.tmdb_read_timeout_ms),
+                    new File(appContext.getCacheDir(), HTTP_CACHE_DIR),
+                    resources.getInteger(R.integer.http_cache_size_mb) * 1024L * 1024L,
+                    resources.getInteger(R.integer.http_cache_max_stale_hours) * 60 * 60,
+                    resources.getInteger(R.integer.tmdb_max_retries),
+                    resources.getInteger(R.integer.tmdb_retry_base_delay_ms),
+                    resources.getInteger(R.integer.tmdb_retry_max_delay_ms),
+                    new CircuitBreaker(
+                            resources.getInteger(R.integer.tmdb_circuit_failure_threshold),
+                            TimeUnit.SECONDS.toMillis(resources.getInteger(
+                                    R.integer.tmdb_circuit_open_seconds))),
+                    new RateLimiter(
+                            resources.getInteger(R.integer.tmdb_rate_limit_burst),
+                            resources.getInteger(R.integer.tmdb_rate_limit_per_second),
+                            resources.getInteger(R.integer.tmdb_rate_limit_visible_reserve),
+                            resources.getInteger(R.integer.tmdb_rate_limit_prefetch_wait_ms)));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Fetches a page of the list of movies for the given sort order.
+     *
+     * @param sortBy sort order ({@link #SORT_BY_POPULARITY} or {@link #SORT_BY_RATING}).
+     * @param page page to fetch, starting at 1.
+     * @param cachePolicy how the response cache is used.
+     * @param listener receives the refreshed page when a stale cached page was
+     *                 returned, may be null.
+     * @param token aborts the request when cancelled.
+     * @return list of MovieItems with data, empty past the last page.
+     * @throws IOException if the request fails or the response cannot be parsed.
+     */
+    public ArrayList<MovieItem> discoverMovies(
+            String sortBy, int page, CachePolicy cachePolicy,
+            OnRevalidatedListener<ArrayList<MovieItem>> listener,
+            CancellationToken token) throws IOException {
+        Uri uri = buildUri("discover/movie")
+                .appendQueryParameter(SORT_BY_PARAM, sortBy)
+                .appendQueryParameter(PAGE_PARAM, String.valueOf(page))
+                .build();
+        return get(uri, TmdbJsonParser.MOVIES, cachePolicy, listener, token);
+    }
+
+    /**
+     * Fetches the details of a movie together with its videos and reviews in
+     * a single request.
+     *
+     * @param movieId id of the movie.
+     * @param cachePolicy how the response cache is used.
+     * @param listener receives the refreshed details when stale cached details
+     *                 were returned, may be null.
+     * @param token aborts the request when cancelled.
+     * @return the movie details.
+     * @throws IOException if the request fails or the response cannot be parsed.
+     */
+    public MovieDetails getMovieDetails(int movieId, CachePolicy cachePolicy,
+                                        OnRevalidatedListener<MovieDetails> listener,
+                                        CancellationToken token) throws IOException {
+        Uri uri = buildUri("movie/" + movieId)
+                .appendQueryParameter(APPEND_TO_RESPONSE_PARAM, "videos,reviews")
+                .build();
+        return get(uri, TmdbJsonParser.MOVIE_DETAILS, cachePolicy, listener, token);
+    }
+
+    /**
+     * Fetches a page of the reviews of a movie. The first page comes with the
+     * movie details already.
+     *
+     * @param movieId id of the movie.
+     * @param page page to fetch, starting at 1.
+     * @param token aborts the request when cancelled.
+     * @return the page of reviews.
+     * @throws IOException if the request fails or the response cannot be parsed.
+     */
+    public MovieReviewsPage getMovieReviews(int movieId, int page, CancellationToken token)
+            throws IOException {
+        Uri uri = buildUri("movie/" + movieId + "/reviews")
+                .appendQueryParameter(PAGE_PARAM, String.valueOf(page))
+                .build();
+        return get(uri, TmdbJsonParser.REVIEWS, CachePolicy.DEFAULT, null, token);
+    }
+
+    /**
+     * Searches the movies of themoviedb.org by title.
+     *
+     * @param query the text to search for.
+     * @param token aborts the request when cancelled.
+     * @return the first page of matching movies.
+     * @throws IOException if the request fails or the response cannot be parsed.
+     */
+    public ArrayList<MovieItem> searchMovies(String query, CancellationToken token)
+            throws IOException {
+        Uri uri = buildUri("search/movie")
+                .appendQueryParameter(QUERY_PARAM, query)
+                .build();
+        return get(uri, TmdbJsonParser.MOVIES, CachePolicy.DEFAULT, null, token);
+    }
+
+    /**
+     * Gets the counters of the calls granted, queued and dropped by the rate
+     * limiter.
+     *
+     * @return a snapshot of the counters.
+     */
+    public RateLimiter.Stats getRateLimiterStats() {
+        return mRateLimiter.getStats();
+    }
+
+    /**
+     * Gets the counters of the responses and of their bytes, per endpoint.
+     *
+     * @return the counters.
+     */
+    public TransferStats getTransferStats() {
+        return mTransferStats;
+    }
+
+    /**
+     * Writes the pending entries of the response cache to disk.
+     */
+    public void flushCache() {
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        if (cache != null) {
+            cache.flush();
+        }
+    }
+
+    /**
+     * Creates a builder for the given API path with the API key already appended.
+     *
+     * @param path path relative to the API base URL.
+     * @return the URI builder.
+     */
+    private Uri.Builder buildUri(String path) {
+        return Uri.parse(MOVIEDB_BASE_URL + path).buildUpon()
+                .appendQueryParameter(API_KEY_PARAM, mApiKey);
+    }
+
+    /**
+     * Installs the response cache unless it is already installed. Runs on the
+     * first request, so the disk access happens on a background thread.
+     */
+    private synchronized void installCache() {
+        if (mCacheInstalled) {
+            return;
+        }
+        mCacheInstalled = true;
+        if (HttpResponseCache.getInstalled() != null) {
+            return;
+        }
+        try {
+            HttpResponseCache.install(mCacheDir, mCacheSizeBytes);
+        } catch (IOException e) {
+            // Requests still work, only without the cache.
+            Log.w(LOG_TAG, "Error installing the response cache", e);
+        }
+    }
+
+    /**
+     * Performs a GET request, sharing the call with the identical requests
+     * already in flight.
+     *
+     * @param uri the URI to request.
+     * @param parser decoder for the response body.
+     * @param cachePolicy how the response cache is used.
+     * @param listener receives the refreshed response when a stale cached
+     *                 response was returned, may be null. Only the listener of
+     *                 the request which performed the call is notified.
+     * @param token aborts the request when cancelled.
+     * @param <T> type of the decoded response.
+     * @return the decoded response, which may be shared with other callers
+     *         and must not be modified.
+     * @throws IOException if the request fails, returns an error status or the
+     *                     response cannot be parsed.
+     * @throws java.io.InterruptedIOException if the token is cancelled.
+     */
+    private <T> T get(final Uri uri, final TmdbJsonParser.ResponseParser<T> parser,
+                      final CachePolicy cachePolicy, final OnRevalidatedListener<T> listener,
+                      CancellationToken token) throws IOException {
+        // A stale response is acceptable to a STALE_WHILE_REVALIDATE request
+        // only, so the policy is part of the key.
+        String key = cachePolicy + " " + canonicalKey(uri);
+        return mSingleFlight.execute(key, token, new SingleFlight.Call<T>() {
+            @Override
+            public T run(CancellationToken callToken) throws IOException {
+                return fetch(uri, parser, cachePolicy, listener, callToken);
+            }
+        });
+    }
+
+    /**
+     * Builds the key identifying the response of a URI: its path and its
+     * query parameters in name order, without the API key.
+     *
+     * @param uri the URI.
+     * @return the key.
+     */
+    private static String canonicalKey(Uri uri) {
+        ArrayList<String> names = new ArrayList<>(uri.getQueryParameterNames());
+        Collections.sort(names);
+        StringBuilder key = new StringBuilder(uri.getPath());
+        char separator = '?';
+        for (String name : names) {
+            if (API_KEY_PARAM.equals(name)) {
+                continue;
+            }
+            key.append(separator).append(name).append('=').append(uri.getQueryParameter(name));
+            separator = '&';
+        }
+        return key.toString();
+    }
+
+    /**
+     * Performs a GET request through the response cache and decodes the response
+     * body.
+     *
+     * @param uri the URI to request.
+     * @param parser decoder for the response body.
+     * @param cachePolicy how the response cache is used.
+     * @param listener receives the refreshed response when a stale cached
+     *                 response was returned, may be null.
+     * @param token aborts the request when cancelled.
+     * @param <T> type of the decoded response.
+     * @return the decoded response.
+     * @throws IOException if the request fails, returns an error status or the
+     *                     response cannot be parsed.
+     * @throws java.io.InterruptedIOException if the token is cancelled.
+     */
+    private <T> T fetch(final Uri uri, final TmdbJsonParser.ResponseParser<T> parser,
+                        CachePolicy cachePolicy, final OnRevalidatedListener<T> listener,
+                        CancellationToken token) throws IOException {
+        token.throwIfCancelled();
+        installCache();
+
+        if (cachePolicy == CachePolicy.STALE_WHILE_REVALIDATE) {
+            HttpURLConnection cachedConnection = openCachedConnection(uri, true);
+            if (cachedConnection != null) {
+                // The cache marks the responses it serves past their expiry.
+                String warning = cachedConnection.getHeaderField("Warning");
+                boolean stale = warning != null && warning.startsWith("110");
+                T result = read(cachedConnection, parser, token);
+                if (stale) {
+                    TaskScheduler.getInstance().executeIo(TaskScheduler.Priority.BACKGROUND,
+                            new CancellationToken(), new Runnable() {
+                                @Override
+                                public void run() {
+                                    revalidate(uri, parser, listener);
+                                }
+                            });
+                }
+                return result;
+            }
+            // Not cached, so there is nothing to fall back to either.
+            return fetchWithRetries(uri, parser, token);
+        }
+
+        try {
+            return fetchWithRetries(uri, parser, token);
+        } catch (IOException e) {
+            token.throwIfCancelled();
+            // A stale response is better than none at all.
+            HttpURLConnection cachedConnection = openCachedConnection(uri, true);
+            if (cachedConnection == null) {
+                throw e;
+            }
+            Log.w(LOG_TAG, "Falling back to the cached " + uri.getPath(), e);
+            return read(cachedConnection, parser, token);
+        }
+    }
+
+    /**
+     * Performs a GET request over the network unless a fresh response is
+     * cached, retrying it with backoff when it fails in a way a later attempt
+     * may not.
+     *
+     * @param uri the URI to request.
+     * @param parser decoder for the response body.
+     * @param token aborts the request and its backoff when cancelled.
+     * @param <T> type of the decoded response.
+     * @return the decoded response.
+     * @throws IOException if the last attempt fails, the response cannot be
+     *                     parsed, the circuit breaker is open or the rate
+     *                     limiter drops the call.
+     * @throws java.io.InterruptedIOException if the token is cancelled.
+     */
+    private <T> T fetchWithRetries(Uri uri, TmdbJsonParser.ResponseParser<T> parser,
+                                   CancellationToken token) throws IOException {
+        // A response still fresh in the cache makes no call, so it takes no
+        // token from the rate limiter and tells the circuit breaker nothing.
+        HttpURLConnection freshConnection = openCachedConnection(uri, false);
+        if (freshConnection != null) {
+            return read(freshConnection, parser, token);
+        }
+        for (int attempt = 0; ; attempt++) {
+            mCircuitBreaker.acquire();
+            try {
+                mRateLimiter.acquire(TaskScheduler.getCurrentPriority(), token);
+            } catch (IOException e) {
+                // The call was never made.
+                mCircuitBreaker.onCancelled();
+                throw e;
+            }
+            try {
+                T result = read(openConnection(uri, null), parser, token);
+                mCircuitBreaker.onSuccess();
+                return result;
+            } catch (IOException e) {
+                if (token.isCancelled()) {
+                    mCircuitBreaker.onCancelled();
+                    throw e;
+                }
+                long retryAfterMs = TmdbException.NO_RETRY_AFTER;
+                if (e instanceof TmdbException) {
+                    TmdbException tmdbException = (TmdbException) e;
+                    if (!tmdbException.isRetryable()) {
+                        // themoviedb.org answered, so it is up.
+                        mCircuitBreaker.onSuccess();
+                        throw e;
+                    }
+                    retryAfterMs = tmdbException.getRetryAfterMs();
+                }
+                mCircuitBreaker.onFailure();
+                if (retryAfterMs != TmdbException.NO_RETRY_AFTER) {
+                    // No request at all is wanted until then.
+                    mCircuitBreaker.holdOff(retryAfterMs);
+                }
+                if (attempt >= mMaxRetries || retryAfterMs > mRetryMaxDelayMs) {
+                    throw e;
+                }
+                long delayMs = Math.max(retryDelayMs(attempt), retryAfterMs);
+                Log.w(LOG_TAG, "Retrying " + uri.getPath() + " in " + delayMs + " ms: "
+                        + e.getMessage());
+                token.sleep(delayMs);
+            }
+        }
+    }
+
+    /**
+     * Computes the backoff before a retry: a random delay up to an exponential
+     * cap, so clients which failed together do not retry together.
+     *
+     * @param attempt number of the attempt which failed, starting at 0.
+     * @return the delay in milliseconds.
+     */
+    private long retryDelayMs(int attempt) {
+        long capMs = mRetryMaxDelayMs;
+        if (attempt < 30) {
+            capMs = Math.min(capMs, mRetryBaseDelayMs << attempt);
+        }
+        // At least half the cap, so a retry is never immediate.
+        return capMs / 2 + (long) (mRandom.nextDouble() * (capMs / 2));
+    }
+
+    /**
+     * Opens a connection which only reads from the response cache.
+     *
+     * @param uri the URI to request.
+     * @param acceptStale whether an expired response within the maximum
+     *                    staleness is accepted, or only a fresh one.
+     * @return the connection with the cached response, null if none is cached.
+     * @throws IOException if the cache cannot be read.
+     */
+    private HttpURLConnection openCachedConnection(Uri uri, boolean acceptStale)
+            throws IOException {
+        HttpURLConnection cachedConnection = openConnection(uri, acceptStale
+                ? "only-if-cached, max-stale=" + mMaxStaleSeconds
+                : "only-if-cached");
+        if (cachedConnection.getResponseCode() == HttpURLConnection.HTTP_OK) {
+            return cachedConnection;
+        }
+        // Not cached, the gateway timeout status must be drained too.
+        drainQuietly(cachedConnection.getErrorStream());
+        return null;
+    }
+
+    /**
+     * Refreshes a stale cached response. The cache sends a conditional request,
+     * so an unchanged response costs a 304 rather than the full body.
+     *
+     * @param uri the URI to request.
+     * @param parser decoder for the response body.
+     * @param listener receives the refreshed response, may be null.
+     * @param <T> type of the decoded response.
+     */
+    private <T> void revalidate(Uri uri, TmdbJsonParser.ResponseParser<T> parser,
+                                OnRevalidatedListener<T> listener) {
+        try {
+            T result = fetchWithRetries(uri, parser, new CancellationToken());
+            if (listener != null) {
+                listener.onRevalidated(result);
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Error revalidating " + uri.getPath(), e);
+        }
+    }
+
+    /**
+     * Opens a GET connection to the given URI.
+     *
+     * @param uri the URI to request.
+     * @param cacheControl Cache-Control header of the request, null for none.
+     * @return the connection, not connected yet.
+     * @throws IOException if the connection cannot be opened.
+     */
+    private HttpURLConnection openConnection(Uri uri, String cacheControl) throws IOException {
+        URL url = new URL(uri.toString());
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setRequestMethod("GET");
+        urlConnection.setConnectTimeout(mConnectTimeoutMs);
+        urlConnection.setReadTimeout(mReadTimeoutMs);
+        urlConnection.setUseCaches(true);
+        urlConnection.setRequestProperty("Connection", "keep-alive");
+        // Asking for gzip explicitly turns off the transparent decompression
+        // of the platform, read() decompresses the body instead.
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+        if (cacheControl != null) {
+            urlConnection.setRequestProperty("Cache-Control", cacheControl);
+        }
+        return urlConnection;
+    }
+
+    /**
+     * Reads the response of a connection over a pooled socket and decodes the
+     * body directly from the stream.
+     *
+     * @param urlConnection the connection.
+     * @param parser decoder for the response body.
+     * @param token aborts the request when cancelled.
+     * @param <T> type of the decoded response.
+     * @return the decoded response.
+     * @throws IOException if the request fails, returns an error status or the
+     *                     response cannot be parsed.
+     * @throws java.io.InterruptedIOException if the token is cancelled.
+     */
+    private <T> T read(final HttpURLConnection urlConnection,
+                       TmdbJsonParser.ResponseParser<T> parser,
+                       CancellationToken token) throws IOException {
+        // Closes the socket when the request is cancelled, which makes a
+        // blocked connect or read fail right away instead of running to the end.
+        Runnable abort = new Runnable() {
+            @Override
+            public void run() {
+                urlConnection.disconnect();
+            }
+        };
+        token.onCancel(abort);
+
+        JsonReader reader = null;
+        try {
+            long startNanos = System.nanoTime();
+            // Includes the DNS lookup and the TLS handshake, none for a pooled
+            // connection.
+            Metrics.beginSection("tmdb.connect");
+            try {
+                urlConnection.connect();
+            } finally {
+                Metrics.endSection();
+            }
+            long connectedNanos = System.nanoTime();
+            // A 304 from a conditional request is reported as the cached 200.
+            Metrics.beginSection("tmdb.ttfb");
+            int responseCode;
+            try {
+                responseCode = urlConnection.getResponseCode();
+            } finally {
+                Metrics.endSection();
+            }
+            long firstByteNanos = System.nanoTime();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                // The error stream must be drained as well for the connection to be reused.
+                drainQuietly(urlConnection.getErrorStream());
+                throw new TmdbException(responseCode, parseRetryAfter(urlConnection));
+            }
+
+            TransferStats.CountingInputStream wireStream =
+                    new TransferStats.CountingInputStream(urlConnection.getInputStream());
+            TransferStats.CountingInputStream decodedStream =
+                    new TransferStats.CountingInputStream(decompress(
+                            new BufferedInputStream(wireStream),
+                            urlConnection.getContentEncoding()));
+            // Decodes from bytes, rejecting malformed UTF-8 rather than
+            // silently replacing it.
+            CharsetDecoder decoder = UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            reader = new JsonReader(new InputStreamReader(decodedStream, decoder));
+            // The body is parsed, and the models built, as it downloads.
+            Metrics.beginSection("tmdb.download+parse");
+            T result;
+            try {
+                result = parser.parse(reader);
+            } finally {
+                Metrics.endSection();
+            }
+            long parsedNanos = System.nanoTime();
+
+            String endpoint = endpointOf(urlConnection.getURL());
+            // Set by the platform HTTP stack to tell cached responses apart.
+            String source = urlConnection.getHeaderField("X-Android-Response-Source");
+            String phase;
+            if (isServedFromCache(source)) {
+                mTransferStats.recordCached(endpoint);
+                phase = "tmdb.cache.";
+            } else {
+                mTransferStats.recordNetwork(
+                        endpoint, wireStream.getCount(), decodedStream.getCount());
+                phase = "tmdb.network.";
+            }
+            long downloadNanos = wireStream.getReadTimeNanos();
+            Metrics.record(phase + "connect", connectedNanos - startNanos);
+            Metrics.record(phase + "ttfb", firstByteNanos - connectedNanos);
+            Metrics.record(phase + "download", downloadNanos);
+            Metrics.record(phase + "parse", parsedNanos - firstByteNanos - downloadNanos);
+            Metrics.record("tmdb.total." + endpoint, parsedNanos - startNanos);
+            return result;
+        } catch (CharacterCodingException | MalformedJsonException e) {
+            // A malformed body is malformed again on a retry.
+            token.throwIfCancelled();
+            throw new TmdbException(e);
+        } catch (IOException e) {
+            token.throwIfCancelled();
+            throw e;
+        } catch (IllegalStateException e) {
+            // JsonReader reports unexpected tokens as IllegalStateException.
+            token.throwIfCancelled();
+            throw new TmdbException(e);
+        } finally {
+            token.removeOnCancel(abort);
+            // Closing the stream (rather than calling disconnect()) returns the
+            // socket to the pool, and commits the response to the cache.
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wraps the body of a response in the decoder of its content encoding.
+     *
+     * @param inputStream the body as transferred.
+     * @param contentEncoding the Content-Encoding header, may be null.
+     * @return the decompressed body.
+     * @throws IOException if the gzip header cannot be read.
+     */
+    private static InputStream decompress(InputStream inputStream, String contentEncoding)
+            throws IOException {
+        if ("gzip".equalsIgnoreCase(contentEncoding)) {
+            return new GZIPInputStream(inputStream);
+        }
+        if ("deflate".equalsIgnoreCase(contentEncoding)) {
+            return new InflaterInputStream(inputStream);
+        }
+        return inputStream;
+    }
+
+    /**
+     * Names the endpoint of a URL: its path below the API version, with the
+     * ids folded, such as {@code movie/{id}}.
+     *
+     * @param url the URL.
+     * @return the endpoint.
+     */
+    private static String endpointOf(URL url) {
+        String path = url.getPath();
+        if (path.startsWith(API_VERSION_PATH)) {
+            path = path.substring(API_VERSION_PATH.length() - 1);
+        }
+        return ID_SEGMENT.matcher(path).replaceAll("/{id}").substring(1);
+    }
+
+    /**
+     * Tells whether the body of a response came from the cache, rather than
+     * being downloaded again after the cache revalidated it.
+     *
+     * @param source the X-Android-Response-Source header, if any.
+     * @return true for cache hits and revalidations answered with 304.
+     */
+    private static boolean isServedFromCache(String source) {
+        return source != null
+                && (source.startsWith("CACHE ") || source.startsWith("CONDITIONAL_CACHE 304"));
+    }
+
+    /**
+     * Reads the Retry-After header of a response, given either in seconds or
+     * as a date.
+     *
+     * @param urlConnection the connection.
+     * @return the delay in milliseconds, or {@link TmdbException#NO_RETRY_AFTER}
+     *         if there is no valid header.
+     */
+    private static long parseRetryAfter(HttpURLConnection urlConnection) {
+        String retryAfter = urlConnection.getHeaderField("Retry-After");
+        if (retryAfter == null) {
+            return TmdbException.NO_RETRY_AFTER;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            long date = urlConnection.getHeaderFieldDate("Retry-After", 0);
+            return date > 0
+                    ? Math.max(0, date - System.currentTimeMillis())
+                    : TmdbException.NO_RETRY_AFTER;
+        }
+    }
+
+    /**
+     * Reads and closes the given stream, ignoring any error.
+     *
+     * @param inputStream the stream to drain, may be null.
+     */
+    private static void drainQuietly(InputStream inputStream) {
+        if (inputStream == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[1024];
+            while (inputStream.read(buffer) != -1) {
+                // Discard.
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Error draining stream", e);
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Error closing stream", e);
+            }
+        }
+    }
+}
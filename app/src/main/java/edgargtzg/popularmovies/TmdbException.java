@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+/**
+ * Error response from themoviedb.org, or a response which cannot be decoded.
+ */
+public class TmdbException extends IOException {
+
+    /**
+     * Status code of the rate limit response.
+     */
+    public static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Retry delay of a response without a Retry-After header.
+     */
+    public static final long NO_RETRY_AFTER = -1;
+
+    /**
+     * HTTP status code of the response.
+     */
+    private final int mResponseCode;
+
+    /**
+     * Delay the server asked to wait before the next request, in milliseconds,
+     * or {@link #NO_RETRY_AFTER}.
+     */
+    private final long mRetryAfterMs;
+
+    /**
+     * Constructor for an error status.
+     *
+     * @param responseCode HTTP status code of the response.
+     * @param retryAfterMs delay from the Retry-After header in milliseconds,
+     *                     or {@link #NO_RETRY_AFTER}.
+     */
+    public TmdbException(int responseCode, long retryAfterMs) {
+        super("Unexpected response " + responseCode + " from themoviedb.org.");
+        mResponseCode = responseCode;
+        mRetryAfterMs = retryAfterMs;
+    }
+
+    /**
+     * Constructor for a successful response whose body cannot be decoded.
+     *
+     * @param cause the decoding error.
+     */
+    public TmdbException(Throwable cause) {
+        super("Malformed response from themoviedb.org.", cause);
+        mResponseCode = HttpURLConnection.HTTP_OK;
+        mRetryAfterMs = NO_RETRY_AFTER;
+    }
+
+    /**
+     * Gets the HTTP status code of the response.
+     *
+     * @return the status code.
+     */
+    public int getResponseCode() {
+        return mResponseCode;
+    }
+
+    /**
+     * Gets the delay the server asked to wait before the next request.
+     *
+     * @return the delay in milliseconds, or {@link #NO_RETRY_AFTER}.
+     */
+    public long getRetryAfterMs() {
+        return mRetryAfterMs;
+    }
+
+    /**
+     * Tells whether the same request may succeed later: rate limited requests
+     * and server errors are retried, client errors and malformed bodies are not.
+     *
+     * @return true if the request may be retried.
+     */
+    public boolean isRetryable() {
+        return mResponseCode == HTTP_TOO_MANY_REQUESTS
+                || mResponseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+    }
+}
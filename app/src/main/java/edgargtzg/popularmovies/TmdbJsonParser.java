@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Pull-based decoding of themoviedb.org responses.
+ *
+ * Model objects are built directly from the response stream, so neither the
+ * full response string nor a JSON object tree is ever held in memory.
+ */
+public final class TmdbJsonParser {
+
+    /**
+     * Delimiter for result items.
+     */
+    private static final String RESULT_LIST = "results";
+
+    /**
+     * Decodes a single value from a response stream.
+     *
+     * @param <T> type of the decoded value.
+     */
+    public interface ResponseParser<T> {
+
+        /**
+         * Decodes the response.
+         *
+         * @param reader the reader positioned at the start of the response.
+         * @return the decoded value.
+         * @throws IOException if the response cannot be read or is malformed.
+         */
+        T parse(JsonReader reader) throws IOException;
+    }
+
+    /**
+     * Parser for the movie list of a discover response.
+     */
+    public static final ResponseParser<ArrayList<MovieItem>> MOVIES =
+            new ResultsParser<MovieItem>() {
+                @Override
+                MovieItem readItem(JsonReader reader) throws IOException {
+                    return new MovieItem(reader);
+                }
+            };
+
+    /**
+     * Parser for the video list of a movie videos response.
+     */
+    public static final ResponseParser<ArrayList<MovieItemVideo>> VIDEOS =
+            new ResultsParser<MovieItemVideo>() {
+                @Override
+                MovieItemVideo readItem(JsonReader reader) throws IOException {
+                    return new MovieItemVideo(reader);
+                }
+            };
+
+    /**
+     * Reader of the review items of a reviews response.
+     */
+    private static final ResultsParser<MovieItemReview> REVIEW_RESULTS =
+            new ResultsParser<MovieItemReview>() {
+                @Override
+                MovieItemReview readItem(JsonReader reader) throws IOException {
+                    return new MovieItemReview(reader);
+                }
+            };
+
+    /**
+     * Parser for a page of a movie reviews response.
+     */
+    public static final ResponseParser<MovieReviewsPage> REVIEWS =
+            new ResponseParser<MovieReviewsPage>() {
+                @Override
+                public MovieReviewsPage parse(JsonReader reader) throws IOException {
+                    // JSON keys of the paging fields.
+                    final String PAGE = "page";
+                    final String TOTAL_PAGES = "total_pages";
+
+                    ArrayList<MovieItemReview> reviews = new ArrayList<>();
+                    int page = 1;
+                    int totalPages = 1;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case RESULT_LIST:
+                                REVIEW_RESULTS.readResults(reader, reviews);
+                                break;
+                            case PAGE:
+                                page = reader.nextInt();
+                                break;
+                            case TOTAL_PAGES:
+                                totalPages = reader.nextInt();
+                                break;
+                            default:
+                                reader.skipValue();
+                                break;
+                        }
+                    }
+                    reader.endObject();
+                    return new MovieReviewsPage(reviews, page, totalPages);
+                }
+            };
+
+    /**
+     * Parser for a movie details response with its videos and the first page
+     * of its reviews appended.
+     */
+    public static final ResponseParser<MovieDetails> MOVIE_DETAILS =
+            new ResponseParser<MovieDetails>() {
+                @Override
+                public MovieDetails parse(JsonReader reader) throws IOException {
+                    // Names of the appended responses.
+                    final String VIDEOS_RESPONSE = "videos";
+                    final String REVIEWS_RESPONSE = "reviews";
+
+                    MovieItem movieItem = new MovieItem();
+                    ArrayList<MovieItemVideo> videos = new ArrayList<>();
+                    MovieReviewsPage reviews =
+                            new MovieReviewsPage(new ArrayList<MovieItemReview>(), 1, 1);
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        if (VIDEOS_RESPONSE.equals(name)) {
+                            videos = VIDEOS.parse(reader);
+                        } else if (REVIEWS_RESPONSE.equals(name)) {
+                            reviews = REVIEWS.parse(reader);
+                        } else if (!movieItem.parseField(name, reader)) {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    return new MovieDetails(movieItem, videos, reviews);
+                }
+            };
+
+    /**
+     * Decodes the "results" array of a response, skipping every other field.
+     *
+     * @param <T> type of the result items.
+     */
+    abstract static class ResultsParser<T> implements ResponseParser<ArrayList<T>> {
+
+        @Override
+        public ArrayList<T> parse(JsonReader reader) throws IOException {
+            ArrayList<T> entries = new ArrayList<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (RESULT_LIST.equals(reader.nextName())) {
+                    readResults(reader, entries);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return entries;
+        }
+
+        /**
+         * Reads every item of a results array into the given list.
+         *
+         * @param reader the reader positioned at the array.
+         * @param entries list to add the items to.
+         * @throws IOException if an item cannot be read.
+         */
+        void readResults(JsonReader reader, ArrayList<T> entries) throws IOException {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                entries.add(readItem(reader));
+            }
+            reader.endArray();
+        }
+
+        /**
+         * Reads a single result item.
+         *
+         * @param reader the reader positioned at the item object.
+         * @return the item.
+         * @throws IOException if the item cannot be read.
+         */
+        abstract T readItem(JsonReader reader) throws IOException;
+    }
+
+    /**
+     * Not instantiable.
+     */
+    private TmdbJsonParser() {
+    }
+
+    /**
+     * Reads the next value as a string, mapping JSON null to an empty string.
+     * Numbers and booleans are returned in their literal form.
+     *
+     * @param reader the reader positioned at the value.
+     * @return the value as a string, never null.
+     * @throws IOException if the value cannot be read.
+     */
+    public static String nextString(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return "";
+        } else if (token == JsonToken.BOOLEAN) {
+            return String.valueOf(reader.nextBoolean());
+        } else if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return reader.nextString();
+        }
+        // Objects and arrays are not expected for scalar fields.
+        reader.skipValue();
+        return "";
+    }
+
+    /**
+     * Reads the next value as an int, mapping JSON null and values which are
+     * not whole numbers to the given fallback.
+     *
+     * @param reader the reader positioned at the value.
+     * @param fallback value returned if there is no int.
+     * @return the value.
+     * @throws IOException if the value cannot be read.
+     */
+    public static int nextInt(JsonReader reader, int fallback) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            try {
+                return reader.nextInt();
+            } catch (NumberFormatException e) {
+                // The reader does not consume a value it could not convert.
+                reader.skipValue();
+                return fallback;
+            }
+        }
+        reader.skipValue();
+        return fallback;
+    }
+
+    /**
+     * Reads the next value as a float, mapping JSON null and values which are
+     * not numbers to the given fallback.
+     *
+     * @param reader the reader positioned at the value.
+     * @param fallback value returned if there is no number.
+     * @return the value.
+     * @throws IOException if the value cannot be read.
+     */
+    public static float nextFloat(JsonReader reader, float fallback) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            try {
+                return (float) reader.nextDouble();
+            } catch (NumberFormatException e) {
+                reader.skipValue();
+                return fallback;
+            }
+        }
+        reader.skipValue();
+        return fallback;
+    }
+}
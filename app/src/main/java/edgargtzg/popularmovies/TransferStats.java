@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts the responses read from themoviedb.org per endpoint, and the bytes
+ * of their bodies as transferred and once decompressed.
+ */
+public final class TransferStats {
+
+    /**
+     * Counters of an endpoint.
+     */
+    private static class Counters {
+
+        /**
+         * Number of responses read over the network.
+         */
+        long mNetworkResponses;
+
+        /**
+         * Number of responses served by the response cache.
+         */
+        long mCachedResponses;
+
+        /**
+         * Body bytes of the network responses as transferred.
+         */
+        long mWireBytes;
+
+        /**
+         * Body bytes of the network responses once decompressed.
+         */
+        long mDecodedBytes;
+    }
+
+    /**
+     * Stream which counts the bytes read through it and the time spent
+     * waiting for them.
+     */
+    public static class CountingInputStream extends FilterInputStream {
+
+        /**
+         * Number of bytes read so far.
+         */
+        private long mCount;
+
+        /**
+         * Time spent in the reads so far, in nanoseconds.
+         */
+        private long mReadTimeNanos;
+
+        /**
+         * Constructor.
+         *
+         * @param inputStream the stream to count the bytes of.
+         */
+        public CountingInputStream(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        /**
+         * Gets the number of bytes read so far.
+         *
+         * @return the number of bytes.
+         */
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * Gets the time spent in the reads so far, which for a network stream
+         * is the time spent downloading.
+         *
+         * @return the time in nanoseconds.
+         */
+        public long getReadTimeNanos() {
+            return mReadTimeNanos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int result = super.read();
+            mReadTimeNanos += System.nanoTime() - start;
+            if (result != -1) {
+                mCount++;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            long start = System.nanoTime();
+            int result = super.read(buffer, offset, count);
+            mReadTimeNanos += System.nanoTime() - start;
+            if (result > 0) {
+                mCount += result;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long start = System.nanoTime();
+            long result = super.skip(count);
+            mReadTimeNanos += System.nanoTime() - start;
+            mCount += result;
+            return result;
+        }
+
+        @Override
+        public boolean markSupported() {
+            // Bytes read again after a reset would be counted twice.
+            return false;
+        }
+    }
+
+    /**
+     * Counters by endpoint, in name order.
+     */
+    private final TreeMap<String, Counters> mCounters = new TreeMap<>();
+
+    /**
+     * Records a response read over the network.
+     *
+     * @param endpoint the endpoint.
+     * @param wireBytes body bytes as transferred.
+     * @param decodedBytes body bytes once decompressed.
+     */
+    public synchronized void recordNetwork(String endpoint, long wireBytes, long decodedBytes) {
+        Counters counters = getCounters(endpoint);
+        counters.mNetworkResponses++;
+        counters.mWireBytes += wireBytes;
+        counters.mDecodedBytes += decodedBytes;
+    }
+
+    /**
+     * Records a response served by the response cache.
+     *
+     * @param endpoint the endpoint.
+     */
+    public synchronized void recordCached(String endpoint) {
+        getCounters(endpoint).mCachedResponses++;
+    }
+
+    /**
+     * Gets the counters of an endpoint, creating them if needed.
+     *
+     * @param endpoint the endpoint.
+     * @return the counters.
+     */
+    private Counters getCounters(String endpoint) {
+        Counters counters = mCounters.get(endpoint);
+        if (counters == null) {
+            counters = new Counters();
+            mCounters.put(endpoint, counters);
+        }
+        return counters;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Counters> entry : mCounters.entrySet()) {
+            Counters counters = entry.getValue();
+            if (text.length() > 0) {
+                text.append(", ");
+            }
+            text.append(entry.getKey())
+                    .append(": network=").append(counters.mNetworkResponses)
+                    .append(" cached=").append(counters.mCachedResponses)
+                    .append(" wire=").append(counters.mWireBytes)
+                    .append(" decoded=").append(counters.mDecodedBytes);
+        }
+        return text.toString();
+    }
+}
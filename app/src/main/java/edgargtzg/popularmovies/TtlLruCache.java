@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edgargtzg.popularmovies;
+
+import android.os.SystemClock;
+import android.util.LruCache;
+
+/**
+ * Bounded in-memory cache whose entries also expire a fixed time after they
+ * were added. The least recently used entries are evicted once the cache is
+ * full, and expired entries are dropped when they are looked up.
+ *
+ * @param <K> type of the keys.
+ * @param <V> type of the values.
+ */
+public class TtlLruCache<K, V> {
+
+    /**
+     * Entries by key, in access order.
+     */
+    private final LruCache<K, Entry<V>> mCache;
+
+    /**
+     * Time an entry stays valid after it was added, in milliseconds.
+     */
+    private final long mTtlMs;
+
+    /**
+     * Constructor.
+     *
+     * @param maxEntries maximum number of entries.
+     * @param ttlMs time an entry stays valid after it was added, in milliseconds.
+     */
+    public TtlLruCache(int maxEntries, long ttlMs) {
+        mCache = new LruCache<>(Math.max(1, maxEntries));
+        mTtlMs = ttlMs;
+    }
+
+    /**
+     * Gets the value of a key unless it is missing or expired.
+     *
+     * @param key the key.
+     * @return the value, or null.
+     */
+    public V get(K key) {
+        Entry<V> entry = mCache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (SystemClock.elapsedRealtime() - entry.mAddedAt > mTtlMs) {
+            mCache.remove(key);
+            return null;
+        }
+        return entry.mValue;
+    }
+
+    /**
+     * Adds or replaces the value of a key.
+     *
+     * @param key the key.
+     * @param value the value.
+     */
+    public void put(K key, V value) {
+        mCache.put(key, new Entry<>(value, SystemClock.elapsedRealtime()));
+    }
+
+    /**
+     * Removes the value of a key.
+     *
+     * @param key the key.
+     */
+    public void remove(K key) {
+        mCache.remove(key);
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void evictAll() {
+        mCache.evictAll();
+    }
+
+    /**
+     * Value of the cache with the time it was added.
+     *
+     * @param <V> type of the value.
+     */
+    private static class Entry<V> {
+
+        final V mValue;
+        final long mAddedAt;
+
+        Entry(V value, long addedAt) {
+            mValue = value;
+            mAddedAt = addedAt;
+        }
+    }
+}